@@ -0,0 +1,54 @@
+package org.leandi.schema;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Поток чтения поверх ByteBuffer без копирования данных в промежуточные массивы.
+ * Позиция исходного буфера не изменяется.
+ */
+final class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    /**
+     * @return непрочитанная часть буфера. Позиция потока не изменяется.
+     */
+    ByteBuffer remaining() {
+        return buffer.slice();
+    }
+}
@@ -0,0 +1,256 @@
+package org.leandi.schema;
+
+import org.leandi.schema.deploy.DbHost;
+import org.leandi.schema.deploy.DbTypeType;
+import org.leandi.schema.deploy.Deploy;
+import org.leandi.schema.deploy.DeployItem;
+import org.leandi.schema.deploy.Domain;
+import org.leandi.schema.deploy.FsHost;
+import org.leandi.schema.deploy.HostInfo;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Индексы схемы деплоя для размещения элементов: хосты по набору реквизитов подключения
+ * (dbName, host, userName, dbType, port для db-хостов; folder, host, userName для fs-хостов)
+ * и домены каждого хоста по краткому наименованию, элементы каждого домена по fqn (uniqueItem в XSD)
+ * и обратный индекс fqn → хосты по всей схеме деплоя.
+ * <p>
+ * Как и {@link NodeIndex}, индекс хостов самовосстанавливающийся: найденные хосты проверяются
+ * по ключу, смена списка или его размера приводит к перестроению. SchemaUtils сбрасывает индекс хостов
+ * при каждом добавлении, удалении и замене хоста, поскольку удаление и добавление могут сохранить размер списка.
+ * Изменение хостов и реквизитов подключения в обход SchemaUtils требует вызова {@link #invalidate()}.
+ * Обратный индекс fqn → хосты строится при первом поиске, поддерживается при размещении и удалении
+ * элементов через SchemaUtils и перестраивается после сброса вместе с индексом хостов.
+ */
+final class DeployIndex {
+
+    private final HostKeys<DbHost> dbHosts;
+    private final HostKeys<FsHost> fsHosts;
+    private final Map<HostInfo, NodeIndex<Domain>> domains = new IdentityHashMap<>();
+    private final Map<Domain, NodeIndex<DeployItem>> items = new IdentityHashMap<>();
+    private final Map<String, Set<HostInfo>> hostsByFqn = new HashMap<>();
+    private final Supplier<Deploy> deploy;
+
+    private boolean fqnsIndexed;
+
+    DeployIndex(Supplier<Deploy> deploy) {
+        this.deploy = deploy;
+        this.dbHosts = new HostKeys<>(() -> deploy.get().getDbHost(), DeployIndex::dbHostKey);
+        this.fsHosts = new HostKeys<>(() -> deploy.get().getFsHost(), DeployIndex::fsHostKey);
+    }
+
+    /**
+     * @return ключ db-хоста по реквизитам подключения.
+     */
+    static List<Object> dbHostKey(String dbName, String host, String userName, DbTypeType dbType, String port) {
+        return Arrays.asList(dbName, host, userName, dbType, port);
+    }
+
+    /**
+     * @return ключ fs-хоста по реквизитам подключения.
+     */
+    static List<Object> fsHostKey(String folder, String host, String userName) {
+        return Arrays.asList(folder, host, userName);
+    }
+
+    private static List<Object> dbHostKey(DbHost dbHost) {
+        return dbHostKey(dbHost.getDbName(), dbHost.getHost(), dbHost.getUserName(), dbHost.getDbType(), dbHost.getPort());
+    }
+
+    private static List<Object> fsHostKey(FsHost fsHost) {
+        return fsHostKey(fsHost.getFolder(), fsHost.getHost(), fsHost.getUserName());
+    }
+
+    /**
+     * @param key ключ из {@link #dbHostKey(String, String, String, DbTypeType, String)}.
+     * @return db-хосты с такими реквизитами подключения в порядке схемы деплоя.
+     */
+    List<DbHost> dbHosts(List<Object> key) {
+        return dbHosts.find(key);
+    }
+
+    /**
+     * @param key ключ из {@link #fsHostKey(String, String, String)}.
+     * @return fs-хосты с такими реквизитами подключения в порядке схемы деплоя.
+     */
+    List<FsHost> fsHosts(List<Object> key) {
+        return fsHosts.find(key);
+    }
+
+    /**
+     * @param host хост схемы деплоя.
+     * @return индекс доменов хоста по краткому наименованию.
+     */
+    NodeIndex<Domain> domains(HostInfo host) {
+        return domains.computeIfAbsent(host, h -> {
+            SchemaLock.beforeFill();
+            return NodeIndex.of(h::getDomain, Domain::getShortName);
+        });
+    }
+
+    /**
+     * @param dom домен хоста схемы деплоя.
+     * @return индекс элементов домена по fqn.
+     */
+    NodeIndex<DeployItem> items(Domain dom) {
+        return items.computeIfAbsent(dom, d -> {
+            SchemaLock.beforeFill();
+            return NodeIndex.of(d::getItem, DeployItem::getFqn);
+        });
+    }
+
+    /**
+     * Поиск хостов, на которые размещён элемент.
+     *
+     * @param fqn полное наименование элемента.
+     * @return хосты, в доменах которых есть элемент с таким fqn, в порядке размещения.
+     */
+    List<HostInfo> hostsByFqn(String fqn) {
+        if (!fqnsIndexed) {
+            rebuildFqns(deploy.get());
+        }
+        Set<HostInfo> hosts = hostsByFqn.get(fqn);
+        return hosts == null ? Collections.emptyList() : new ArrayList<>(hosts);
+    }
+
+    /**
+     * Учёт элемента, размещённого на хосте.
+     */
+    void itemAdded(HostInfo host, String fqn) {
+        if (fqnsIndexed) {
+            hostsByFqn.computeIfAbsent(fqn, key -> new LinkedHashSet<>()).add(host);
+        }
+    }
+
+    /**
+     * Учёт элементов, удалённых из домена хоста.
+     */
+    void itemsRemoved(HostInfo host, Domain dom, Set<String> fqns) {
+        items(dom).invalidate();
+        if (!fqnsIndexed) {
+            return;
+        }
+        for (String fqn : fqns) {
+            Set<HostInfo> hosts = hostsByFqn.get(fqn);
+            if (hosts != null && !contains(host, fqn)) {
+                hosts.remove(host);
+                if (hosts.isEmpty()) {
+                    hostsByFqn.remove(fqn);
+                }
+            }
+        }
+    }
+
+    /**
+     * Пометка индексов хостов как устаревших после добавления, удаления или замены хостов.
+     */
+    void invalidateHosts() {
+        dbHosts.invalidate();
+        fsHosts.invalidate();
+        fqnsIndexed = false;
+    }
+
+    /**
+     * Пометка всех индексов как устаревших.
+     */
+    void invalidate() {
+        dbHosts.invalidate();
+        fsHosts.invalidate();
+        domains.values().forEach(NodeIndex::invalidate);
+        items.values().forEach(NodeIndex::invalidate);
+        fqnsIndexed = false;
+    }
+
+    private boolean contains(HostInfo host, String fqn) {
+        for (Domain dom : host.getDomain()) {
+            if (items(dom).indexOf(fqn) != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Полный обход схемы деплоя; индексы элементов удалённых доменов отбрасываются.
+    private void rebuildFqns(Deploy actual) {
+        SchemaLock.beforeFill();
+        hostsByFqn.clear();
+        Map<Domain, NodeIndex<DeployItem>> live = new IdentityHashMap<>();
+        List<HostInfo> hosts = new ArrayList<>(actual.getDbHost());
+        hosts.addAll(actual.getFsHost());
+        for (HostInfo host : hosts) {
+            for (Domain dom : host.getDomain()) {
+                NodeIndex<DeployItem> index = items.get(dom);
+                if (index != null) {
+                    live.put(dom, index);
+                }
+                for (DeployItem item : dom.getItem()) {
+                    hostsByFqn.computeIfAbsent(item.getFqn(), key -> new LinkedHashSet<>()).add(host);
+                }
+            }
+        }
+        items.keySet().retainAll(live.keySet());
+        fqnsIndexed = true;
+    }
+
+    // Удалённые хосты выпадают из индекса доменов при перестроении индекса хостов.
+    private void retainDomains() {
+        Set<HostInfo> actual = Collections.newSetFromMap(new IdentityHashMap<>());
+        actual.addAll(dbHosts.indexed);
+        actual.addAll(fsHosts.indexed);
+        domains.keySet().retainAll(actual);
+    }
+
+    /**
+     * Хосты одного вида по ключу подключения. В отличие от {@link NodeIndex}, хранит все хосты с ключом.
+     */
+    private final class HostKeys<T extends HostInfo> {
+
+        private final Supplier<List<T>> source;
+        private final Function<T, List<Object>> key;
+        private final Map<List<Object>, List<T>> hosts = new HashMap<>();
+
+        private List<T> indexed = Collections.emptyList();
+        private int indexedSize;
+        private boolean stale = true;
+
+        HostKeys(Supplier<List<T>> source, Function<T, List<Object>> key) {
+            this.source = source;
+            this.key = key;
+        }
+
+        List<T> find(List<Object> hostKey) {
+            List<T> list = source.get();
+            if (stale || list != indexed || list.size() != indexedSize) {
+                rebuild(list);
+            }
+            List<T> found = hosts.getOrDefault(hostKey, Collections.emptyList());
+            for (T host : found) {
+                if (!hostKey.equals(key.apply(host))) {
+                    // Реквизиты хоста изменены в обход индекса.
+                    rebuild(list);
+                    return hosts.getOrDefault(hostKey, Collections.emptyList());
+                }
+            }
+            return found;
+        }
+
+        void invalidate() {
+            stale = true;
+        }
+
+        private void rebuild(List<T> list) {
+            SchemaLock.beforeFill();
+            hosts.clear();
+            for (T host : list) {
+                hosts.computeIfAbsent(key.apply(host), k -> new ArrayList<>(1)).add(host);
+            }
+            indexed = list;
+            indexedSize = list.size();
+            stale = false;
+            retainDomains();
+        }
+    }
+}
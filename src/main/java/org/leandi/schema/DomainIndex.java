@@ -0,0 +1,58 @@
+package org.leandi.schema;
+
+import lombok.Getter;
+import org.leandi.schema.domain.*;
+
+/**
+ * Индексы узлов одного домена по uid, а для анкеров, кнотов, tx-анкеров и cd-анкеров ещё и по мнемонике.
+ * Индексы по мнемонике производные от индексов по uid и получают их уведомления.
+ * Группы и реквизиты индексируются по id вместе с кэшем насыщенных групп,
+ * ссылки на кноты и анкеры — обратным индексом {@link ReferenceIndex}.
+ */
+@Getter
+final class DomainIndex {
+
+    private final Domain domain;
+    private final NodeIndex<Anchor> anchors;
+    private final NodeIndex<CdAnchor> cdAnchors;
+    private final NodeIndex<Tie> ties;
+    private final NodeIndex<Knot> knots;
+    private final NodeIndex<TxAnchor> txAnchors;
+    private final NodeIndex<Area> areas;
+    private final NodeIndex<Anchor> anchorMnemonics;
+    private final NodeIndex<CdAnchor> cdAnchorMnemonics;
+    private final NodeIndex<Knot> knotMnemonics;
+    private final NodeIndex<TxAnchor> txAnchorMnemonics;
+    private final GroupIndex groupIndex;
+    private final ReferenceIndex references;
+
+    DomainIndex(Domain domain) {
+        this.domain = domain;
+        this.anchors = NodeIndex.of(domain::getAnchor, Anchor::getUid);
+        this.cdAnchors = NodeIndex.of(domain::getCdAnchor, CdAnchor::getUid);
+        this.ties = NodeIndex.of(domain::getTie, Tie::getUid);
+        this.knots = NodeIndex.of(domain::getKnot, Knot::getUid);
+        this.txAnchors = NodeIndex.of(domain::getTxAnchor, TxAnchor::getUid);
+        this.areas = NodeIndex.of(domain::getArea, Area::getUid);
+        this.anchorMnemonics = anchors.derived(Anchor::getMnemonic);
+        this.cdAnchorMnemonics = cdAnchors.derived(CdAnchor::getMnemonic);
+        this.knotMnemonics = knots.derived(Knot::getMnemonic);
+        this.txAnchorMnemonics = txAnchors.derived(TxAnchor::getMnemonic);
+        this.groupIndex = new GroupIndex(domain);
+        this.references = ReferenceIndex.of(domain);
+    }
+
+    /**
+     * Пометка всех индексов домена как устаревших.
+     */
+    void invalidate() {
+        anchors.invalidate();
+        cdAnchors.invalidate();
+        ties.invalidate();
+        knots.invalidate();
+        txAnchors.invalidate();
+        areas.invalidate();
+        groupIndex.invalidate();
+        references.invalidate();
+    }
+}
@@ -0,0 +1,150 @@
+package org.leandi.schema;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Блокировки доменов проекта, разбитые по полосам.
+ * <p>
+ * Общий экземпляр передаётся через builder нескольким экземплярам SchemaUtils, работающим с доменами
+ * одного проекта, — каждому со своим текущим доменом. Изменение текущего домена берёт полосу его краткого
+ * наименования, поэтому изменения разных доменов выполняются одновременно. Изменения уровня проекта
+ * (домены и коннексионы проекта, схема деплоя) сначала берут блокировку проекта, затем полосы затронутых
+ * доменов. Блокировки берутся в порядке возрастания номера (блокировка проекта — номер 0), поэтому взаимная
+ * блокировка невозможна. Вложенный вызов из того же потока может брать уже взятые блокировки и блокировки
+ * с большими номерами; вызов, нарушающий порядок, отклоняется.
+ * <p>
+ * Чтения блокировок не берут: модели проекта и деплоя, изменяемые другим экземпляром, следует читать через него.
+ */
+public final class DomainStripes {
+
+    private static final int DEFAULT_STRIPES = 64;
+
+    /**
+     * Номер блокировки, взятой текущим потоком последней, для проверки порядка.
+     */
+    private static final class Held {
+        private int highest = -1;
+    }
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+    private final ThreadLocal<Held> held = ThreadLocal.withInitial(Held::new);
+
+    public DomainStripes() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes число полос, округляется вверх до степени двойки.
+     */
+    public DomainStripes(int stripes) {
+        if (stripes < 1 || stripes > 1 << 16) {
+            throw new IllegalArgumentException("Число полос должно быть от 1 до 65536: " + stripes);
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.locks = new ReentrantLock[size + 1];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @return номер полосы домена, от 1 до числа полос.
+     */
+    int stripe(String shortName) {
+        if (shortName == null) {
+            return 1;
+        }
+        int hash = shortName.hashCode();
+        return ((hash ^ hash >>> 16) & mask) + 1;
+    }
+
+    /**
+     * Изменение доменов под их полосами.
+     *
+     * @param shortNames краткие наименования доменов. Вычисляются повторно после взятия полос:
+     *                   если за это время добавились домены с невзятыми полосами, полосы берутся заново.
+     * @param action     изменение.
+     * @return результат изменения.
+     * @throws E ошибка изменения.
+     */
+    <T, E extends Exception> T lock(Supplier<Collection<String>> shortNames, SchemaLock.Action<T, E> action) throws E {
+        Held thread = held.get();
+        int outer = thread.highest;
+        try {
+            while (true) {
+                int[] stripes = stripes(shortNames.get());
+                acquire(stripes, thread);
+                try {
+                    if (covers(stripes, shortNames.get())) {
+                        return action.run();
+                    }
+                } finally {
+                    release(stripes);
+                    thread.highest = outer;
+                }
+            }
+        } finally {
+            thread.highest = outer;
+        }
+    }
+
+    /**
+     * Изменение уровня проекта: под блокировкой проекта и полосами затронутых доменов.
+     * Затронутые домены вычисляются под блокировкой проекта.
+     *
+     * @see #lock(Supplier, SchemaLock.Action)
+     */
+    <T, E extends Exception> T lockProject(Supplier<Collection<String>> shortNames, SchemaLock.Action<T, E> action) throws E {
+        Held thread = held.get();
+        int outer = thread.highest;
+        int[] project = {0};
+        acquire(project, thread);
+        try {
+            return lock(shortNames, action);
+        } finally {
+            release(project);
+            thread.highest = outer;
+        }
+    }
+
+    private int[] stripes(Collection<String> shortNames) {
+        return shortNames.stream().mapToInt(this::stripe).sorted().distinct().toArray();
+    }
+
+    private boolean covers(int[] stripes, Collection<String> shortNames) {
+        for (String shortName : shortNames) {
+            if (Arrays.binarySearch(stripes, stripe(shortName)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Блокировки берутся по возрастанию номера; проверка порядка — до взятия первой из них.
+    private void acquire(int[] stripes, Held thread) {
+        for (int stripe : stripes) {
+            if (stripe < thread.highest && !locks[stripe].isHeldByCurrentThread()) {
+                throw new IllegalStateException("Нарушен порядок взятия блокировок доменов: блокировка " + stripe
+                        + " берётся после " + thread.highest + ".");
+            }
+        }
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+            thread.highest = Math.max(thread.highest, stripe);
+        }
+    }
+
+    private void release(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.leandi.schema;
+
+import lombok.Getter;
+import org.leandi.schema.domain.Domain;
+import org.leandi.schema.domain.Group;
+import org.leandi.schema.domain.Property;
+
+import java.util.*;
+
+/**
+ * Индексы групп и реквизитов домена по id и кэш насыщенных групп для groupsAsJson().
+ * <p>
+ * Насыщенная группа — копия группы домена, в которой ссылки на реквизиты заменены реквизитами
+ * из списка Properties, а подгруппы — копиями соответствующих групп домена с насыщенными реквизитами.
+ * Группы домена при этом не изменяются. Кэш хранится по самой группе домена и сбрасывается точечно:
+ * при изменении группы — для неё и групп, в которые она вложена, при изменении реквизита — для групп,
+ * которые на него ссылаются напрямую или через подгруппу. Изменение групп в обход SchemaUtils
+ * требует вызова {@link #invalidate()}.
+ */
+final class GroupIndex {
+
+    @Getter
+    private final NodeIndex<Group> groups;
+    @Getter
+    private final NodeIndex<Property> properties;
+
+    private Map<Group, Group> resolved = new IdentityHashMap<>();
+    private final Map<String, Set<Group>> groupDependents = new HashMap<>();
+    private final Map<String, Set<Group>> propertyDependents = new HashMap<>();
+
+    GroupIndex(Domain domain) {
+        this.groups = NodeIndex.of(domain::getGroup, Group::getId);
+        this.properties = NodeIndex.of(() -> domain.getProperties().isEmpty()
+                ? Collections.emptyList()
+                : domain.getProperties().get(0).getProperty(), Property::getId);
+    }
+
+    /**
+     * Насыщенные группы в порядке групп домена. Пересобираются только сброшенные группы.
+     *
+     * @param domainGroups группы домена.
+     * @return список насыщенных групп.
+     */
+    List<Group> resolvedGroups(List<Group> domainGroups) {
+        List<Group> cached = cachedGroups(domainGroups);
+        if (cached != null) {
+            return cached;
+        }
+        SchemaLock.beforeFill();
+        Map<Group, Group> actual = new IdentityHashMap<>(domainGroups.size());
+        List<Group> result = new ArrayList<>(domainGroups.size());
+        for (Group group : domainGroups) {
+            Group resolvedGroup = resolved.get(group);
+            if (resolvedGroup == null) {
+                resolvedGroup = resolve(group);
+            }
+            actual.put(group, resolvedGroup);
+            result.add(resolvedGroup);
+        }
+        // Удалённые группы выпадают из кэша.
+        resolved = actual;
+        return result;
+    }
+
+    // Насыщенные группы без изменения кэша либо null, если какая-то группа не насыщена или кэш надо почистить.
+    private List<Group> cachedGroups(List<Group> domainGroups) {
+        if (resolved.size() != domainGroups.size()) {
+            return null;
+        }
+        List<Group> result = new ArrayList<>(domainGroups.size());
+        for (Group group : domainGroups) {
+            Group resolvedGroup = resolved.get(group);
+            if (resolvedGroup == null) {
+                return null;
+            }
+            result.add(resolvedGroup);
+        }
+        return result;
+    }
+
+    /**
+     * Сброс насыщенной группы и групп, в которые она вложена.
+     *
+     * @param id идентификатор изменённой группы.
+     */
+    void groupChanged(String id) {
+        Group group = groups.get(id);
+        if (group != null) {
+            resolved.remove(group);
+        }
+        evict(groupDependents.remove(id));
+    }
+
+    /**
+     * Сброс насыщенных групп, ссылающихся на реквизит.
+     *
+     * @param id идентификатор изменённого реквизита.
+     */
+    void propertyChanged(String id) {
+        evict(propertyDependents.remove(id));
+    }
+
+    /**
+     * Пометка индексов как устаревших и очистка кэша насыщенных групп.
+     */
+    void invalidate() {
+        groups.invalidate();
+        properties.invalidate();
+        resolved.clear();
+        groupDependents.clear();
+        propertyDependents.clear();
+    }
+
+    private void evict(Set<Group> dependents) {
+        if (dependents != null) {
+            dependents.forEach(resolved::remove);
+        }
+    }
+
+    private Group resolve(Group group) {
+        Group resolvedGroup = copyWithProperties(group, group);
+        for (Group groupInGroup : group.getGroup()) {
+            dependOn(groupDependents, groupInGroup.getId(), group);
+            Group nested = groups.get(groupInGroup.getId());
+            if (nested != null) {
+                Group resolvedNested = copyWithProperties(nested, group);
+                resolvedNested.getGroup().addAll(nested.getGroup());
+                resolvedGroup.getGroup().add(resolvedNested);
+            }
+        }
+        return resolvedGroup;
+    }
+
+    // Копия группы с насыщенными реквизитами; зависимости от реквизитов записываются на владельца кэша.
+    private Group copyWithProperties(Group group, Group owner) {
+        Group copy = new Group();
+        copy.setId(group.getId());
+        copy.setName(group.getName());
+        copy.setDescription(group.getDescription());
+        for (Property reference : group.getProperty()) {
+            dependOn(propertyDependents, reference.getId(), owner);
+            Property property = properties.get(reference.getId());
+            if (property != null) {
+                copy.getProperty().add(property);
+            }
+        }
+        return copy;
+    }
+
+    private static void dependOn(Map<String, Set<Group>> dependents, String id, Group owner) {
+        if (id != null) {
+            dependents.computeIfAbsent(id, key -> Collections.newSetFromMap(new IdentityHashMap<>())).add(owner);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.leandi.schema;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+import jakarta.xml.bind.ValidationEventHandler;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Общий для процесса реестр JAXB-контекстов.
+ * Создание JAXBContext — самая дорогая часть работы с XML, поэтому контекст
+ * создаётся один раз на набор классов, а маршаллеры и анмаршаллеры
+ * переиспользуются через ограниченные пулы.
+ */
+final class JaxbContextRegistry {
+
+    /**
+     * Максимальное количество простаивающих маршаллеров (анмаршаллеров) в пуле одного контекста.
+     */
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * Контексты, сгруппированные по набору классов.
+     */
+    private static final Map<List<Class<?>>, PooledContext> CONTEXTS = new ConcurrentHashMap<>();
+
+    private JaxbContextRegistry() {
+    }
+
+    /**
+     * Получение контекста для набора классов. Контекст создаётся при первом обращении.
+     *
+     * @param classes классы, для которых создаётся контекст.
+     * @return контекст с пулами маршаллеров и анмаршаллеров.
+     */
+    static PooledContext forClasses(Class<?>... classes) {
+        List<Class<?>> key = Arrays.asList(classes);
+        PooledContext context = CONTEXTS.get(key);
+        if (context == null) {
+            try {
+                context = new PooledContext(JAXBContext.newInstance(classes));
+            } catch (JAXBException e) {
+                throw new IllegalStateException("Не удалось создать JAXB-контекст для " + key, e);
+            }
+            PooledContext existing = CONTEXTS.putIfAbsent(key, context);
+            if (existing != null) {
+                context = existing;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Действие над маршаллером/анмаршаллером, взятым из пула.
+     *
+     * @param <T> тип маршаллера/анмаршаллера.
+     * @param <R> тип результата.
+     */
+    @FunctionalInterface
+    interface JaxbAction<T, R> {
+        R apply(T t) throws JAXBException;
+    }
+
+    /**
+     * JAXB-контекст с пулами маршаллеров и анмаршаллеров.
+     * Сами маршаллеры не потокобезопасны, поэтому каждый из них
+     * в любой момент времени используется только одним потоком.
+     */
+    static final class PooledContext {
+
+        private final JAXBContext context;
+        private final BlockingQueue<Unmarshaller> unmarshallers = new ArrayBlockingQueue<>(POOL_SIZE);
+        private final BlockingQueue<Marshaller> marshallers = new ArrayBlockingQueue<>(POOL_SIZE);
+
+        private PooledContext(JAXBContext context) {
+            this.context = context;
+        }
+
+        JAXBContext getContext() {
+            return context;
+        }
+
+        /**
+         * Выполнение действия с анмаршаллером из пула.
+         *
+         * @param action действие.
+         * @return результат действия.
+         * @throws JAXBException ошибка анмаршаллинга.
+         */
+        <R> R withUnmarshaller(JaxbAction<Unmarshaller, R> action) throws JAXBException {
+            Unmarshaller unmarshaller = unmarshallers.poll();
+            if (unmarshaller == null) {
+                unmarshaller = context.createUnmarshaller();
+            }
+            ValidationEventHandler eventHandler = unmarshaller.getEventHandler();
+            try {
+                return action.apply(unmarshaller);
+            } finally {
+                // Возвращаем настройки, которые мог изменить вызывающий код.
+                unmarshaller.setSchema(null);
+                unmarshaller.setEventHandler(eventHandler);
+                unmarshaller.setListener(null);
+                unmarshallers.offer(unmarshaller);
+            }
+        }
+
+        /**
+         * Выполнение действия с маршаллером из пула.
+         * Маршаллер всегда настроен на форматированный вывод.
+         *
+         * @param action действие.
+         * @return результат действия.
+         * @throws JAXBException ошибка маршаллинга.
+         */
+        <R> R withMarshaller(JaxbAction<Marshaller, R> action) throws JAXBException {
+            Marshaller marshaller = marshallers.poll();
+            if (marshaller == null) {
+                marshaller = context.createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            }
+            try {
+                return action.apply(marshaller);
+            } finally {
+                marshallers.offer(marshaller);
+            }
+        }
+    }
+}
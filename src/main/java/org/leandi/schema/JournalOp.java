@@ -0,0 +1,173 @@
+package org.leandi.schema;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Операция журнала изменений SchemaUtils: код записи и повтор соответствующего метода по аргументам записи.
+ * Коды хранятся в файлах журнала, поэтому код существующей операции не меняется.
+ */
+enum JournalOp {
+
+    UPDATE_GROUP(1, (utils, args) -> utils.updateGroup(args.get(0))),
+    REMOVE_GROUP(2, (utils, args) -> utils.removeGroup(args.get(0))),
+    REMOVE_PROPERTIES_FROM_GROUP(3, (utils, args) -> utils.removePropertiesFromGroup(args.get(0))),
+    REMOVE_GROUPS_FROM_GROUP(4, (utils, args) -> utils.removeGroupsFromGroup(args.get(0))),
+    ADD_PROPERTIES_TO_GROUP(5, (utils, args) -> utils.addPropertiesToGroup(args.get(0))),
+    ADD_GROUPS_TO_GROUP(6, (utils, args) -> utils.addGroupsToGroup(args.get(0))),
+    UPDATE_PROPERTY(7, (utils, args) -> utils.updateProperty(args.get(0))),
+    DELETE_PROPERTY(8, (utils, args) -> utils.deleteProperty(args.get(0))),
+    UPDATE_DOMAIN(9, (utils, args) -> utils.updateDomain(args.get(0))),
+    UPDATE_KNOT(10, (utils, args) -> utils.updateKnot(args.get(0))),
+    ADD_KNOT(11, (utils, args) -> utils.addKnot(args.get(0))),
+    PATCH_KNOT(12, (utils, args) -> utils.patchKnot(args.get(0))),
+    UPDATE_ANCHOR(13, (utils, args) -> utils.updateAnchor(args.get(0))),
+    ADD_ANCHOR(14, (utils, args) -> utils.addAnchor(args.get(0))),
+    PATCH_ANCHOR(15, (utils, args) -> utils.patchAnchor(args.get(0))),
+    UPDATE_TX_ANCHOR(16, (utils, args) -> utils.updateTxAnchor(args.get(0))),
+    ADD_TX_ANCHOR(17, (utils, args) -> utils.addTxAnchor(args.get(0))),
+    PATCH_TX_ANCHOR(18, (utils, args) -> utils.patchTxAnchor(args.get(0))),
+    UPDATE_TIE(19, (utils, args) -> utils.updateTie(args.get(0))),
+    ADD_TIE(20, (utils, args) -> utils.addTie(args.get(0))),
+    PATCH_TIE(21, (utils, args) -> utils.patchTie(args.get(0))),
+    UPDATE_CD_ANCHOR(22, (utils, args) -> utils.updateCdAnchor(args.get(0))),
+    ADD_CD_ANCHOR(23, (utils, args) -> utils.addCdAnchor(args.get(0))),
+    PATCH_CD_ANCHOR(24, (utils, args) -> utils.patchCdAnchor(args.get(0))),
+    /**
+     * Аргументы: раздел, признак каскада, uid.
+     */
+    DELETE_NODES(25, (utils, args) -> utils.deleteNodes(JsonSection.valueOf(args.get(0)),
+            args.subList(2, args.size()), Boolean.parseBoolean(args.get(1)))),
+    /**
+     * Аргументы: команды подряд, см. {@link #commandArgs(List)}.
+     */
+    APPLY(26, (utils, args) -> utils.apply(commands(args))),
+    UPDATE_CONNEXIONS(27, (utils, args) -> utils.updateConnexions(args.get(0))),
+    DELETE_CONNEXION(28, (utils, args) -> utils.deleteConnexion(args.get(0))),
+    ADD_DOMAIN(29, (utils, args) -> utils.addDomain(args.get(0))),
+    DELETE_DOMAIN(30, (utils, args) -> utils.deleteDomain(args.get(0))),
+    DELETE_DOMAIN_FROM_DEPLOY(31, (utils, args) -> utils.deleteDomainFromDeploy(args.get(0))),
+    ADD_DEPLOY_ITEM(32, (utils, args) -> utils.addDeployItem(args.get(0))),
+    DELETE_DEPLOY_ITEM(33, (utils, args) -> utils.deleteDeployItem(args.get(0))),
+    /**
+     * Аргументы: пары прежнего и нового кратких наименований.
+     */
+    RENEW_DOMAINS(34, (utils, args) -> utils.renewDomains(pairs(args))),
+    ADD_FS_HOST(35, (utils, args) -> utils.addFsHost(args.get(0))),
+    UPDATE_FS_HOST(36, (utils, args) -> utils.updateFsHost(args.get(0))),
+    ADD_DB_HOST(37, (utils, args) -> utils.addDbHost(args.get(0))),
+    UPDATE_DB_HOST(38, (utils, args) -> utils.updateDbHost(args.get(0))),
+    UPDATE_AREA(39, (utils, args) -> utils.updateArea(args.get(0))),
+    DELETE_AREA(40, (utils, args) -> utils.deleteArea(args.get(0)));
+
+    private static final Map<Integer, JournalOp> BY_CODE = new HashMap<>();
+
+    static {
+        for (JournalOp op : values()) {
+            BY_CODE.put(op.code, op);
+        }
+    }
+
+    private final int code;
+    private final BiConsumer<SchemaUtils, List<String>> replay;
+
+    JournalOp(int code, BiConsumer<SchemaUtils, List<String>> replay) {
+        this.code = code;
+        this.replay = replay;
+    }
+
+    int code() {
+        return code;
+    }
+
+    /**
+     * @param code код записи журнала.
+     * @return операция либо null, если код неизвестен.
+     */
+    static JournalOp byCode(int code) {
+        return BY_CODE.get(code);
+    }
+
+    /**
+     * Повтор операции по аргументам записи.
+     */
+    void replay(SchemaUtils utils, List<String> args) {
+        replay.accept(utils, args);
+    }
+
+    static List<String> deleteNodesArgs(JsonSection section, Collection<String> uids, boolean cascade) {
+        List<String> args = new ArrayList<>(uids.size() + 2);
+        args.add(section.name());
+        args.add(Boolean.toString(cascade));
+        args.addAll(uids);
+        return args;
+    }
+
+    static List<String> pairsArgs(Map<String, String> pairs) {
+        List<String> args = new ArrayList<>(pairs.size() * 2);
+        pairs.forEach((key, value) -> {
+            args.add(key);
+            args.add(value);
+        });
+        return args;
+    }
+
+    // Пары повторяются в порядке записи: переименования применяются по очереди.
+    private static Map<String, String> pairs(List<String> args) {
+        Map<String, String> pairs = new LinkedHashMap<>();
+        for (int i = 0; i < args.size(); i += 2) {
+            pairs.put(args.get(i), args.get(i + 1));
+        }
+        return pairs;
+    }
+
+    /**
+     * Команда записывается операцией и разделом, затем json либо признаком каскада, числом uid и uid.
+     */
+    static List<String> commandArgs(List<SchemaCommand> commands) {
+        List<String> args = new ArrayList<>();
+        for (SchemaCommand command : commands) {
+            args.add(command.getOperation().name());
+            args.add(command.getSection().name());
+            if (command.getOperation() == SchemaCommand.Operation.DELETE) {
+                args.add(Boolean.toString(command.isCascade()));
+                args.add(Integer.toString(command.getUids().size()));
+                args.addAll(command.getUids());
+            } else {
+                args.add(command.getJson());
+            }
+        }
+        return args;
+    }
+
+    private static List<SchemaCommand> commands(List<String> args) {
+        List<SchemaCommand> commands = new ArrayList<>();
+        int i = 0;
+        while (i < args.size()) {
+            SchemaCommand.Operation operation = SchemaCommand.Operation.valueOf(args.get(i++));
+            JsonSection section = JsonSection.valueOf(args.get(i++));
+            switch (operation) {
+                case UPDATE:
+                    commands.add(SchemaCommand.update(section, args.get(i++)));
+                    break;
+                case ADD:
+                    commands.add(SchemaCommand.add(section, args.get(i++)));
+                    break;
+                case PATCH:
+                    commands.add(SchemaCommand.patch(section, args.get(i++)));
+                    break;
+                default:
+                    boolean cascade = Boolean.parseBoolean(args.get(i++));
+                    int count = Integer.parseInt(args.get(i++));
+                    commands.add(SchemaCommand.delete(section, args.subList(i, i + count), cascade));
+                    i += count;
+            }
+        }
+        return commands;
+    }
+}
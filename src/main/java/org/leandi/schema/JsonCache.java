@@ -0,0 +1,157 @@
+package org.leandi.schema;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Кэш json-представления разделов SchemaUtils со счётчиками изменений.
+ * <p>
+ * Каждый метод изменения SchemaUtils увеличивает счётчик затронутых разделов. Сериализованный раздел
+ * хранится, пока счётчик не изменится, поэтому повторное чтение раздела не сериализует его заново.
+ * ETag раздела составлен из имени раздела, эпохи кэша и счётчика: эпоха случайна для каждого экземпляра,
+ * поэтому теги разных экземпляров SchemaUtils не совпадают.
+ * Изменение размера списка в обход SchemaUtils тоже приводит к пересериализации, а изменение узлов
+ * на месте требует вызова {@link SchemaUtils#invalidateIndexes()}.
+ */
+final class JsonCache {
+
+    private static final JsonSection[] SECTIONS = JsonSection.values();
+
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+    private final long[] versions = new long[SECTIONS.length];
+    private final long[] inPlaceVersions = new long[SECTIONS.length];
+    private final Entry[] entries = new Entry[SECTIONS.length];
+
+    /**
+     * Сериализованный раздел.
+     */
+    static final class Entry {
+        private final byte[] bytes;
+        private final long version;
+        private final int size;
+        private final String etag;
+        private String json;
+
+        private Entry(byte[] bytes, long version, int size, String etag) {
+            this.bytes = bytes;
+            this.version = version;
+            this.size = size;
+            this.etag = etag;
+        }
+
+        /**
+         * @return json в UTF-8. Массив не копируется и не должен изменяться.
+         */
+        byte[] bytes() {
+            return bytes;
+        }
+
+        String json() {
+            if (json == null) {
+                json = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return json;
+        }
+
+        String etag() {
+            return etag;
+        }
+    }
+
+    /**
+     * Учёт изменения разделов, в том числе изменения узлов на месте.
+     */
+    void changed(JsonSection... sections) {
+        for (JsonSection section : sections) {
+            versions[section.ordinal()]++;
+            inPlaceVersions[section.ordinal()]++;
+        }
+    }
+
+    /**
+     * Учёт изменения разделов только заменой, добавлением и удалением узлов.
+     * Узлы, изменённые на месте, SchemaUtils сообщает снимкам отдельно, см. {@link SnapshotPublisher}.
+     */
+    void nodesChanged(JsonSection... sections) {
+        for (JsonSection section : sections) {
+            versions[section.ordinal()]++;
+        }
+    }
+
+    /**
+     * Учёт изменения всех разделов домена.
+     */
+    void domainChanged() {
+        for (JsonSection section : SECTIONS) {
+            if (section.isDomainSection()) {
+                changed(section);
+            }
+        }
+    }
+
+    /**
+     * Учёт изменения всех разделов.
+     */
+    void changedAll() {
+        changed(SECTIONS);
+    }
+
+    /**
+     * @return счётчик изменений раздела.
+     */
+    long version(JsonSection section) {
+        return versions[section.ordinal()];
+    }
+
+    /**
+     * @return счётчик изменений раздела через {@link #changed(JsonSection...)}.
+     */
+    long inPlaceVersion(JsonSection section) {
+        return inPlaceVersions[section.ordinal()];
+    }
+
+    /**
+     * Готовый сериализованный раздел без обращения к модели, для оптимистичного чтения.
+     * В отличие от {@link #get}, не сверяет размер списка: в конкурентном режиме модель меняется только через SchemaUtils.
+     *
+     * @param section раздел.
+     * @return раздел, если он сериализован после последнего изменения, иначе null.
+     */
+    Entry peek(JsonSection section) {
+        int ordinal = section.ordinal();
+        Entry entry = entries[ordinal];
+        return entry != null && entry.version == versions[ordinal] ? entry : null;
+    }
+
+    /**
+     * Сериализованный раздел. Сериализуется заново, если счётчик или размер списка изменились.
+     *
+     * @param section раздел.
+     * @param utils   владелец кэша.
+     * @return сериализованный раздел.
+     * @throws JsonProcessingException ошибка сериализации.
+     */
+    Entry get(JsonSection section, SchemaUtils utils) throws JsonProcessingException {
+        int ordinal = section.ordinal();
+        List<?> nodes = section.nodes(utils);
+        Entry entry = entries[ordinal];
+        boolean current = entry != null && entry.version == versions[ordinal];
+        if (current && entry.size == nodes.size()) {
+            return entry;
+        }
+        SchemaLock.beforeFill();
+        if (current) {
+            // Список изменён в обход SchemaUtils: прежний ETag больше не соответствует содержимому.
+            versions[ordinal]++;
+            inPlaceVersions[ordinal]++;
+        }
+        long version = versions[ordinal];
+        String etag = "\"" + section.getField() + "-" + Long.toHexString(epoch) + "-" + version + "\"";
+        entry = new Entry(section.writer().writeValueAsBytes(nodes), version, nodes.size(), etag);
+        entries[ordinal] = entry;
+        return entry;
+    }
+}
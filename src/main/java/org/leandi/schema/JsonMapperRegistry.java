@@ -0,0 +1,341 @@
+package org.leandi.schema;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Общий для процесса ObjectMapper с типизированными ObjectReader/ObjectWriter.
+ * Каждый новый ObjectMapper заново строит сериализаторы и десериализаторы классов модели,
+ * поэтому маппер создаётся один раз, а читатели и писатели — один раз на тип.
+ * Маппер после создания не перенастраивается, поэтому читатели и писатели потокобезопасны.
+ */
+final class JsonMapperRegistry {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final ObjectWriter WRITER = MAPPER.writer();
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private static final int DECODE_BUFFER_SIZE = 8 * 1024;
+
+    private static final String PROJECTION_FILTER = "projection";
+
+    /**
+     * Маппер для merge-patch: вложенные объекты дополняются, а не заменяются.
+     */
+    private static final ObjectMapper MERGE_MAPPER = MAPPER.copy().setDefaultMergeable(true);
+
+    /**
+     * Аксессоры свойств по json-имени для каждого класса модели.
+     */
+    private static final Map<Class<?>, Map<String, AnnotatedMember>> ACCESSORS = new ConcurrentHashMap<>();
+
+    /**
+     * Маппер для проекций: фильтр полей подключается ко всем классам через mix-in на Object.
+     */
+    private static final ObjectMapper PROJECTION_MAPPER = MAPPER.copy().addMixIn(Object.class, ProjectionMixIn.class);
+
+    /**
+     * Читатели по типу узла.
+     */
+    private static final Map<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    /**
+     * Писатели списков по типу элемента.
+     */
+    private static final Map<Class<?>, ObjectWriter> LIST_WRITERS = new ConcurrentHashMap<>();
+
+    /**
+     * Писатели списков для проекций по типу элемента, без фильтра.
+     */
+    private static final Map<Class<?>, ObjectWriter> PROJECTION_WRITERS = new ConcurrentHashMap<>();
+
+    private JsonMapperRegistry() {
+    }
+
+    /**
+     * Запись json через генератор.
+     */
+    @FunctionalInterface
+    interface JsonAction {
+        void apply(JsonGenerator generator) throws IOException;
+    }
+
+    /**
+     * @param type тип узла.
+     * @return читатель узлов этого типа.
+     */
+    static ObjectReader readerFor(Class<?> type) {
+        return READERS.computeIfAbsent(type, MAPPER::readerFor);
+    }
+
+    /**
+     * @param elementType тип элемента списка.
+     * @return писатель списков с элементами этого типа.
+     */
+    static ObjectWriter listWriterFor(Class<?> elementType) {
+        return LIST_WRITERS.computeIfAbsent(elementType,
+                type -> MAPPER.writerFor(MAPPER.getTypeFactory().constructCollectionType(List.class, type)));
+    }
+
+    /**
+     * Применение JSON merge-patch (RFC 7386) к узлу модели на месте.
+     * Поля патча записываются в узел, вложенные объекты дополняются рекурсивно,
+     * массивы заменяются целиком, null в поле-списке очищает список. Остальные поля узла не затрагиваются.
+     *
+     * @param target узел модели.
+     * @param patch  патч.
+     * @throws IOException патч не соответствует типам полей узла.
+     */
+    static void mergePatch(Object target, ObjectNode patch) throws IOException {
+        clearPatchedLists(target, patch);
+        MERGE_MAPPER.readerForUpdating(target).readValue(patch);
+    }
+
+    /**
+     * Обратный merge-patch: текущие значения полей узла, которые изменит патч.
+     * Применение обратного патча после патча возвращает эти поля к текущему состоянию,
+     * вложенные объекты и списки восстанавливаются по своему json-представлению.
+     *
+     * @param target узел модели.
+     * @param patch  патч.
+     * @return обратный патч.
+     */
+    static ObjectNode inversePatch(Object target, ObjectNode patch) {
+        Map<String, AnnotatedMember> accessors = ACCESSORS.computeIfAbsent(target.getClass(), JsonMapperRegistry::accessors);
+        ObjectNode inverse = MAPPER.createObjectNode();
+        Iterator<String> fields = patch.fieldNames();
+        while (fields.hasNext()) {
+            String field = fields.next();
+            AnnotatedMember accessor = accessors.get(field);
+            if (accessor != null) {
+                inverse.set(field, MAPPER.valueToTree(accessor.getValue(target)));
+            }
+        }
+        return inverse;
+    }
+
+    // Списки модели доступны только через геттер, и при слиянии Jackson дописывает в них элементы.
+    // Поэтому списки, заменяемые патчем, очищаются заранее.
+    private static void clearPatchedLists(Object target, ObjectNode patch) {
+        Map<String, AnnotatedMember> accessors = ACCESSORS.computeIfAbsent(target.getClass(), JsonMapperRegistry::accessors);
+        Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            AnnotatedMember accessor = accessors.get(field.getKey());
+            Object value = accessor != null ? accessor.getValue(target) : null;
+            if (value instanceof Collection && (field.getValue().isArray() || field.getValue().isNull())) {
+                ((Collection<?>) value).clear();
+            } else if (value != null && field.getValue().isObject()) {
+                clearPatchedLists(value, (ObjectNode) field.getValue());
+            }
+        }
+    }
+
+    private static Map<String, AnnotatedMember> accessors(Class<?> type) {
+        BeanDescription description = MAPPER.getSerializationConfig().introspect(MAPPER.constructType(type));
+        Map<String, AnnotatedMember> accessors = new HashMap<>();
+        for (BeanPropertyDefinition property : description.findProperties()) {
+            if (property.getAccessor() != null) {
+                accessors.put(property.getName(), property.getAccessor());
+            }
+        }
+        return accessors;
+    }
+
+    /**
+     * Писатель списка, выгружающий у элементов списка только выбранные поля.
+     *
+     * @param elementType тип элемента списка.
+     * @param fields      json-имена выгружаемых полей.
+     * @param roots       элементы списка. Поля вложенных объектов не ограничиваются.
+     * @return писатель проекции.
+     */
+    static ObjectWriter projectionWriterFor(Class<?> elementType, Set<String> fields, Set<Object> roots) {
+        ObjectWriter writer = PROJECTION_WRITERS.computeIfAbsent(elementType, type -> PROJECTION_MAPPER.writerFor(
+                PROJECTION_MAPPER.getTypeFactory().constructCollectionType(List.class, type)));
+        return writer.with(new SimpleFilterProvider().addFilter(PROJECTION_FILTER, new ProjectionFilter(fields, roots)));
+    }
+
+    /**
+     * @return писатель произвольных значений.
+     */
+    static ObjectWriter writer() {
+        return WRITER;
+    }
+
+    /**
+     * Потоковое чтение json-массива узлов модели: каждый элемент привязывается к типу узла
+     * прямо из парсера, без промежуточного дерева.
+     *
+     * @param json json-массив узлов.
+     * @param type тип узла модели.
+     * @return узлы модели в порядке массива.
+     * @throws IllegalArgumentException если строка не является массивом узлов;
+     *                                  сообщение содержит индекс элемента, который не удалось прочитать.
+     */
+    static <T> List<T> readArray(String json, Class<T> type) {
+        ObjectReader reader = readerFor(type);
+        List<T> nodes = new ArrayList<>();
+        try (JsonParser parser = MAPPER.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Ожидался json-массив узлов " + type.getSimpleName() + ".");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new IllegalArgumentException("Незавершённый json-массив узлов " + type.getSimpleName() + ".");
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("Элемент [" + nodes.size() + "] массива узлов "
+                            + type.getSimpleName() + " не является объектом.");
+                }
+                nodes.add(reader.readValue(parser, type));
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Не удалось распарсить элемент [" + nodes.size() + "] массива узлов "
+                    + type.getSimpleName() + ": " + e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Не удалось распарсить список узлов из строкового представления.", e);
+        }
+        return nodes;
+    }
+
+    /**
+     * Потоковая запись json в поток байтов в UTF-8.
+     *
+     * @param out    поток для записи. Поток не закрывается.
+     * @param gzip   сжимать ли вывод gzip.
+     * @param action запись через генератор.
+     * @throws IOException ошибка записи.
+     */
+    static void write(OutputStream out, boolean gzip, JsonAction action) throws IOException {
+        if (!gzip) {
+            try (JsonGenerator generator = MAPPER.createGenerator(out)) {
+                write(generator, action);
+            }
+            return;
+        }
+        GZIPOutputStream gzipOut = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+        try (JsonGenerator generator = MAPPER.createGenerator(gzipOut)) {
+            write(generator, action);
+        }
+        gzipOut.finish();
+    }
+
+    /**
+     * Запись готового json в поток байтов.
+     *
+     * @param out  поток для записи. Поток не закрывается.
+     * @param gzip сжимать ли вывод gzip.
+     * @param json json в UTF-8.
+     * @throws IOException ошибка записи.
+     */
+    static void write(OutputStream out, boolean gzip, byte[] json) throws IOException {
+        write(out, gzip, List.of(json));
+    }
+
+    /**
+     * Запись json, собранного из готовых фрагментов, в поток байтов. Фрагменты пишутся как есть, без склейки.
+     *
+     * @param out   поток для записи. Поток не закрывается.
+     * @param gzip  сжимать ли вывод gzip.
+     * @param parts фрагменты json в UTF-8.
+     * @throws IOException ошибка записи.
+     */
+    static void write(OutputStream out, boolean gzip, List<byte[]> parts) throws IOException {
+        OutputStream target = gzip ? new GZIPOutputStream(out, GZIP_BUFFER_SIZE) : out;
+        for (byte[] part : parts) {
+            target.write(part);
+        }
+        if (gzip) {
+            ((GZIPOutputStream) target).finish();
+        }
+    }
+
+    /**
+     * Запись json, собранного из готовых фрагментов, в поток символов.
+     * Фрагменты декодируются через буфер фиксированного размера, без строки на весь json.
+     *
+     * @param out   поток для записи. Поток не закрывается.
+     * @param parts фрагменты json в UTF-8, каждый из целых символов.
+     * @throws IOException ошибка записи.
+     */
+    static void write(Writer out, List<byte[]> parts) throws IOException {
+        char[] buffer = new char[DECODE_BUFFER_SIZE];
+        for (byte[] part : parts) {
+            Reader in = new InputStreamReader(new ByteArrayInputStream(part), StandardCharsets.UTF_8);
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    // Закрытие генератора сбрасывает его буфер, но не закрывает поток вызывающего кода.
+    private static void write(JsonGenerator generator, JsonAction action) throws IOException {
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        action.apply(generator);
+    }
+
+    @JsonFilter(PROJECTION_FILTER)
+    private abstract static class ProjectionMixIn {
+    }
+
+    /**
+     * Фильтр полей элементов списка. Элементы узнаются по ссылке, поэтому вложенные объекты выгружаются целиком.
+     */
+    private static final class ProjectionFilter extends SimpleBeanPropertyFilter {
+
+        private final Set<String> fields;
+        private final Set<Object> roots;
+
+        private ProjectionFilter(Set<String> fields, Set<Object> roots) {
+            this.fields = fields;
+            this.roots = roots;
+        }
+
+        @Override
+        public void serializeAsField(Object pojo, JsonGenerator generator, SerializerProvider provider,
+                                     PropertyWriter writer) throws Exception {
+            if (fields.contains(writer.getName()) || !roots.contains(pojo)) {
+                writer.serializeAsField(pojo, generator, provider);
+            } else if (!generator.canOmitFields()) {
+                writer.serializeAsOmittedField(pojo, generator, provider);
+            }
+        }
+    }
+}
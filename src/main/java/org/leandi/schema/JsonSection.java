@@ -0,0 +1,72 @@
+package org.leandi.schema;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.leandi.schema.deploy.DbHost;
+import org.leandi.schema.deploy.FsHost;
+import org.leandi.schema.domain.*;
+import org.leandi.schema.domain.Domain;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Раздел json-экспорта SchemaUtils: список узлов домена, проекта или деплоя.
+ * Раздел выгружается в виде json-массива методами *AsJson и {@link SchemaUtils#writeJson},
+ * разделы домена целиком — {@link SchemaUtils#writeDomainJson} в виде объекта с полями {@link #getField()}.
+ */
+public enum JsonSection {
+
+    ANCHORS("anchors", Anchor.class, true, utils -> utils.getDomain().getAnchor()),
+    TIES("ties", Tie.class, true, utils -> utils.getDomain().getTie()),
+    KNOTS("knots", Knot.class, true, utils -> utils.getDomain().getKnot()),
+    TX_ANCHORS("txAnchors", TxAnchor.class, true, utils -> utils.getDomain().getTxAnchor()),
+    CD_ANCHORS("cdAnchors", CdAnchor.class, true, utils -> utils.getDomain().getCdAnchor()),
+    AREAS("areas", Area.class, true, utils -> utils.getDomain().getArea()),
+    /**
+     * Насыщенные группы, см. {@link SchemaUtils#groupsAsJson()}.
+     */
+    GROUPS("groups", Group.class, true, SchemaUtils::resolvedGroups),
+    PROPERTIES("properties", Properties.class, true, utils -> utils.getDomain().getProperties()),
+    DOMAINS("domains", Domain.class, false, utils -> utils.getProject().getDomain()),
+    CONNEXIONS("connexions", Connexions.class, false, utils -> utils.getProject().getConnexions()),
+    DB_HOSTS("dbHosts", DbHost.class, false, utils -> utils.getDeploy().getDbHost()),
+    FS_HOSTS("fsHosts", FsHost.class, false, utils -> utils.getDeploy().getFsHost());
+
+    private final String field;
+    private final Class<?> elementType;
+    private final boolean domainSection;
+    private final Function<SchemaUtils, List<?>> nodes;
+
+    JsonSection(String field, Class<?> elementType, boolean domainSection, Function<SchemaUtils, List<?>> nodes) {
+        this.field = field;
+        this.elementType = elementType;
+        this.domainSection = domainSection;
+        this.nodes = nodes;
+    }
+
+    /**
+     * @return имя поля раздела в экспорте домена целиком.
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @return {@code true}, если раздел входит в экспорт домена целиком.
+     */
+    public boolean isDomainSection() {
+        return domainSection;
+    }
+
+    Class<?> getElementType() {
+        return elementType;
+    }
+
+    List<?> nodes(SchemaUtils utils) {
+        return nodes.apply(utils);
+    }
+
+    ObjectWriter writer() {
+        return JsonMapperRegistry.listWriterFor(elementType);
+    }
+}
@@ -0,0 +1,182 @@
+package org.leandi.schema;
+
+import org.apache.commons.lang3.StringUtils;
+import org.leandi.schema.domain.Domain;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Список доменов проекта, материализующий домен при первом обращении к нему.
+ * Элемент списка хранит либо уже разобранный домен, либо положение его фрагмента в файле проекта.
+ * Поиск по shortName и uid не материализует домены, не прошедшие проверку.
+ */
+final class LazyDomainList extends AbstractList<Domain> implements RandomAccess {
+
+    private final List<Object> entries;
+    private final Function<LazyProjectLoader.DomainFragment, Domain> loader;
+    private final Consumer<Domain> onLoad;
+
+    LazyDomainList(List<LazyProjectLoader.DomainFragment> fragments,
+                   Function<LazyProjectLoader.DomainFragment, Domain> loader,
+                   Consumer<Domain> onLoad) {
+        this.entries = new ArrayList<>(fragments);
+        this.loader = loader;
+        this.onLoad = onLoad;
+    }
+
+    @Override
+    public synchronized Domain get(int index) {
+        Object entry = entries.get(index);
+        if (entry instanceof LazyProjectLoader.DomainFragment) {
+            SchemaLock.beforeFill();
+            Domain domain = loader.apply((LazyProjectLoader.DomainFragment) entry);
+            onLoad.accept(domain);
+            entries.set(index, domain);
+            return domain;
+        }
+        return (Domain) entry;
+    }
+
+    @Override
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized Domain set(int index, Domain element) {
+        Object previous = entries.set(index, element);
+        return previous instanceof Domain ? (Domain) previous : null;
+    }
+
+    @Override
+    public synchronized void add(int index, Domain element) {
+        modCount++;
+        entries.add(index, element);
+    }
+
+    @Override
+    public synchronized Domain remove(int index) {
+        modCount++;
+        Object previous = entries.remove(index);
+        return previous instanceof Domain ? (Domain) previous : null;
+    }
+
+    /**
+     * Поиск без материализации: неразобранный домен не может совпасть
+     * ни с одним объектом, переданным извне.
+     */
+    @Override
+    public synchronized int indexOf(Object o) {
+        for (int i = 0; i < entries.size(); i++) {
+            Object entry = entries.get(i);
+            if (entry instanceof Domain && entry.equals(o)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public synchronized int lastIndexOf(Object o) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Object entry = entries.get(i);
+            if (entry instanceof Domain && entry.equals(o)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public synchronized boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    /**
+     * Поиск домена по краткому наименованию. Материализуется только найденный домен.
+     *
+     * @param shortName краткое наименование домена.
+     * @return позиция домена либо -1.
+     */
+    synchronized int indexOfShortName(String shortName) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (StringUtils.equals(shortName, shortNameAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Поиск домена по uid. Материализуется только найденный домен.
+     *
+     * @param uid идентификатор домена.
+     * @return позиция домена либо -1.
+     */
+    synchronized int indexOfUid(String uid) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (StringUtils.equals(uid, uidAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param index позиция домена.
+     * @return краткое наименование домена без его материализации.
+     */
+    synchronized String shortNameAt(int index) {
+        Object entry = entries.get(index);
+        return entry instanceof Domain
+                ? ((Domain) entry).getShortName()
+                : ((LazyProjectLoader.DomainFragment) entry).getShortName();
+    }
+
+    /**
+     * @param index позиция домена.
+     * @return uid домена без его материализации.
+     */
+    synchronized String uidAt(int index) {
+        Object entry = entries.get(index);
+        return entry instanceof Domain
+                ? ((Domain) entry).getUid()
+                : ((LazyProjectLoader.DomainFragment) entry).getUid();
+    }
+
+    /**
+     * Обход только уже материализованных доменов.
+     *
+     * @param action действие над доменом.
+     */
+    synchronized void forEachLoaded(Consumer<Domain> action) {
+        for (Object entry : entries) {
+            if (entry instanceof Domain) {
+                action.accept((Domain) entry);
+            }
+        }
+    }
+
+    /**
+     * @param index позиция домена.
+     * @return {@code true}, если домен уже разобран.
+     */
+    synchronized boolean isLoaded(int index) {
+        return entries.get(index) instanceof Domain;
+    }
+}
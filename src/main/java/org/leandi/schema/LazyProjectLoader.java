@@ -0,0 +1,446 @@
+package org.leandi.schema;
+
+import jakarta.xml.bind.JAXBException;
+import org.leandi.schema.domain.Domain;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Загрузчик проекта с отложенной материализацией доменов.
+ * <p>
+ * Файл проекта один раз просматривается на уровне байтов: для каждого элемента
+ * {@code <domain>} верхнего уровня запоминаются смещения его начала и конца,
+ * а также атрибуты shortName и uid. Сам проект анмаршаллится без доменов,
+ * а каждый домен разбирается через StAX и JAXB только при первом обращении к нему.
+ * <p>
+ * Поддерживаются кодировки, совместимые с ASCII (UTF-8, windows-1251 и т.п.).
+ * Для остальных, а также для документов, которые не удалось разметить,
+ * проект загружается целиком.
+ */
+final class LazyProjectLoader {
+
+    private static final String DOMAIN = "domain";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private LazyProjectLoader() {
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Загрузка проекта с отложенной материализацией доменов.
+     *
+     * @param content содержимое файла проекта.
+     * @param onLoad  действие, выполняемое над каждым доменом сразу после его материализации.
+     * @return проект, список доменов которого заполняется по мере обращения.
+     * @throws JAXBException ошибка анмаршаллинга.
+     */
+    static Project load(ByteBuffer content, Consumer<Domain> onLoad) throws JAXBException {
+        ByteBuffer xml = content.slice();
+        JaxbContextRegistry.PooledContext jaxbContext =
+                JaxbContextRegistry.forClasses(Project.class, Domain.class, org.leandi.schema.deploy.Deploy.class);
+        Layout layout = scan(xml);
+        if (layout == null) {
+            return jaxbContext.withUnmarshaller(unmarshaller -> unmarshaller.unmarshal(
+                    new StreamSource(new ByteBufferInputStream(xml)), Project.class).getValue());
+        }
+        InputStream skeleton = skeleton(xml, layout.fragments);
+        Project project = jaxbContext.withUnmarshaller(unmarshaller -> unmarshaller.unmarshal(
+                new StreamSource(skeleton), Project.class).getValue());
+        project.domain = new LazyDomainList(layout.fragments, fragment -> materialize(xml, layout, fragment), onLoad);
+        return project;
+    }
+
+    /**
+     * Материализация одного домена: фрагмент исходного файла оборачивается
+     * в корневой элемент с пространствами имён проекта и разбирается через StAX.
+     */
+    private static Domain materialize(ByteBuffer xml, Layout layout, DomainFragment fragment) {
+        String prefix = "<?xml version=\"1.0\" encoding=\"" + layout.charset.name() + "\"?><lazy-project"
+                + layout.namespaces + ">";
+        InputStream in = new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteBufferInputStream(ByteBuffer.wrap(prefix.getBytes(layout.charset))),
+                new ByteBufferInputStream(slice(xml, fragment.start, fragment.end)),
+                new ByteBufferInputStream(ByteBuffer.wrap("</lazy-project>".getBytes(layout.charset))))));
+        try {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in, layout.charset.name());
+            try {
+                reader.nextTag();
+                reader.nextTag();
+                return JaxbContextRegistry.forClasses(Project.class, Domain.class, org.leandi.schema.deploy.Deploy.class)
+                        .withUnmarshaller(unmarshaller -> unmarshaller.unmarshal(reader, Domain.class).getValue());
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | JAXBException e) {
+            throw new IllegalArgumentException("Не удалось провести анмаршаллинг домена "
+                    + fragment.shortName + ". Проверьте структуру XML.", e);
+        }
+    }
+
+    // Содержимое проекта без элементов domain верхнего уровня.
+    private static InputStream skeleton(ByteBuffer xml, List<DomainFragment> fragments) {
+        List<InputStream> parts = new ArrayList<>();
+        int position = 0;
+        for (DomainFragment fragment : fragments) {
+            parts.add(new ByteBufferInputStream(slice(xml, position, fragment.start)));
+            position = fragment.end;
+        }
+        parts.add(new ByteBufferInputStream(slice(xml, position, xml.limit())));
+        return new SequenceInputStream(Collections.enumeration(parts));
+    }
+
+    private static ByteBuffer slice(ByteBuffer xml, int start, int end) {
+        ByteBuffer buffer = xml.duplicate();
+        buffer.limit(end).position(start);
+        return buffer.slice();
+    }
+
+    /**
+     * Разметка документа: поиск элементов domain, вложенных непосредственно в корневой элемент.
+     *
+     * @return разметка документа либо {@code null}, если документ не удалось разметить.
+     */
+    static Layout scan(ByteBuffer xml) {
+        Charset charset = detectCharset(xml);
+        if (charset == null) {
+            return null;
+        }
+        Layout layout = new Layout(charset);
+        int limit = xml.limit();
+        int depth = 0;
+        DomainFragment open = null;
+        int pos = 0;
+        while (pos < limit) {
+            if (xml.get(pos) != '<') {
+                pos++;
+                continue;
+            }
+            if (pos + 1 >= limit) {
+                return null;
+            }
+            byte next = xml.get(pos + 1);
+            if (next == '?') {
+                pos = indexOf(xml, "?>", pos + 2);
+                if (pos < 0) {
+                    return null;
+                }
+                pos += 2;
+            } else if (next == '!') {
+                pos = skipDeclaration(xml, pos);
+                if (pos < 0) {
+                    return null;
+                }
+            } else if (next == '/') {
+                int end = indexOf(xml, ">", pos + 2);
+                if (end < 0) {
+                    return null;
+                }
+                depth--;
+                pos = end + 1;
+                if (depth == 1 && open != null) {
+                    open.end = pos;
+                    layout.fragments.add(open);
+                    open = null;
+                }
+            } else {
+                int end = findTagEnd(xml, pos + 1);
+                if (end < 0) {
+                    return null;
+                }
+                boolean selfClosing = xml.get(end - 1) == '/';
+                if (depth == 0) {
+                    layout.namespaces = namespaceDeclarations(xml, pos, end, charset);
+                } else if (depth == 1 && DOMAIN.equals(localName(xml, pos + 1, end, charset))) {
+                    Map<String, String> attributes = attributes(xml, pos, end, charset);
+                    open = new DomainFragment(pos, attributes.get("shortName"), attributes.get("uid"));
+                    if (selfClosing) {
+                        open.end = end + 1;
+                        layout.fragments.add(open);
+                        open = null;
+                    }
+                }
+                if (!selfClosing) {
+                    depth++;
+                }
+                pos = end + 1;
+            }
+        }
+        return depth == 0 && open == null ? layout : null;
+    }
+
+    // Определение кодировки по XML-декларации. Кодировки, несовместимые с ASCII, не поддерживаются.
+    private static Charset detectCharset(ByteBuffer xml) {
+        if (xml.limit() >= 2) {
+            int first = xml.get(0) & 0xFF;
+            int second = xml.get(1) & 0xFF;
+            if (first == 0 || second == 0 || first == 0xFE || first == 0xFF) {
+                return null;
+            }
+        }
+        if (startsWith(xml, 0, "<?xml")) {
+            int end = indexOf(xml, "?>", 0);
+            if (end < 0) {
+                return null;
+            }
+            String declaration = decode(xml, 0, end, StandardCharsets.US_ASCII);
+            int index = declaration.indexOf("encoding");
+            if (index >= 0) {
+                String rest = declaration.substring(index + "encoding".length()).trim();
+                if (rest.startsWith("=")) {
+                    rest = rest.substring(1).trim();
+                    if (!rest.isEmpty()) {
+                        char quote = rest.charAt(0);
+                        int close = rest.indexOf(quote, 1);
+                        if (close > 0) {
+                            try {
+                                Charset charset = Charset.forName(rest.substring(1, close));
+                                return isAsciiCompatible(charset) ? charset : null;
+                            } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                                return null;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        byte[] bytes = "<domain/>".getBytes(charset);
+        return "<domain/>".equals(new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    // Пропуск комментария, CDATA или DOCTYPE. Возвращает позицию сразу после конструкции.
+    private static int skipDeclaration(ByteBuffer xml, int pos) {
+        if (startsWith(xml, pos, "<!--")) {
+            int end = indexOf(xml, "-->", pos + 4);
+            return end < 0 ? -1 : end + 3;
+        }
+        if (startsWith(xml, pos, "<![CDATA[")) {
+            int end = indexOf(xml, "]]>", pos + 9);
+            return end < 0 ? -1 : end + 3;
+        }
+        int brackets = 0;
+        for (int i = pos + 2; i < xml.limit(); i++) {
+            byte b = xml.get(i);
+            if (b == '[') {
+                brackets++;
+            } else if (b == ']') {
+                brackets--;
+            } else if (b == '>' && brackets == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    // Поиск закрывающей скобки открывающего тега с учётом значений атрибутов в кавычках.
+    private static int findTagEnd(ByteBuffer xml, int pos) {
+        byte quote = 0;
+        for (int i = pos; i < xml.limit(); i++) {
+            byte b = xml.get(i);
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String localName(ByteBuffer xml, int pos, int end, Charset charset) {
+        int nameEnd = pos;
+        while (nameEnd < end && !isNameTerminator(xml.get(nameEnd))) {
+            nameEnd++;
+        }
+        String name = decode(xml, pos, nameEnd, charset);
+        return name.substring(name.indexOf(':') + 1);
+    }
+
+    private static boolean isNameTerminator(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == '/' || b == '>';
+    }
+
+    // Разбор атрибутов открывающего тега [pos, end).
+    private static Map<String, String> attributes(ByteBuffer xml, int pos, int end, Charset charset) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        String tag = decode(xml, pos + 1, end, charset);
+        int i = 0;
+        while (i < tag.length() && !Character.isWhitespace(tag.charAt(i)) && tag.charAt(i) != '/') {
+            i++;
+        }
+        while (i < tag.length()) {
+            int eq = tag.indexOf('=', i);
+            if (eq < 0) {
+                break;
+            }
+            String name = tag.substring(i, eq).trim();
+            int open = eq + 1;
+            while (open < tag.length() && Character.isWhitespace(tag.charAt(open))) {
+                open++;
+            }
+            if (open >= tag.length()) {
+                break;
+            }
+            char quote = tag.charAt(open);
+            int close = tag.indexOf(quote, open + 1);
+            if (close < 0) {
+                break;
+            }
+            attributes.put(name, unescape(tag.substring(open + 1, close)));
+            i = close + 1;
+        }
+        return attributes;
+    }
+
+    // Объявления пространств имён корневого элемента в виде фрагмента тега.
+    private static String namespaceDeclarations(ByteBuffer xml, int pos, int end, Charset charset) {
+        StringBuilder declarations = new StringBuilder();
+        for (Map.Entry<String, String> attribute : attributes(xml, pos, end, charset).entrySet()) {
+            if (attribute.getKey().equals("xmlns") || attribute.getKey().startsWith("xmlns:")) {
+                declarations.append(' ').append(attribute.getKey()).append("=\"")
+                        .append(attribute.getValue().replace("&", "&amp;").replace("\"", "&quot;")).append('"');
+            }
+        }
+        return declarations.toString();
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('&') < 0) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            int semicolon = c == '&' ? value.indexOf(';', i) : -1;
+            if (semicolon < 0) {
+                result.append(c);
+                i++;
+                continue;
+            }
+            String entity = value.substring(i + 1, semicolon);
+            switch (entity) {
+                case "lt":
+                    result.append('<');
+                    break;
+                case "gt":
+                    result.append('>');
+                    break;
+                case "amp":
+                    result.append('&');
+                    break;
+                case "quot":
+                    result.append('"');
+                    break;
+                case "apos":
+                    result.append('\'');
+                    break;
+                default:
+                    if (entity.startsWith("#x")) {
+                        result.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+                    } else if (entity.startsWith("#")) {
+                        result.appendCodePoint(Integer.parseInt(entity.substring(1)));
+                    } else {
+                        result.append('&').append(entity).append(';');
+                    }
+            }
+            i = semicolon + 1;
+        }
+        return result.toString();
+    }
+
+    private static boolean startsWith(ByteBuffer xml, int pos, String prefix) {
+        if (pos + prefix.length() > xml.limit()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (xml.get(pos + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer xml, String token, int from) {
+        for (int i = from; i + token.length() <= xml.limit(); i++) {
+            if (startsWith(xml, i, token)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String decode(ByteBuffer xml, int start, int end, Charset charset) {
+        return charset.decode(slice(xml, start, end)).toString();
+    }
+
+    /**
+     * Разметка файла проекта.
+     */
+    static final class Layout {
+        private final Charset charset;
+        private final List<DomainFragment> fragments = new ArrayList<>();
+        private String namespaces = "";
+
+        private Layout(Charset charset) {
+            this.charset = charset;
+        }
+
+        List<DomainFragment> getFragments() {
+            return fragments;
+        }
+    }
+
+    /**
+     * Положение ещё не разобранного домена в файле проекта.
+     */
+    static final class DomainFragment {
+        private final int start;
+        private int end;
+        private final String shortName;
+        private final String uid;
+
+        private DomainFragment(int start, String shortName, String uid) {
+            this.start = start;
+            this.shortName = shortName;
+            this.uid = uid;
+        }
+
+        String getShortName() {
+            return shortName;
+        }
+
+        String getUid() {
+            return uid;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package org.leandi.schema;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений SchemaUtils в каталоге: двоичный снимок моделей и сегменты журнала с записями после него.
+ * <p>
+ * Запись — длина, CRC32 и содержимое: номер записи, код {@link JournalOp} и строковые аргументы.
+ * Записи успешных изменений пишутся в файл по завершении изменения, без буферизации в процессе.
+ * Запись, оборванная при аварийном завершении, определяется по длине и CRC и отбрасывается при восстановлении.
+ * <p>
+ * Сегмент journal-N.log содержит записи начиная с номера N. Снимок хранит номер последней учтённой в нём записи,
+ * поэтому при восстановлении из сегментов повторяются только более поздние записи, в каком бы порядке
+ * ни были прерваны запись снимка и удаление старых сегментов. Уплотнение кодирует модель в вызывающем потоке,
+ * а запись снимка и удаление свёрнутых сегментов выполняет в фоновом потоке.
+ */
+final class MutationJournal implements Closeable {
+
+    static final String SNAPSHOT_FILE = "snapshot.bin";
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int FRAME_HEADER = 8;
+
+    private final Path directory;
+    private final long compactionThreshold;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "schema-journal-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private FileChannel segment;
+    private long sequence;
+    private long sizeSinceSnapshot;
+    private Future<?> compaction;
+
+    /**
+     * Запись журнала.
+     */
+    static final class Record {
+        private final long sequence;
+        private final JournalOp op;
+        private final List<String> args;
+
+        private Record(long sequence, JournalOp op, List<String> args) {
+            this.sequence = sequence;
+            this.op = op;
+            this.args = args;
+        }
+
+        long sequence() {
+            return sequence;
+        }
+
+        JournalOp op() {
+            return op;
+        }
+
+        List<String> args() {
+            return args;
+        }
+    }
+
+    /**
+     * Состояние каталога журнала: секции снимка и записи после него.
+     */
+    static final class Recovery {
+        private final Map<Integer, byte[]> sections;
+        private final List<Record> records;
+        private final long sequence;
+        private final long size;
+
+        private Recovery(Map<Integer, byte[]> sections, List<Record> records, long sequence, long size) {
+            this.sections = sections;
+            this.records = records;
+            this.sequence = sequence;
+            this.size = size;
+        }
+
+        Map<Integer, byte[]> sections() {
+            return sections;
+        }
+
+        List<Record> records() {
+            return records;
+        }
+    }
+
+    private MutationJournal(Path directory, long compactionThreshold, long sequence, long sizeSinceSnapshot)
+            throws IOException {
+        this.directory = directory;
+        this.compactionThreshold = compactionThreshold;
+        this.sequence = sequence;
+        this.sizeSinceSnapshot = sizeSinceSnapshot;
+        this.segment = openSegment(sequence + 1);
+    }
+
+    /**
+     * Создание журнала в пустом каталоге. Начальный снимок записывается вызывающим кодом через {@link #compact}.
+     *
+     * @param directory           каталог журнала.
+     * @param compactionThreshold размер записей после снимка в байтах, при котором начинается уплотнение.
+     * @return журнал.
+     * @throws IOException              ошибка создания каталога или сегмента.
+     * @throws IllegalArgumentException каталог уже содержит снимок или сегменты журнала.
+     */
+    static MutationJournal create(Path directory, long compactionThreshold) throws IOException {
+        Files.createDirectories(directory);
+        if (Files.exists(directory.resolve(SNAPSHOT_FILE)) || !segments(directory).isEmpty()) {
+            throw new IllegalArgumentException("Каталог " + directory + " уже содержит журнал изменений.");
+        }
+        return new MutationJournal(directory, compactionThreshold, 0, 0);
+    }
+
+    /**
+     * Продолжение журнала после восстановления.
+     */
+    static MutationJournal resume(Path directory, long compactionThreshold, Recovery recovery) throws IOException {
+        return new MutationJournal(directory, compactionThreshold, recovery.sequence, recovery.size);
+    }
+
+    /**
+     * Чтение снимка и записей после него. Оборванная запись в конце последнего сегмента отрезается.
+     *
+     * @param directory каталог журнала.
+     * @return секции снимка и записи для повтора.
+     * @throws IOException ошибка чтения, нет снимка либо повреждена запись не в конце журнала.
+     */
+    static Recovery recover(Path directory) throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshot)) {
+            throw new IOException("В каталоге " + directory + " нет снимка журнала изменений.");
+        }
+        Map<Integer, byte[]> sections;
+        try (InputStream in = Files.newInputStream(snapshot)) {
+            sections = SnapshotCodec.read(in, SnapshotCodec.SECTION_DOMAIN, SnapshotCodec.SECTION_PROJECT,
+                    SnapshotCodec.SECTION_DEPLOY, SnapshotCodec.SECTION_JOURNAL);
+        }
+        byte[] covered = sections.remove(SnapshotCodec.SECTION_JOURNAL);
+        long snapshotSequence = covered != null ? ByteBuffer.wrap(covered).getLong() : 0;
+
+        List<Record> records = new ArrayList<>();
+        long sequence = snapshotSequence;
+        long size = 0;
+        List<Path> segments = segments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            byte[] bytes = Files.readAllBytes(segments.get(i));
+            int position = 0;
+            while (position < bytes.length) {
+                Record record = readRecord(bytes, position);
+                if (record == null) {
+                    if (i != segments.size() - 1) {
+                        throw new IOException("Повреждена запись журнала в " + segments.get(i) + ".");
+                    }
+                    // Запись оборвана при аварийном завершении и в модель не попала.
+                    try (FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.WRITE)) {
+                        channel.truncate(position);
+                    }
+                    break;
+                }
+                int length = FRAME_HEADER + ByteBuffer.wrap(bytes, position, 4).getInt();
+                position += length;
+                if (record.sequence > snapshotSequence) {
+                    records.add(record);
+                    sequence = record.sequence;
+                    size += length;
+                }
+            }
+        }
+        return new Recovery(sections, records, sequence, size);
+    }
+
+    /**
+     * Добавление записи в журнал.
+     *
+     * @param op   операция.
+     * @param args аргументы операции.
+     * @throws IOException ошибка записи.
+     */
+    void append(JournalOp op, List<String> args) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeLong(sequence + 1);
+        out.writeShort(op.code());
+        out.writeInt(args.size());
+        for (String arg : args) {
+            if (arg == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + bytes.length);
+        frame.putInt(bytes.length).putInt((int) crc.getValue()).put(bytes).flip();
+        while (frame.hasRemaining()) {
+            segment.write(frame);
+        }
+        sequence++;
+        sizeSinceSnapshot += frame.limit();
+    }
+
+    /**
+     * @return {@code true}, если записи после снимка превысили порог и предыдущее уплотнение завершено.
+     */
+    boolean compactionDue() {
+        return sizeSinceSnapshot >= compactionThreshold && (compaction == null || compaction.isDone());
+    }
+
+    /**
+     * Уплотнение: снимок учитывает все записи журнала, новые записи пишутся в новый сегмент.
+     * Снимок записывается и старые сегменты удаляются в фоновом потоке.
+     *
+     * @param sections закодированные модели для снимка.
+     * @return завершение записи снимка.
+     * @throws IOException ошибка предыдущего уплотнения либо открытия нового сегмента.
+     */
+    Future<?> compact(Map<Integer, byte[]> sections) throws IOException {
+        await();
+        Map<Integer, byte[]> snapshot = new LinkedHashMap<>(sections);
+        snapshot.put(SnapshotCodec.SECTION_JOURNAL, ByteBuffer.allocate(Long.BYTES).putLong(sequence).array());
+        long covered = sequence;
+        segment.force(false);
+        segment.close();
+        segment = openSegment(sequence + 1);
+        sizeSinceSnapshot = 0;
+        compaction = compactor.submit(() -> {
+            writeSnapshot(snapshot);
+            for (Path path : segments(directory)) {
+                if (firstSequence(path) <= covered) {
+                    Files.deleteIfExists(path);
+                }
+            }
+            return null;
+        });
+        return compaction;
+    }
+
+    /**
+     * Ожидание текущего уплотнения.
+     *
+     * @throws IOException ошибка записи снимка.
+     */
+    void await() throws IOException {
+        if (compaction == null) {
+            return;
+        }
+        try {
+            compaction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Ожидание уплотнения журнала прервано.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Не удалось записать снимок журнала изменений.", e.getCause());
+        } finally {
+            compaction = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            await();
+        } finally {
+            compactor.shutdown();
+            segment.force(false);
+            segment.close();
+        }
+    }
+
+    private void writeSnapshot(Map<Integer, byte[]> sections) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             OutputStream out = Channels.newOutputStream(channel)) {
+            SnapshotCodec.write(out, sections);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private FileChannel openSegment(long firstSequence) throws IOException {
+        return FileChannel.open(directory.resolve(SEGMENT_PREFIX + firstSequence + SEGMENT_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Сегменты каталога в порядке номеров первых записей.
+    private static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted((left, right) -> Long.compare(firstSequence(left), firstSequence(right)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // Запись по смещению либо null, если запись оборвана или не сходится CRC.
+    private static Record readRecord(byte[] bytes, int position) throws IOException {
+        if (bytes.length - position < FRAME_HEADER) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.wrap(bytes, position, FRAME_HEADER);
+        int length = header.getInt();
+        int checksum = header.getInt();
+        if (length < 0 || bytes.length - position - FRAME_HEADER < length) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, position + FRAME_HEADER, length);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, position + FRAME_HEADER, length));
+        long sequence = in.readLong();
+        int code = in.readShort();
+        JournalOp op = JournalOp.byCode(code);
+        if (op == null) {
+            throw new IOException("Неизвестный код записи журнала: " + code + ".");
+        }
+        int count = in.readInt();
+        List<String> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int size = in.readInt();
+            if (size < 0) {
+                args.add(null);
+            } else {
+                byte[] arg = new byte[size];
+                in.readFully(arg);
+                args.add(new String(arg, StandardCharsets.UTF_8));
+            }
+        }
+        return new Record(sequence, op, args);
+    }
+}
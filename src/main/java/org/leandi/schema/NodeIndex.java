@@ -0,0 +1,225 @@
+package org.leandi.schema;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Индекс позиций узлов в списке модели по ключу (uid, мнемонике).
+ * <p>
+ * Списки модели доступны снаружи через геттеры, поэтому индекс самовосстанавливающийся:
+ * найденная позиция проверяется по ключу узла, а смена самого списка или его размера
+ * приводит к перестроению. Промах проверяется по списку не чаще раза за изменение модели
+ * (см. {@link #nextChange()}): список можно изменить в обход SchemaUtils только между её вызовами,
+ * поэтому узел, получивший ключ на месте, находится при следующем изменении, а не дублируется им.
+ * Методы SchemaUtils сообщают индексу о добавлении и замене узлов, чтобы не перестраивать его.
+ * При повторяющихся ключах индекс указывает на первый узел.
+ * Производные индексы (по другому ключу того же списка) получают уведомления основного.
+ *
+ * @param <T> тип узла.
+ */
+final class NodeIndex<T> {
+
+    /**
+     * Чтение ключа узла по его позиции в списке.
+     */
+    @FunctionalInterface
+    interface KeyReader<T> {
+        String keyAt(List<T> list, int index);
+    }
+
+    /**
+     * Номер изменения модели, после которого промахи индексов нужно проверить по спискам.
+     */
+    private static final AtomicLong CHANGES = new AtomicLong();
+
+    private final Supplier<List<T>> source;
+    private final KeyReader<T> keyReader;
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final List<NodeIndex<T>> followers = new ArrayList<>();
+
+    private List<T> indexed;
+    private int indexedSize;
+    private boolean stale = true;
+    private long verifiedChange = -1;
+
+    NodeIndex(Supplier<List<T>> source, KeyReader<T> keyReader) {
+        this.source = source;
+        this.keyReader = keyReader;
+    }
+
+    /**
+     * @param source список узлов.
+     * @param key    ключ узла.
+     * @return индекс по ключу узла.
+     */
+    static <T> NodeIndex<T> of(Supplier<List<T>> source, Function<T, String> key) {
+        return new NodeIndex<>(source, (list, index) -> key.apply(list.get(index)));
+    }
+
+    /**
+     * Индекс того же списка по другому ключу, получающий уведомления этого индекса.
+     * Замена узла сбрасывает производный индекс: прежний ключ по нему неизвестен.
+     *
+     * @param key ключ узла.
+     * @return производный индекс.
+     */
+    NodeIndex<T> derived(KeyReader<T> key) {
+        NodeIndex<T> follower = new NodeIndex<>(source, key);
+        followers.add(follower);
+        return follower;
+    }
+
+    /**
+     * @see #derived(KeyReader)
+     */
+    NodeIndex<T> derived(Function<T, String> key) {
+        return derived((list, index) -> key.apply(list.get(index)));
+    }
+
+    /**
+     * Начало изменения модели: следующий промах каждого индекса проверяется по списку.
+     * Вызывается в начале внешнего вызова изменения SchemaUtils.
+     */
+    static void nextChange() {
+        CHANGES.incrementAndGet();
+    }
+
+    /**
+     * Поиск позиции узла.
+     *
+     * @param key ключ узла.
+     * @return позиция первого узла с таким ключом либо -1.
+     */
+    int indexOf(String key) {
+        if (key == null) {
+            return -1;
+        }
+        List<T> list = actualList();
+        Integer position = positions.get(key);
+        if (position == null) {
+            if (!missedKeys(list)) {
+                return -1;
+            }
+            rebuild(list);
+            position = positions.get(key);
+            return position != null ? position : -1;
+        }
+        if (position < list.size() && key.equals(keyReader.keyAt(list, position))) {
+            return position;
+        }
+        // Список изменён в обход индекса.
+        rebuild(list);
+        position = positions.get(key);
+        return position != null ? position : -1;
+    }
+
+    /**
+     * Поиск узла.
+     *
+     * @param key ключ узла.
+     * @return первый узел с таким ключом либо {@code null}.
+     */
+    T get(String key) {
+        int position = indexOf(key);
+        return position == -1 ? null : source.get().get(position);
+    }
+
+    /**
+     * Учёт узла, только что добавленного в конец списка.
+     */
+    void added() {
+        followers.forEach(NodeIndex::added);
+        List<T> list = source.get();
+        if (stale || list != indexed || list.size() != indexedSize + 1) {
+            stale = true;
+            return;
+        }
+        indexedSize++;
+        putIfAbsent(list, indexedSize - 1);
+    }
+
+    /**
+     * Учёт замены узла на позиции.
+     *
+     * @param position позиция заменённого узла.
+     * @param previous ключ заменённого узла.
+     */
+    void replaced(int position, String previous) {
+        followers.forEach(NodeIndex::invalidate);
+        List<T> list = source.get();
+        if (stale || list != indexed || list.size() != indexedSize) {
+            stale = true;
+            return;
+        }
+        String key = keyReader.keyAt(list, position);
+        if (previous != null && previous.equals(key)) {
+            return;
+        }
+        if (previous != null && Integer.valueOf(position).equals(positions.get(previous))) {
+            // Ключ мог встречаться дальше по списку: проще перестроить.
+            stale = true;
+            return;
+        }
+        putIfAbsent(list, position);
+    }
+
+    /**
+     * Пометка индекса как устаревшего. Перестроение произойдёт при следующем поиске.
+     */
+    void invalidate() {
+        followers.forEach(NodeIndex::invalidate);
+        stale = true;
+    }
+
+    private List<T> actualList() {
+        List<T> list = source.get();
+        if (stale || list != indexed || list.size() != indexedSize) {
+            rebuild(list);
+        }
+        return list;
+    }
+
+    // Проверка промаха: есть ли в списке ключи, не попавшие в индекс, например заданные узлу на месте.
+    private boolean missedKeys(List<T> list) {
+        long change = CHANGES.get();
+        if (verifiedChange == change) {
+            return false;
+        }
+        SchemaLock.beforeFill();
+        verifiedChange = change;
+        for (int i = 0; i < list.size(); i++) {
+            String key = keyReader.keyAt(list, i);
+            if (key != null && !positions.containsKey(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rebuild(List<T> list) {
+        SchemaLock.beforeFill();
+        positions.clear();
+        for (int i = 0; i < list.size(); i++) {
+            putIfAbsent(list, i);
+        }
+        indexed = list;
+        indexedSize = list.size();
+        stale = false;
+        verifiedChange = CHANGES.get();
+    }
+
+    private void putIfAbsent(List<T> list, int position) {
+        String key = keyReader.keyAt(list, position);
+        if (key != null) {
+            Integer existing = positions.get(key);
+            if (existing == null || existing > position) {
+                positions.put(key, position);
+            }
+        }
+    }
+}
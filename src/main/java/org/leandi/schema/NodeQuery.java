@@ -0,0 +1,69 @@
+package org.leandi.schema;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Запрос части раздела для {@link SchemaUtils#nodesAsJson(NodeQuery)}: проекция полей, фильтр по area
+ * и страница по смещению либо по курсору.
+ * <p>
+ * Курсор — uid последнего узла предыдущей страницы (id для групп), поэтому uid (id) всегда входит в проекцию.
+ */
+@Getter
+public class NodeQuery {
+
+    /**
+     * Раздел, из которого выбираются узлы.
+     */
+    private final JsonSection section;
+
+    /**
+     * Выгружаемые поля узла в json-именах. {@code null} — все поля.
+     * Ограничиваются только поля самих узлов, вложенные объекты выбранных полей выгружаются целиком.
+     */
+    private final Set<String> fields;
+
+    /**
+     * Uid area, анкеры которой отбираются: анкеры и кросс-доменные анкеры по мнемонике,
+     * таи и tx-анкеры — по ссылке хотя бы на один из них.
+     */
+    private final String areaUid;
+
+    /**
+     * Курсор: uid узла, после которого начинается страница.
+     */
+    private final String after;
+
+    /**
+     * Количество пропускаемых отобранных узлов. Не используется вместе с курсором.
+     */
+    private final int offset;
+
+    /**
+     * Максимальное количество узлов на странице.
+     */
+    private final int limit;
+
+    @Builder
+    private NodeQuery(JsonSection section, Collection<String> fields, String areaUid, String after,
+                      int offset, Integer limit) {
+        if (section == null) {
+            throw new IllegalArgumentException("Не указан раздел запроса.");
+        }
+        if (offset < 0 || limit != null && limit < 0) {
+            throw new IllegalArgumentException("Смещение и размер страницы не могут быть отрицательными.");
+        }
+        if (after != null && offset != 0) {
+            throw new IllegalArgumentException("Курсор и смещение не используются вместе.");
+        }
+        this.section = section;
+        this.fields = fields != null ? Set.copyOf(fields) : null;
+        this.areaUid = areaUid;
+        this.after = after;
+        this.offset = offset;
+        this.limit = limit != null ? limit : Integer.MAX_VALUE;
+    }
+}
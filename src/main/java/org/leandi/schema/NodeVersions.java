@@ -0,0 +1,142 @@
+package org.leandi.schema;
+
+import org.leandi.schema.deploy.DbHost;
+import org.leandi.schema.deploy.FsHost;
+import org.leandi.schema.deploy.HostInfo;
+import org.leandi.schema.domain.Anchor;
+import org.leandi.schema.domain.Area;
+import org.leandi.schema.domain.CdAnchor;
+import org.leandi.schema.domain.Knot;
+import org.leandi.schema.domain.Tie;
+import org.leandi.schema.domain.TxAnchor;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Версии узлов по разделам и uid для оптимистичной проверки конфликтов изменения.
+ * <p>
+ * Версия узла — число изменений узла с данным uid методами SchemaUtils (замена, добавление, патч, удаление)
+ * с момента загрузки; у загруженного и не изменявшегося узла версия 0. Версия только растёт,
+ * в том числе при удалении узла и повторном добавлении узла с тем же uid, поэтому совпадение версии
+ * означает, что узел не менялся с момента чтения. Изменения в обход методов SchemaUtils версии не меняют.
+ */
+final class NodeVersions {
+
+    /**
+     * Чтение uid узла по разделам, для которых ведутся версии.
+     */
+    private static final Map<JsonSection, Function<Object, String>> UIDS = new EnumMap<>(JsonSection.class);
+
+    static {
+        UIDS.put(JsonSection.ANCHORS, node -> ((Anchor) node).getUid());
+        UIDS.put(JsonSection.TIES, node -> ((Tie) node).getUid());
+        UIDS.put(JsonSection.KNOTS, node -> ((Knot) node).getUid());
+        UIDS.put(JsonSection.TX_ANCHORS, node -> ((TxAnchor) node).getUid());
+        UIDS.put(JsonSection.CD_ANCHORS, node -> ((CdAnchor) node).getUid());
+        UIDS.put(JsonSection.AREAS, node -> ((Area) node).getUid());
+        UIDS.put(JsonSection.CONNEXIONS, node -> ((Connexions) node).getUid());
+        UIDS.put(JsonSection.DB_HOSTS, node -> ((DbHost) node).getUid());
+        UIDS.put(JsonSection.FS_HOSTS, node -> ((FsHost) node).getUid());
+    }
+
+    private final Map<JsonSection, Map<String, Long>> versions = new EnumMap<>(JsonSection.class);
+
+    /**
+     * @return версия узла, 0 — если узел не изменялся.
+     */
+    long get(JsonSection section, String uid) {
+        uids(section);
+        Map<String, Long> sectionVersions = versions.get(section);
+        Long version = sectionVersions == null ? null : sectionVersions.get(uid);
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * Учёт изменения узла.
+     */
+    void changed(JsonSection section, String uid) {
+        if (uid != null) {
+            versions.computeIfAbsent(section, key -> new HashMap<>()).merge(uid, 1L, Long::sum);
+        }
+    }
+
+    /**
+     * Учёт изменения узлов раздела.
+     */
+    void changed(JsonSection section, Collection<?> nodes) {
+        Function<Object, String> uid = uids(section);
+        for (Object node : nodes) {
+            changed(section, uid.apply(node));
+        }
+    }
+
+    /**
+     * Учёт удалённых узлов.
+     */
+    void changed(RemovedNodes removed) {
+        for (JsonSection section : UIDS.keySet()) {
+            changed(section, removed.get(section));
+        }
+    }
+
+    /**
+     * Учёт изменения хоста схемы деплоя.
+     */
+    void changed(HostInfo host) {
+        changed(host instanceof DbHost ? JsonSection.DB_HOSTS : JsonSection.FS_HOSTS, host.getUid());
+    }
+
+    /**
+     * Проверка ожидаемых версий узлов раздела.
+     *
+     * @param expected ожидаемые версии по uid. null — без проверки.
+     * @throws VersionConflictException если версия хотя бы одного узла отличается от ожидаемой.
+     */
+    void check(JsonSection section, Map<String, Long> expected) {
+        if (expected == null) {
+            return;
+        }
+        Map<String, Long> conflicts = new LinkedHashMap<>();
+        expected.forEach((uid, version) -> {
+            long actual = get(section, uid);
+            if (version == null || actual != version) {
+                conflicts.put(uid, actual);
+            }
+        });
+        if (!conflicts.isEmpty()) {
+            throw new VersionConflictException(section, conflicts);
+        }
+    }
+
+    /**
+     * Копия версий разделов для отката.
+     */
+    Map<JsonSection, Map<String, Long>> save(Set<JsonSection> sections) {
+        Map<JsonSection, Map<String, Long>> saved = new EnumMap<>(JsonSection.class);
+        for (JsonSection section : sections) {
+            saved.put(section, new HashMap<>(versions.getOrDefault(section, Map.of())));
+        }
+        return saved;
+    }
+
+    /**
+     * Откат версий разделов к копии. Узлы разделов при этом возвращены в состояние на момент копии.
+     */
+    void restore(Map<JsonSection, Map<String, Long>> saved) {
+        versions.putAll(saved);
+    }
+
+    private static Function<Object, String> uids(JsonSection section) {
+        Function<Object, String> uid = UIDS.get(section);
+        if (uid == null) {
+            throw new IllegalArgumentException("Раздел " + section.getField() + " не поддерживает версии узлов.");
+        }
+        return uid;
+    }
+}
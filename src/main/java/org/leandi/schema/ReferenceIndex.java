@@ -0,0 +1,226 @@
+package org.leandi.schema;
+
+import org.leandi.schema.domain.*;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Обратный индекс ссылок между узлами модели: кто использует кнот, анкер или домен.
+ * <p>
+ * Кнот используется атрибутами и extendedColumn через knotRange и таями через knotRole,
+ * анкер (в том числе кросс-доменный) — таями, tx-анкерами и area через anchorRole,
+ * домен проекта — коннексионами через anchorRole.
+ * <p>
+ * Индекс строится полным обходом при первом запросе, затем поддерживается методами SchemaUtils
+ * через {@link #added(Object)}, {@link #removed(Object)} и {@link #replaced(Object, Object)}:
+ * для каждого узла запоминаются внесённые им ссылки, поэтому его удаление стоит порядка числа ссылок.
+ * Изменение суммарного размера индексируемых списков в обход SchemaUtils приводит к перестроению,
+ * замена узла на месте или изменение его ссылок требуют вызова {@link #invalidate()}.
+ */
+final class ReferenceIndex {
+
+    /**
+     * Вид ссылки: на что ссылаются и кто ссылается.
+     */
+    enum Kind {
+        KNOT_ATTRIBUTE,
+        KNOT_EXTENDED_COLUMN,
+        KNOT_TIE,
+        ANCHOR_TIE,
+        ANCHOR_TX_ANCHOR,
+        ANCHOR_AREA,
+        DOMAIN_CONNEXION
+    }
+
+    // Ссылка, внесённая узлом: вид, ключ и ссылающийся объект.
+    private static final class Ref {
+        private final Kind kind;
+        private final String key;
+        private final Object user;
+
+        private Ref(Kind kind, String key, Object user) {
+            this.kind = kind;
+            this.key = key;
+            this.user = user;
+        }
+    }
+
+    private final Supplier<List<List<?>>> sources;
+    private final Map<Kind, Map<String, Set<Object>>> users = new EnumMap<>(Kind.class);
+    private final Map<Object, List<Ref>> contributions = new IdentityHashMap<>();
+
+    private int indexedSize;
+    private boolean stale = true;
+
+    private ReferenceIndex(Supplier<List<List<?>>> sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * @param domain домен.
+     * @return индекс ссылок анкеров, кросс-доменных анкеров, tx-анкеров, таев и area домена.
+     */
+    static ReferenceIndex of(Domain domain) {
+        return new ReferenceIndex(() -> List.of(domain.getAnchor(), domain.getCdAnchor(),
+                domain.getTxAnchor(), domain.getTie(), domain.getArea()));
+    }
+
+    /**
+     * @param project проект.
+     * @return индекс ссылок коннексионов проекта на домены.
+     */
+    static ReferenceIndex of(Supplier<Project> project) {
+        return new ReferenceIndex(() -> List.of(project.get().getConnexions()));
+    }
+
+    /**
+     * Поиск объектов, ссылающихся на узел.
+     *
+     * @param kind вид ссылки.
+     * @param key  мнемоника кнота/анкера либо краткое наименование домена.
+     * @return ссылающиеся объекты.
+     */
+    @SuppressWarnings("unchecked")
+    <T> List<T> users(Kind kind, String key) {
+        List<List<?>> lists = sources.get();
+        if (stale || size(lists) != indexedSize) {
+            rebuild(lists);
+        }
+        Set<Object> found = users.getOrDefault(kind, Collections.emptyMap()).get(key);
+        return found == null ? new ArrayList<>() : new ArrayList<>((Set<T>) found);
+    }
+
+    /**
+     * Учёт узла, добавленного в один из индексируемых списков.
+     */
+    void added(Object node) {
+        if (!stale) {
+            index(node);
+            indexedSize++;
+        }
+    }
+
+    /**
+     * Учёт узла, удалённого из индексируемого списка.
+     */
+    void removed(Object node) {
+        if (!stale) {
+            unindex(node);
+            indexedSize--;
+        }
+    }
+
+    /**
+     * Учёт замены узла на месте.
+     */
+    void replaced(Object previous, Object node) {
+        if (!stale) {
+            unindex(previous);
+            index(node);
+        }
+    }
+
+    /**
+     * Пометка индекса как устаревшего. Перестроение произойдёт при следующем запросе.
+     */
+    void invalidate() {
+        stale = true;
+    }
+
+    private static int size(List<List<?>> lists) {
+        int size = 0;
+        for (List<?> list : lists) {
+            size += list.size();
+        }
+        return size;
+    }
+
+    private void rebuild(List<List<?>> lists) {
+        SchemaLock.beforeFill();
+        users.clear();
+        contributions.clear();
+        for (List<?> list : lists) {
+            list.forEach(this::index);
+        }
+        indexedSize = size(lists);
+        stale = false;
+    }
+
+    private void unindex(Object node) {
+        List<Ref> refs = contributions.remove(node);
+        if (refs == null) {
+            return;
+        }
+        for (Ref ref : refs) {
+            Map<String, Set<Object>> byKey = users.get(ref.kind);
+            Set<Object> keyUsers = byKey.get(ref.key);
+            // Узел мог сослаться на один ключ несколько раз.
+            if (keyUsers != null && keyUsers.remove(ref.user) && keyUsers.isEmpty()) {
+                byKey.remove(ref.key);
+            }
+        }
+    }
+
+    private void index(Object node) {
+        List<Ref> refs = new ArrayList<>();
+        if (node instanceof Anchor) {
+            Anchor anchor = (Anchor) node;
+            attributes(anchor.getAttribute(), refs);
+            columns(anchor.getExtendedColumn(), refs);
+        } else if (node instanceof CdAnchor) {
+            CdAnchor cdAnchor = (CdAnchor) node;
+            attributes(cdAnchor.getAttribute(), refs);
+            columns(cdAnchor.getExtendedColumn(), refs);
+        } else if (node instanceof TxAnchor) {
+            TxAnchor txAnchor = (TxAnchor) node;
+            attributes(txAnchor.getAttribute(), refs);
+            columns(txAnchor.getExtendedColumn(), refs);
+            anchorRoles(Kind.ANCHOR_TX_ANCHOR, txAnchor.getAnchorRole(), txAnchor, refs);
+        } else if (node instanceof Tie) {
+            Tie tie = (Tie) node;
+            columns(tie.getExtendedColumn(), refs);
+            if (tie.getKnotRole() != null) {
+                refs.add(new Ref(Kind.KNOT_TIE, tie.getKnotRole().getType(), tie));
+            }
+            anchorRoles(Kind.ANCHOR_TIE, tie.getAnchorRole(), tie, refs);
+        } else if (node instanceof Area) {
+            Area area = (Area) node;
+            anchorRoles(Kind.ANCHOR_AREA, area.getAnchorRole(), area, refs);
+        } else if (node instanceof Connexions) {
+            Connexions connexion = (Connexions) node;
+            for (AnchorRole anchorRole : connexion.getAnchorRole()) {
+                refs.add(new Ref(Kind.DOMAIN_CONNEXION, anchorRole.getDomain(), connexion));
+            }
+        }
+        for (Ref ref : refs) {
+            users.computeIfAbsent(ref.kind, kind -> new HashMap<>())
+                    .computeIfAbsent(ref.key, key -> new LinkedHashSet<>())
+                    .add(ref.user);
+        }
+        contributions.put(node, refs);
+    }
+
+    private static void attributes(List<Attribute> attributes, List<Ref> refs) {
+        for (Attribute attribute : attributes) {
+            if (attribute.getKnotRange() != null) {
+                refs.add(new Ref(Kind.KNOT_ATTRIBUTE, attribute.getKnotRange(), attribute));
+            }
+            columns(attribute.getExtendedColumn(), refs);
+        }
+    }
+
+    private static void columns(List<ExtendedColumn> columns, List<Ref> refs) {
+        for (ExtendedColumn column : columns) {
+            if (column.getKnotRange() != null) {
+                refs.add(new Ref(Kind.KNOT_EXTENDED_COLUMN, column.getKnotRange(), column));
+            }
+        }
+    }
+
+    private static void anchorRoles(Kind kind, List<AnchorRole> anchorRoles, Object user, List<Ref> refs) {
+        for (AnchorRole anchorRole : anchorRoles) {
+            refs.add(new Ref(kind, anchorRole.getType(), user));
+        }
+    }
+}
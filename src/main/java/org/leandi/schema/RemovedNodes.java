@@ -0,0 +1,50 @@
+package org.leandi.schema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Узлы, удалённые {@link SchemaUtils#deleteNodes}, по разделам: сами удаляемые узлы
+ * и узлы, удалённые каскадно по ссылкам на них. Узлы каждого раздела идут в порядке списка модели.
+ */
+public final class RemovedNodes {
+
+    private final Map<JsonSection, List<Object>> nodes = new EnumMap<>(JsonSection.class);
+
+    RemovedNodes() {
+    }
+
+    /**
+     * @param section раздел.
+     * @return удалённые узлы раздела. Тип элемента соответствует разделу.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> get(JsonSection section) {
+        List<Object> removed = nodes.get(section);
+        return removed == null ? Collections.emptyList() : Collections.unmodifiableList((List<T>) removed);
+    }
+
+    /**
+     * @return общее количество удалённых узлов.
+     */
+    public int size() {
+        int size = 0;
+        for (List<Object> removed : nodes.values()) {
+            size += removed.size();
+        }
+        return size;
+    }
+
+    void add(JsonSection section, List<?> removed) {
+        if (!removed.isEmpty()) {
+            nodes.computeIfAbsent(section, key -> new ArrayList<>()).addAll(removed);
+        }
+    }
+
+    void addAll(RemovedNodes other) {
+        other.nodes.forEach(this::add);
+    }
+}
@@ -0,0 +1,95 @@
+package org.leandi.schema;
+
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Команда пакета {@link SchemaUtils#apply(List)}: операция над узлами одного раздела.
+ * Команды поддерживают анкеры, таи, кноты, tx-анкеры, кросс-доменные анкеры, fs- и db-хосты;
+ * merge-patch — только узлы домена.
+ */
+@Getter
+public final class SchemaCommand {
+
+    /**
+     * Операция команды, соответствует методам SchemaUtils update*, add*, patch* и {@link SchemaUtils#deleteNodes}.
+     */
+    public enum Operation {
+        UPDATE,
+        ADD,
+        PATCH,
+        DELETE
+    }
+
+    private final Operation operation;
+
+    private final JsonSection section;
+
+    /**
+     * Json-массив узлов для UPDATE и ADD либо merge-патчей для PATCH.
+     */
+    private final String json;
+
+    /**
+     * Идентификаторы удаляемых узлов для DELETE.
+     */
+    private final List<String> uids;
+
+    /**
+     * Признак каскадного удаления для DELETE.
+     */
+    private final boolean cascade;
+
+    private SchemaCommand(Operation operation, JsonSection section, String json, Collection<String> uids, boolean cascade) {
+        if (section == null) {
+            throw new IllegalArgumentException("Не указан раздел команды.");
+        }
+        if (operation == Operation.DELETE ? uids == null : json == null) {
+            throw new IllegalArgumentException("Не указаны узлы команды " + operation + " раздела " + section.getField() + ".");
+        }
+        this.operation = operation;
+        this.section = section;
+        this.json = json;
+        this.uids = uids != null ? List.copyOf(uids) : null;
+        this.cascade = cascade;
+    }
+
+    /**
+     * @param section раздел.
+     * @param json    json-массив узлов.
+     * @return команда обновления и добавления узлов по uid.
+     */
+    public static SchemaCommand update(JsonSection section, String json) {
+        return new SchemaCommand(Operation.UPDATE, section, json, null, false);
+    }
+
+    /**
+     * @param section раздел.
+     * @param json    json-массив новых узлов.
+     * @return команда добавления узлов.
+     */
+    public static SchemaCommand add(JsonSection section, String json) {
+        return new SchemaCommand(Operation.ADD, section, json, null, false);
+    }
+
+    /**
+     * @param section раздел домена.
+     * @param json    json-массив merge-патчей с uid узлов.
+     * @return команда частичного обновления узлов.
+     */
+    public static SchemaCommand patch(JsonSection section, String json) {
+        return new SchemaCommand(Operation.PATCH, section, json, null, false);
+    }
+
+    /**
+     * @param section раздел.
+     * @param uids    идентификаторы удаляемых узлов.
+     * @param cascade удалять ли ссылающиеся узлы.
+     * @return команда удаления узлов.
+     */
+    public static SchemaCommand delete(JsonSection section, Collection<String> uids, boolean cascade) {
+        return new SchemaCommand(Operation.DELETE, section, null, uids, cascade);
+    }
+}
@@ -0,0 +1,39 @@
+package org.leandi.schema;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Ошибка загрузки входных XML-файлов с разбивкой по потокам (domainXml, projectXml, deployXml).
+ */
+@Getter
+public class SchemaLoadException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Ошибки разбора, сгруппированные по имени входного потока.
+     */
+    private final Map<String, Throwable> errors;
+
+    public SchemaLoadException(Map<String, Throwable> errors) {
+        super("Не удалось провести анмаршаллинг файла. Проверьте структуру XML: " + errors.entrySet().stream()
+                .map(error -> error.getKey() + " — " + describe(error.getValue()))
+                .collect(Collectors.joining("; ")));
+        this.errors = Collections.unmodifiableMap(new LinkedHashMap<>(errors));
+        errors.values().forEach(this::addSuppressed);
+    }
+
+    // JAXBException хранит описание ошибки в связанном исключении.
+    private static String describe(Throwable error) {
+        Throwable current = error;
+        while (current.getMessage() == null && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return String.valueOf(current.getMessage());
+    }
+}
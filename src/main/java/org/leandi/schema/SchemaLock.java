@@ -0,0 +1,172 @@
+package org.leandi.schema;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Блокировка SchemaUtils в режиме конкурентного доступа.
+ * <p>
+ * Изменение выполняется под исключительной блокировкой, чтение — под разделяемой.
+ * Без блокировки, оптимистично, выполняется только {@link #peek}: короткое чтение готового результата
+ * из полей без обхода и сериализации модели, принимаемое, если за это время не было записи.
+ * Обход списков и сериализация во время записи могут увидеть модель в промежуточном состоянии
+ * и выполнить неограниченную работу либо упасть до проверки, поэтому оптимистично не выполняются.
+ * <p>
+ * Методы чтения SchemaUtils лениво строят индексы и кэши, то есть меняют общее состояние. Без исключительной
+ * блокировки это запрещено: {@link #beforeFill()} прерывает чтение, и оно повторяется под исключительной
+ * блокировкой. Построенные кэши остаются актуальными до следующего изменения,
+ * поэтому последующие чтения готового результата обходятся без блокировок.
+ * <p>
+ * Вложенные вызовы из того же потока выполняются под уже взятой блокировкой.
+ */
+final class SchemaLock {
+
+    /**
+     * Действие под блокировкой.
+     */
+    @FunctionalInterface
+    interface Action<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Действие под блокировкой без результата.
+     */
+    @FunctionalInterface
+    interface VoidAction<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * Блокировка, под которой поток сейчас читает без исключительного доступа.
+     */
+    private static final class Reading {
+        private SchemaLock lock;
+    }
+
+    /**
+     * Сигнал о том, что чтению нужен исключительный доступ. Без стека: это не ошибка.
+     */
+    private static final class FillRequired extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private FillRequired() {
+            super("Чтению требуется исключительная блокировка.", null, false, false);
+        }
+    }
+
+    private static final ThreadLocal<Reading> READING = ThreadLocal.withInitial(Reading::new);
+    private static final FillRequired FILL_REQUIRED = new FillRequired();
+
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Поток, владеющий исключительной блокировкой. Другие потоки не могут увидеть в поле себя.
+     */
+    private Thread writer;
+
+    /**
+     * Проверка перед заполнением ленивого индекса или кэша: без исключительного доступа чтение прерывается
+     * и повторяется под исключительной блокировкой. Вне блокировки SchemaLock ничего не делает.
+     */
+    static void beforeFill() {
+        if (READING.get().lock != null) {
+            throw FILL_REQUIRED;
+        }
+    }
+
+    /**
+     * Оптимистичное чтение готового результата без блокировки.
+     * Чтение должно быть коротким: только чтение полей и готовых неизменяемых объектов,
+     * без обхода модели, сериализации и заполнения кэшей.
+     *
+     * @param lookup чтение готового результата; null — результата нет.
+     * @return результат, если за время чтения не было записи, иначе null: тогда нужно {@link #read}.
+     */
+    <T> T peek(Supplier<T> lookup) {
+        if (writer == Thread.currentThread() || READING.get().lock == this) {
+            return lookup.get();
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp == 0L) {
+            return null;
+        }
+        T result = lookup.get();
+        return lock.validate(stamp) ? result : null;
+    }
+
+    /**
+     * Чтение под разделяемой блокировкой, а если нужно заполнить кэш — под исключительной.
+     * Действие выполняется повторно, только если прервано до заполнения кэша.
+     *
+     * @param action чтение.
+     * @return результат чтения.
+     * @throws E ошибка чтения.
+     */
+    <T, E extends Exception> T read(Action<T, E> action) throws E {
+        Reading reading = READING.get();
+        if (writer == Thread.currentThread() || reading.lock == this) {
+            return action.run();
+        }
+        SchemaLock outer = reading.lock;
+        reading.lock = this;
+        long stamp = lock.readLock();
+        try {
+            return action.run();
+        } catch (Exception e) {
+            if (!fillRequired(e)) {
+                throw e;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+            reading.lock = outer;
+        }
+        return write(action);
+    }
+
+    /**
+     * Изменение под исключительной блокировкой.
+     *
+     * @param action изменение.
+     * @return результат изменения.
+     * @throws E ошибка изменения.
+     */
+    <T, E extends Exception> T write(Action<T, E> action) throws E {
+        Thread current = Thread.currentThread();
+        if (writer == current) {
+            return action.run();
+        }
+        if (READING.get().lock == this) {
+            // Изменение изнутри чтения: чтение повторится под исключительной блокировкой.
+            throw FILL_REQUIRED;
+        }
+        long stamp = lock.writeLock();
+        writer = current;
+        try {
+            return action.run();
+        } finally {
+            writer = null;
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @see #write(Action)
+     */
+    <E extends Exception> void write(VoidAction<E> action) throws E {
+        write(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    // Сигнал может прийти обёрнутым, например, из сериализатора Jackson.
+    private static boolean fillRequired(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause == FILL_REQUIRED) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
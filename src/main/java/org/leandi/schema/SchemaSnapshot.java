@@ -0,0 +1,70 @@
+package org.leandi.schema;
+
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import lombok.Getter;
+import org.leandi.schema.deploy.Deploy;
+import org.leandi.schema.domain.Domain;
+
+import javax.xml.namespace.QName;
+import java.io.StringWriter;
+
+/**
+ * Неизменяемый снимок домена, проекта и деплоя SchemaUtils, см. {@link SchemaUtils#snapshot()}.
+ * <p>
+ * Снимок не связан с моделями SchemaUtils: последующие изменения в него не попадают, поэтому его можно
+ * читать и выгружать из любого потока без блокировок. Списки узлов снимка неизменяемы, узлы и модели
+ * снимка изменять нельзя: неизменённые узлы общие у соседних снимков. Поле dateTime моделей снимка —
+ * время создания снимка.
+ */
+@Getter
+public final class SchemaSnapshot {
+
+    /**
+     * Номер снимка, растёт с каждым изменением моделей.
+     */
+    private final long version;
+    private final Domain domain;
+    private final Project project;
+    private final Deploy deploy;
+
+    SchemaSnapshot(long version, Domain domain, Project project, Deploy deploy) {
+        this.version = version;
+        this.domain = domain;
+        this.project = project;
+        this.deploy = deploy;
+    }
+
+    /**
+     * @return XML домена снимка.
+     * @throws JAXBException ошибка маршаллинга.
+     */
+    public String marshall() throws JAXBException {
+        return marshall(new JAXBElement<>(new QName("", "domain"), Domain.class, domain), Domain.class);
+    }
+
+    /**
+     * @return XML проекта снимка.
+     * @throws JAXBException ошибка маршаллинга.
+     */
+    public String marshallProject() throws JAXBException {
+        return marshall(new JAXBElement<>(new QName("", "project"), Project.class, project), Project.class);
+    }
+
+    /**
+     * @return XML деплоя снимка.
+     * @throws JAXBException ошибка маршаллинга.
+     */
+    public String marshallDeployModel() throws JAXBException {
+        return marshall(new JAXBElement<>(new QName("", "deploy"), Deploy.class, deploy), Deploy.class);
+    }
+
+    private static String marshall(JAXBElement<?> element, Class<?> type) throws JAXBException {
+        StringWriter stringWriter = new StringWriter();
+        JaxbContextRegistry.forClasses(type).withMarshaller(jaxbMarshaller -> {
+            jaxbMarshaller.marshal(element, stringWriter);
+            return null;
+        });
+        return stringWriter.toString();
+    }
+}
@@ -1,7 +1,7 @@
 package org.leandi.schema;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import jakarta.xml.bind.*;
 import lombok.Builder;
@@ -19,10 +19,23 @@ import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.namespace.QName;
 import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Класс SchemaUtils для работы с анкерной XML-схемой
@@ -35,18 +48,21 @@ public class SchemaUtils {
 
     /**
      * Бизнес-домен — одна анкерная схема.
+     * Изменение модели через геттеры требует вызова {@link #invalidateIndexes()}, см. его описание.
      */
     @Getter
     private Domain domain;
 
     /**
      * Проект — группа бизнес-доменов.
+     * Изменение модели через геттеры требует вызова {@link #invalidateIndexes()}.
      */
     @Getter
     private Project project;
 
     /**
      * Deploy — модель деплоя.
+     * Изменение модели через геттеры требует вызова {@link #invalidateIndexes()}.
      */
     @Getter
     private Deploy deploy;
@@ -66,40 +82,160 @@ public class SchemaUtils {
     InputStream deployXml;
 
     /**
-     * Список актуальных групп динамических реквизитов.
+     * Индексы узлов текущего домена по uid.
      */
-    private List<Group> actualGroups = new ArrayList<>();
+    private DomainIndex domainIndex;
+
+    /**
+     * Индекс доменов проекта по uid. Для отложенной загрузки uid читается без разбора домена.
+     */
+    private final NodeIndex<Domain> projectDomainIndex = new NodeIndex<>(() -> project.getDomain(),
+            (domains, index) -> domains instanceof LazyDomainList
+                    ? ((LazyDomainList) domains).uidAt(index)
+                    : domains.get(index).getUid());
+
+    /**
+     * Индекс доменов проекта по краткому наименованию, производный от индекса по uid.
+     */
+    private final NodeIndex<Domain> projectShortNameIndex = projectDomainIndex.derived(
+            (domains, index) -> domains instanceof LazyDomainList
+                    ? ((LazyDomainList) domains).shortNameAt(index)
+                    : domains.get(index).getShortName());
+
+    /**
+     * Индексы узлов доменов проекта, создаются при первом поиске по домену.
+     */
+    private final Map<Domain, DomainIndex> projectDomainIndexes = new IdentityHashMap<>();
+
+    /**
+     * Обратный индекс ссылок коннексионов на домены проекта.
+     */
+    private final ReferenceIndex projectReferences = ReferenceIndex.of(() -> project);
+
+    /**
+     * Индекс коннексионов проекта по uid.
+     */
+    private final NodeIndex<Connexions> connexionIndex = NodeIndex.of(() -> project.getConnexions(), Connexions::getUid);
+
+    /**
+     * Индексы хостов схемы деплоя по uid.
+     */
+    private final NodeIndex<DbHost> dbHostIndex = NodeIndex.of(() -> deploy.getDbHost(), DbHost::getUid);
+    private final NodeIndex<FsHost> fsHostIndex = NodeIndex.of(() -> deploy.getFsHost(), FsHost::getUid);
+
+    /**
+     * Индексы хостов схемы деплоя по реквизитам подключения и доменов хостов по краткому наименованию.
+     */
+    private final DeployIndex deployIndex = new DeployIndex(() -> deploy);
+
+    /**
+     * Журнал изменений, если подключён через {@link #attachJournal} или {@link #recoverJournal}.
+     */
+    private MutationJournal journal;
+
+    /**
+     * Разделы, узлы которых изменяются пакетом команд {@link #apply(List)}.
+     */
+    private static final Set<JsonSection> BATCH_SECTIONS = EnumSet.of(JsonSection.ANCHORS, JsonSection.TIES,
+            JsonSection.KNOTS, JsonSection.TX_ANCHORS, JsonSection.CD_ANCHORS, JsonSection.FS_HOSTS, JsonSection.DB_HOSTS);
+
+    /**
+     * Сериализованные разделы json-экспорта со счётчиками изменений.
+     */
+    private final JsonCache jsonCache = new JsonCache();
+
+    /**
+     * Версии узлов для проверки конфликтов изменения.
+     */
+    private final NodeVersions versions = new NodeVersions();
+
+    /**
+     * Блокировка чтения и изменения в конкурентном режиме, иначе null.
+     */
+    private final SchemaLock lock;
+
+    /**
+     * Блокировки доменов проекта, общие с другими экземплярами SchemaUtils того же проекта, иначе null.
+     */
+    private final DomainStripes stripes;
+
+    /**
+     * Построение снимков, если они запрошены через {@link #snapshot()}, иначе null.
+     */
+    private SnapshotPublisher snapshots;
+
+    /**
+     * Последний опубликованный снимок.
+     */
+    private volatile SchemaSnapshot snapshot;
+
+    /**
+     * Внешний вызов метода изменения в текущем потоке: глубина вложенных вызовов и записи журнала.
+     * По завершении внешнего вызова публикуется снимок, а записи журнала дописываются, только если вызов успешен.
+     * Состояние у каждого потока своё, поэтому изменения из разных потоков не сбивают его и без блокировки.
+     */
+    private static final class WriteScope {
+        private int depth;
+        private final List<JournalOp> ops = new ArrayList<>();
+        private final List<List<String>> args = new ArrayList<>();
+    }
+
+    private final ThreadLocal<WriteScope> writeScope = ThreadLocal.withInitial(WriteScope::new);
 
-    @Builder
     public SchemaUtils(InputStream domainXml, InputStream projectXml, InputStream deployXml,
                        Domain domain, Project project, Deploy deploy) {
+        this(domainXml, projectXml, deployXml, null, null, null, domain, project, deploy, false, false, false, null, false, null);
+    }
+
+    /**
+     * @param domainPath  путь к файлу домена. Файл отображается в память и читается без копирования в кучу.
+     *                    Используется, если не передан domainXml.
+     * @param projectPath путь к файлу проекта. Используется, если не передан projectXml.
+     * @param deployPath  путь к файлу деплоя. Используется, если не передан deployXml.
+     * @param lazyDomains признак отложенной загрузки доменов проекта:
+     *                    домен из projectXml разбирается только при первом обращении к нему.
+     * @param validate    признак проверки входных XML по XSD-схемам во время анмаршаллинга.
+     *                    Нарушения собираются в {@link SchemaValidationException}.
+     *                    Отключает отложенную загрузку доменов: проверяется весь файл проекта.
+     * @param parallel    признак одновременного разбора domainXml, projectXml и deployXml.
+     * @param executor    исполнитель для одновременного разбора. По умолчанию — общий ForkJoinPool.
+     * @param concurrent  признак конкурентного режима: методы изменения выполняются под исключительной блокировкой,
+     *                    методы чтения (*AsJson, writeJson, поиск, getDomainsListFromDeploy и др.) — под разделяемой.
+     *                    Готовый json раздела читается оптимистично, без блокировки.
+     *                    Модели, полученные через геттеры, и найденные узлы в режиме не защищены:
+     *                    изменять их следует только через методы SchemaUtils.
+     * @param stripes     блокировки доменов проекта, общие для экземпляров SchemaUtils, которые одновременно изменяют
+     *                    разные домены одного проекта (каждый — свой текущий домен). Изменения текущего домена берут
+     *                    его полосу, изменения проекта и деплоя — блокировку проекта и полосы затронутых доменов,
+     *                    см. {@link DomainStripes}.
+     */
+    @Builder
+    private SchemaUtils(InputStream domainXml, InputStream projectXml, InputStream deployXml,
+                        Path domainPath, Path projectPath, Path deployPath, Domain domain, Project project, Deploy deploy, boolean lazyDomains,
+                        boolean validate, boolean parallel, Executor executor, boolean concurrent,
+                        DomainStripes stripes) {
+        this.lock = concurrent ? new SchemaLock() : null;
+        this.stripes = stripes;
         this.domainXml = domainXml;
         this.projectXml = projectXml;
         this.deployXml = deployXml;
 
+        if (parallel) {
+            loadInParallel(domainPath, projectPath, deployPath, domain, project, deploy, lazyDomains, validate, executor != null ? executor : ForkJoinPool.commonPool());
+            return;
+        }
+
         try {
             // Сделано так, чтобы была возможность работать с необогащенными структурами
             // с целью их обогащения уже в самом моделере.
-            this.domain = new Domain();
-            this.project = new Project();
-            this.deploy = new Deploy();
-
-            JAXBContext jaxbContext = JAXBContext.newInstance(Project.class, Domain.class, Deploy.class);
-            Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-
-            if (domainXml != null) {
-                JAXBElement<Domain> e = unmarshaller.unmarshal(new StreamSource(domainXml), Domain.class);
-                this.domain = e.getValue();
-            }
-            if (projectXml != null) {
-                JAXBElement<Project> e = unmarshaller.unmarshal(new StreamSource(projectXml), Project.class);
-                this.project = e.getValue();
-            }
-            if (deployXml != null) {
-                JAXBElement<Deploy> e = unmarshaller.unmarshal(new StreamSource(deployXml), Deploy.class);
-                this.deploy = e.getValue();
-            }
-        } catch (JAXBException e) {
+            // Сжатые gzip входы распознаются по сигнатуре.
+            InputStream domainInput = XmlInputs.open(domainXml, domainPath);
+            InputStream projectInput = XmlInputs.open(projectXml, projectPath);
+            InputStream deployInput = XmlInputs.open(deployXml, deployPath);
+            this.domain = domainInput != null ? unmarshalDomain(domainInput, validate) : new Domain();
+            this.project = projectInput != null ? unmarshalProject(projectInput, lazyDomains, validate) : new Project();
+            this.deploy = deployInput != null ? unmarshalDeploy(deployInput, validate) : new Deploy();
+        } catch (JAXBException | IOException e) {
             throw new IllegalArgumentException("Не удалось провести анмаршаллинг файла. Проверьте структуру XML.");
         }
 
@@ -118,52 +254,87 @@ public class SchemaUtils {
     }
 
     /**
-     * Метод сбора аткуального списка групп.
-     */
-    private void aggregateGroups() {
-        actualGroups.clear();
-        List<Group> groups = new ArrayList<>();
-        for (Group group : this.domain.getGroup()) {
-            Group newGroup = new Group();
-            newGroup.setId(group.getId());
-            newGroup.setName(group.getName());
-            newGroup.setDescription(group.getDescription());
-            List<Group> groupsInGroup = new ArrayList<>();
-            for (Group groupInGroup : group.getGroup()) {
-                Group gr = this.domain.getGroup().stream()
-                        .filter(g -> g.getId().equals(groupInGroup.getId())).findFirst().orElse(null);
-                if (gr != null) {
-                    List<Property> propertiesInGroup = aggregateProperties(gr);
-                    gr.getProperty().clear();
-                    gr.getProperty().addAll(propertiesInGroup);
-                    groupsInGroup.add(gr);
-                }
-
+     * Одновременный разбор domainXml, projectXml и deployXml.
+     * Расстановка uid для каждой модели выполняется сразу после её разбора,
+     * не дожидаясь остальных. Ошибки собираются по каждому потоку отдельно.
+     */
+    private void loadInParallel(Path domainPath, Path projectPath, Path deployPath, Domain domain, Project project,
+                                Deploy deploy, boolean lazyDomains, boolean validate, Executor executor) {
+        CompletableFuture<Domain> domainFuture = CompletableFuture.supplyAsync(() -> loadModel(
+                domainXml, domainPath, xml -> unmarshalDomain(xml, validate), domain, Domain::new,
+                this::assignDomainUids), executor);
+        CompletableFuture<Project> projectFuture = CompletableFuture.supplyAsync(() -> loadModel(
+                projectXml, projectPath, xml -> unmarshalProject(xml, lazyDomains, validate), project, Project::new,
+                this::assignProjectUids), executor);
+        CompletableFuture<Deploy> deployFuture = CompletableFuture.supplyAsync(() -> loadModel(
+                deployXml, deployPath, xml -> unmarshalDeploy(xml, validate), deploy, Deploy::new,
+                this::assignDeployUids), executor);
+
+        Map<String, Throwable> errors = new LinkedHashMap<>();
+        this.domain = await("domainXml", domainFuture, errors);
+        this.project = await("projectXml", projectFuture, errors);
+        this.deploy = await("deployXml", deployFuture, errors);
+        if (!errors.isEmpty()) {
+            throw new SchemaLoadException(errors);
+        }
+        // Потоки разбора не трогают индексы и кэши: они сбрасываются здесь, после разбора всех моделей.
+        invalidateIndexes();
+    }
+
+    // Разбор одной модели с последующей расстановкой uid. Явно переданная модель имеет приоритет над разобранной.
+    private static <T> T loadModel(InputStream xml, Path path, ModelParser<T> parser, T explicit, Supplier<T> empty,
+                                   Consumer<T> uidGenerator) {
+        T model = empty.get();
+        if (xml != null || path != null) {
+            try {
+                model = parser.parse(XmlInputs.open(xml, path));
+            } catch (JAXBException | IOException e) {
+                throw new CompletionException(e);
             }
-            List<Property> propertiesInGroup = aggregateProperties(group);
-            newGroup.getProperty().addAll(propertiesInGroup);
-            newGroup.getGroup().addAll(groupsInGroup);
-            groups.add(newGroup);
         }
-        actualGroups.addAll(groups);
+        if (explicit != null) {
+            model = explicit;
+        }
+        uidGenerator.accept(model);
+        return model;
     }
 
-    /**
-     * Вспомгательный метод сбора метаданных реквизитов для группы.
-     *
-     * @param gr группа.
-     * @return список насыщенных реквизитов.
-     */
-    private List<Property> aggregateProperties(Group gr) {
-        List<Property> localPropertiesInGroup = new ArrayList<>();
-        for (Property property : gr.getProperty()) {
-            List<Properties> properties = this.domain.getProperties();
-            if (!properties.isEmpty()) {
-                localPropertiesInGroup.addAll(properties.get(0).getProperty().stream()
-                        .filter(pr -> pr.getId().equals(property.getId())).collect(Collectors.toList()));
-            }
+    // Ожидание разбора модели. Ошибка запоминается под именем потока.
+    private static <T> T await(String name, CompletableFuture<T> future, Map<String, Throwable> errors) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            errors.put(name, e.getCause() != null ? e.getCause() : e);
+            return null;
+        }
+    }
+
+    private static Domain unmarshalDomain(InputStream xml, boolean validate) throws JAXBException {
+        if (validate) {
+            return SchemaValidation.unmarshal(xml, Domain.class);
         }
-        return localPropertiesInGroup;
+        return JaxbContextRegistry.forClasses(Project.class, Domain.class, Deploy.class).withUnmarshaller(
+                unmarshaller -> unmarshaller.unmarshal(new StreamSource(xml), Domain.class).getValue());
+    }
+
+    private Project unmarshalProject(InputStream xml, boolean lazyDomains, boolean validate)
+            throws JAXBException, IOException {
+        if (validate) {
+            return SchemaValidation.unmarshal(xml, Project.class);
+        }
+        if (lazyDomains) {
+            return LazyProjectLoader.load(XmlInputs.content(xml), this::domainLoaded);
+        }
+        return JaxbContextRegistry.forClasses(Project.class, Domain.class, Deploy.class).withUnmarshaller(
+                unmarshaller -> unmarshaller.unmarshal(new StreamSource(xml), Project.class).getValue());
+    }
+
+    private static Deploy unmarshalDeploy(InputStream xml, boolean validate) throws JAXBException {
+        if (validate) {
+            return SchemaValidation.unmarshal(xml, Deploy.class);
+        }
+        return JaxbContextRegistry.forClasses(Project.class, Domain.class, Deploy.class).withUnmarshaller(
+                unmarshaller -> unmarshaller.unmarshal(new StreamSource(xml), Deploy.class).getValue());
     }
 
     /**
@@ -172,20 +343,25 @@ public class SchemaUtils {
      * @param json json-представление новой/обновляемой группы
      */
     public void updateGroup(String json) {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            Group group = mapper.readValue(json, Group.class);
-            int index = lookUpGroupIndexById(group.getId());
-            if (index == -1) {
-                this.domain.getGroup().add(group);
-            } else {
-                this.domain.getGroup().get(index).setName(group.getName());
-                this.domain.getGroup().get(index).setDescription(group.getDescription());
-                System.out.println();
+        write(() -> {
+            jsonCache.changed(JsonSection.GROUPS);
+            try {
+                Group group = JsonMapperRegistry.readerFor(Group.class).readValue(json);
+                journal(JournalOp.UPDATE_GROUP, json);
+                int index = lookUpGroupIndexById(group.getId());
+                if (index == -1) {
+                    this.domain.getGroup().add(group);
+                    groupIndex().getGroups().added();
+                } else {
+                    this.domain.getGroup().get(index).setName(group.getName());
+                    this.domain.getGroup().get(index).setDescription(group.getDescription());
+                }
+                // Новая группа могла быть указана вложенной в уже насыщенные группы.
+                groupIndex().groupChanged(group.getId());
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException(e);
             }
-        } catch (JsonProcessingException e) {
-            throw new IllegalArgumentException(e);
-        }
+        });
     }
 
     /**
@@ -194,10 +370,15 @@ public class SchemaUtils {
      * @param groupId идентификатор удаляемой группы.
      */
     public void removeGroup(String groupId) {
-        for (Group group : this.domain.getGroup()) {
-            removeGroup(groupId, group);
-        }
-        this.domain.getGroup().removeIf(group -> StringUtils.equals(groupId, group.getId()));
+        write(() -> {
+            jsonCache.changed(JsonSection.GROUPS);
+            journal(JournalOp.REMOVE_GROUP, groupId);
+            for (Group group : this.domain.getGroup()) {
+                removeGroup(groupId, group);
+            }
+            this.domain.getGroup().removeIf(group -> StringUtils.equals(groupId, group.getId()));
+            groupIndex().invalidate();
+        });
     }
 
     /**
@@ -219,16 +400,20 @@ public class SchemaUtils {
      * @param json структура, содержащая id группы и список id удаляемых реквизитов.
      */
     public void removePropertiesFromGroup(String json) {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            SerializeHelperClass item = mapper.readValue(json, SerializeHelperClass.class);
-            Group group = lookUpGroupById(item.getId());
-            if (group != null) {
-                group.getProperty().removeIf(property -> item.getElements().contains(property.getId()));
+        write(() -> {
+            jsonCache.changed(JsonSection.GROUPS);
+            try {
+                SerializeHelperClass item = JsonMapperRegistry.readerFor(SerializeHelperClass.class).readValue(json);
+                journal(JournalOp.REMOVE_PROPERTIES_FROM_GROUP, json);
+                Group group = lookUpGroupById(item.getId());
+                if (group != null) {
+                    group.getProperty().removeIf(property -> item.getElements().contains(property.getId()));
+                    groupIndex().groupChanged(item.getId());
+                }
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException(e);
             }
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        });
     }
 
     /**
@@ -237,16 +422,20 @@ public class SchemaUtils {
      * @param json структура, содержащая id родительской группы и список id удаляемых групп.
      */
     public void removeGroupsFromGroup(String json) {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            SerializeHelperClass item = mapper.readValue(json, SerializeHelperClass.class);
-            Group group = lookUpGroupById(item.getId());
-            if (group != null) {
-                group.getGroup().removeIf(gr -> item.getElements().contains(gr.getId()));
+        write(() -> {
+            jsonCache.changed(JsonSection.GROUPS);
+            try {
+                SerializeHelperClass item = JsonMapperRegistry.readerFor(SerializeHelperClass.class).readValue(json);
+                journal(JournalOp.REMOVE_GROUPS_FROM_GROUP, json);
+                Group group = lookUpGroupById(item.getId());
+                if (group != null) {
+                    group.getGroup().removeIf(gr -> item.getElements().contains(gr.getId()));
+                    groupIndex().groupChanged(item.getId());
+                }
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException(e);
             }
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        });
     }
 
     /**
@@ -255,24 +444,27 @@ public class SchemaUtils {
      * @param json - структура, содержащая id группы и набор id добавляемых реквизитов.
      */
     public void addPropertiesToGroup(String json) {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            SerializeHelperClass item = mapper.readValue(json, SerializeHelperClass.class);
-            Group group = lookUpGroupById(item.getId());
-            int index = lookUpGroupIndexById(item.getId());
-            if (group != null) {
-                for (String propertyId : item.getElements()) {
-                    if (group.getProperty().stream().noneMatch(pr -> StringUtils.equals(pr.getId(), propertyId))) {
-                        Property property = new Property();
-                        property.setId(propertyId);
-                        group.getProperty().add(property);
+        write(() -> {
+            jsonCache.changed(JsonSection.GROUPS);
+            try {
+                SerializeHelperClass item = JsonMapperRegistry.readerFor(SerializeHelperClass.class).readValue(json);
+                journal(JournalOp.ADD_PROPERTIES_TO_GROUP, json);
+                Group group = lookUpGroupById(item.getId());
+                if (group != null) {
+                    Set<String> present = group.getProperty().stream().map(Property::getId).collect(Collectors.toSet());
+                    for (String propertyId : item.getElements()) {
+                        if (present.add(propertyId)) {
+                            Property property = new Property();
+                            property.setId(propertyId);
+                            group.getProperty().add(property);
+                        }
                     }
+                    groupIndex().groupChanged(item.getId());
                 }
-                this.domain.getGroup().set(index, group);
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException(e);
             }
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        });
     }
 
     /**
@@ -281,22 +473,27 @@ public class SchemaUtils {
      * @param json - структура, содержащая id группы и набор id добавляемых групп.
      */
     public void addGroupsToGroup(String json) {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            SerializeHelperClass item = mapper.readValue(json, SerializeHelperClass.class);
-            Group group = lookUpGroupById(item.getId());
-            if (group != null) {
-                for (String groupId : item.getElements()) {
-                    if (group.getGroup().stream().noneMatch(gr -> StringUtils.equals(gr.getId(), groupId))) {
-                        Group groupToAdd = new Group();
-                        groupToAdd.setId(groupId);
-                        group.getGroup().add(groupToAdd);
+        write(() -> {
+            jsonCache.changed(JsonSection.GROUPS);
+            try {
+                SerializeHelperClass item = JsonMapperRegistry.readerFor(SerializeHelperClass.class).readValue(json);
+                journal(JournalOp.ADD_GROUPS_TO_GROUP, json);
+                Group group = lookUpGroupById(item.getId());
+                if (group != null) {
+                    Set<String> present = group.getGroup().stream().map(Group::getId).collect(Collectors.toSet());
+                    for (String groupId : item.getElements()) {
+                        if (present.add(groupId)) {
+                            Group groupToAdd = new Group();
+                            groupToAdd.setId(groupId);
+                            group.getGroup().add(groupToAdd);
+                        }
                     }
+                    groupIndex().groupChanged(item.getId());
                 }
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException(e);
             }
-        } catch (JsonProcessingException e) {
-            throw new IllegalArgumentException(e);
-        }
+        });
     }
 
     /**
@@ -305,22 +502,28 @@ public class SchemaUtils {
      * @param json json-представление реквизита.
      */
     public void updateProperty(String json) {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            Property property = mapper.readValue(json, Property.class);
-            int index = lookUpPropertyIndexById(property.getId());
-            if (index == -1) {
-                if (this.domain.getProperties().isEmpty()) {
-                    Properties properties = new Properties();
-                    this.domain.getProperties().add(properties);
+        write(() -> {
+            jsonCache.changed(JsonSection.GROUPS, JsonSection.PROPERTIES);
+            try {
+                Property property = JsonMapperRegistry.readerFor(Property.class).readValue(json);
+                journal(JournalOp.UPDATE_PROPERTY, json);
+                int index = lookUpPropertyIndexById(property.getId());
+                if (index == -1) {
+                    if (this.domain.getProperties().isEmpty()) {
+                        Properties properties = new Properties();
+                        this.domain.getProperties().add(properties);
+                    }
+                    this.domain.getProperties().get(0).getProperty().add(property);
+                    groupIndex().getProperties().added();
+                } else {
+                    this.domain.getProperties().get(0).getProperty().set(index, property);
+                    groupIndex().getProperties().replaced(index, property.getId());
                 }
-                this.domain.getProperties().get(0).getProperty().add(property);
-            } else {
-                this.domain.getProperties().get(0).getProperty().set(index, property);
+                groupIndex().propertyChanged(property.getId());
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException(e);
             }
-        } catch (JsonProcessingException e) {
-            throw new IllegalArgumentException(e);
-        }
+        });
     }
 
     /**
@@ -329,31 +532,61 @@ public class SchemaUtils {
      * @param json json-представление реквизита.
      */
     public void deleteProperty(String json) {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            List<String> propertyId = mapper.readValue(json, SerializeHelperClass.class).getElements();
-            if (!this.domain.getProperties().isEmpty()) {
-                this.domain.getProperties().get(0).getProperty().removeIf(property -> propertyId.contains(property.getId()));
+        write(() -> {
+            jsonCache.changed(JsonSection.GROUPS, JsonSection.PROPERTIES);
+            try {
+                List<String> propertyId = JsonMapperRegistry.readerFor(SerializeHelperClass.class).<SerializeHelperClass>readValue(json).getElements();
+                journal(JournalOp.DELETE_PROPERTY, json);
+                Set<String> ids = new HashSet<>(propertyId);
+                if (!this.domain.getProperties().isEmpty()) {
+                    this.domain.getProperties().get(0).getProperty().removeIf(property -> ids.contains(property.getId()));
+                }
+                this.domain.getGroup().forEach(group -> {
+                    group.getProperty().removeIf(property -> ids.contains(property.getId()));
+                });
+                groupIndex().getProperties().invalidate();
+                ids.forEach(groupIndex()::propertyChanged);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException(e);
             }
-            this.domain.getGroup().forEach(group -> {
-                group.getProperty().removeIf(property -> propertyId.contains(property.getId()));
-            });
-        } catch (JsonProcessingException e) {
-            throw new IllegalArgumentException(e);
-        }
+        });
     }
 
     /**
      * Расстановка uid для узлов и их extendedColumn в составе каждого домена проекта.
      */
     public void generateProjectUid() {
-        if (project != null) {
-            project.getDomain().forEach(this::generateDomainUid);
-            if (StringUtils.isEmpty(project.getUid())) {
-                project.setUid(UUID.randomUUID().toString());
+        writeProject(Collections::emptyList, () -> {
+            if (project != null) {
+                generateProjectUid(project);
+            } else {
+                throw new IllegalArgumentException("Проект пуст!");
             }
+            journalCheckpoint();
+        });
+    }
+
+    // Расстановка uid в составе конкретного проекта со сбросом индексов его доменов.
+    private void generateProjectUid(Project project) {
+        assignProjectUids(project);
+        if (project.getDomain() instanceof LazyDomainList) {
+            ((LazyDomainList) project.getDomain()).forEachLoaded(this::invalidateDomainIndex);
+        } else {
+            project.getDomain().forEach(this::invalidateDomainIndex);
+        }
+        projectDomainIndex.invalidate();
+    }
+
+    // Расстановка uid в составе проекта. Затрагивает только сам проект, поэтому выполняется и в потоке разбора.
+    private void assignProjectUids(Project project) {
+        if (project.getDomain() instanceof LazyDomainList) {
+            // Ещё не разобранные домены получат uid при материализации.
+            ((LazyDomainList) project.getDomain()).forEachLoaded(this::assignDomainUids);
         } else {
-            throw new IllegalArgumentException("Проект пуст!");
+            project.getDomain().forEach(this::assignDomainUids);
+        }
+        if (StringUtils.isEmpty(project.getUid())) {
+            project.setUid(UUID.randomUUID().toString());
         }
     }
 
@@ -361,23 +594,42 @@ public class SchemaUtils {
      * Расстановка uid для узлов и их extendedColumn в составе домена.
      */
     public void generateDomainUid() {
-        if (domain != null) {
-            generateDomainUid(domain);
-        } else {
-            throw new IllegalArgumentException("Домен пуст!");
-        }
+        write(() -> {
+            if (domain != null) {
+                generateDomainUid(domain);
+            } else {
+                throw new IllegalArgumentException("Домен пуст!");
+            }
+            journalCheckpoint();
+        });
     }
 
     /**
      * Расстановка uid для хостов в составе схемы деплоя.
      */
     public void generateDeployUid() {
-        if (deploy != null) {
-            deploy.getFsHost().forEach(this::generateUid);
-            deploy.getDbHost().forEach(this::generateUid);
-        } else {
-            throw new IllegalArgumentException("Схема деплоя пуста!");
-        }
+        writeProject(Collections::emptyList, () -> {
+            jsonCache.changed(JsonSection.DB_HOSTS, JsonSection.FS_HOSTS);
+            if (deploy != null) {
+                generateDeployUid(deploy);
+            } else {
+                throw new IllegalArgumentException("Схема деплоя пуста!");
+            }
+            journalCheckpoint();
+        });
+    }
+
+    // Расстановка uid для хостов конкретной схемы деплоя.
+    private void generateDeployUid(Deploy deploy) {
+        assignDeployUids(deploy);
+        dbHostIndex.invalidate();
+        fsHostIndex.invalidate();
+    }
+
+    // Расстановка uid для хостов. Затрагивает только саму схему деплоя, поэтому выполняется и в потоке разбора.
+    private void assignDeployUids(Deploy deploy) {
+        deploy.getFsHost().forEach(this::generateUid);
+        deploy.getDbHost().forEach(this::generateUid);
     }
 
 
@@ -388,7 +640,27 @@ public class SchemaUtils {
      *               Расстановка uid для узлов и их extendedColumn в составе domain.
      */
     public void generateDomainUid(Domain domain) {
-        if (StringUtils.isEmpty(domain.getUid())) {
+        write(() -> {
+            domainLoaded(domain);
+        });
+    }
+
+    // Расстановка uid в материализованном или переданном домене со сбросом его индексов.
+    private void domainLoaded(Domain domain) {
+        if (assignDomainUids(domain)) {
+            projectDomainIndex.invalidate();
+        }
+        invalidateDomainIndex(domain);
+    }
+
+    /**
+     * Расстановка uid в составе домена. Затрагивает только сам домен, поэтому выполняется и в потоке разбора.
+     *
+     * @return признак того, что uid получил сам домен.
+     */
+    private boolean assignDomainUids(Domain domain) {
+        boolean assigned = StringUtils.isEmpty(domain.getUid());
+        if (assigned) {
             domain.setUid(UUID.randomUUID().toString());
         }
         domain.getAnchor().forEach(anchor -> {
@@ -450,6 +722,77 @@ public class SchemaUtils {
             }
         });
         domain.getArea().forEach(this::generateUid);
+        return assigned;
+    }
+
+    /**
+     * Сброс индексов узлов и кэша json.
+     * Нужен после изменения модели в обход методов SchemaUtils (через геттеры), если до следующего изменения
+     * через SchemaUtils её будут читать: поиск по uid и мнемонике, выгрузка json. Методы изменения сами находят
+     * узлы, которым uid задан на месте, и не дублируют их, но выгрузка json без сброса вернёт прежнее состояние.
+     */
+    public void invalidateIndexes() {
+        write(() -> {
+            invalidateDomainIndex(domain);
+            jsonCache.changedAll();
+            projectDomainIndexes.clear();
+            projectDomainIndex.invalidate();
+            connexionIndex.invalidate();
+            projectReferences.invalidate();
+            dbHostIndex.invalidate();
+            fsHostIndex.invalidate();
+            deployIndex.invalidate();
+        });
+    }
+
+    // Индексы текущего домена. Пересоздаются, если домен заменён.
+    private DomainIndex domainIndex() {
+        if (domainIndex == null || domainIndex.getDomain() != domain) {
+            SchemaLock.beforeFill();
+            domainIndex = new DomainIndex(domain);
+        }
+        return domainIndex;
+    }
+
+    // Индексы домена проекта. Индексы удалённых доменов отбрасываются, как только их становится больше, чем доменов.
+    private DomainIndex projectDomainIndex(String shortName) {
+        Domain dom = lookUpDomainByShortName(shortName);
+        return dom == null ? null : domainIndex(dom);
+    }
+
+    private DomainIndex domainIndex(Domain dom) {
+        if (dom == domain) {
+            return domainIndex();
+        }
+        DomainIndex index = projectDomainIndexes.get(dom);
+        if (index != null) {
+            return index;
+        }
+        SchemaLock.beforeFill();
+        if (projectDomainIndexes.size() >= project.getDomain().size()) {
+            projectDomainIndexes.clear();
+        }
+        index = new DomainIndex(dom);
+        projectDomainIndexes.put(dom, index);
+        return index;
+    }
+
+    private GroupIndex groupIndex() {
+        return domainIndex().getGroupIndex();
+    }
+
+    private void invalidateDomainIndex(Domain dom) {
+        if (dom == domain) {
+            jsonCache.domainChanged();
+        }
+        jsonCache.changed(JsonSection.DOMAINS);
+        if (domainIndex != null && domainIndex.getDomain() == dom) {
+            domainIndex.invalidate();
+        }
+        DomainIndex index = projectDomainIndexes.get(dom);
+        if (index != null) {
+            index.invalidate();
+        }
     }
 
     // Вспомогательный метод создания тега values в кноте вместо items.
@@ -538,8 +881,7 @@ public class SchemaUtils {
      * @throws JsonProcessingException
      */
     public String anchorsAsJson() throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.writeValueAsString(domain.getAnchor());
+        return asJson(JsonSection.ANCHORS);
     }
 
     /**
@@ -549,8 +891,7 @@ public class SchemaUtils {
      * @throws JsonProcessingException
      */
     public String tiesAsJson() throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.writeValueAsString(domain.getTie());
+        return asJson(JsonSection.TIES);
     }
 
     /**
@@ -560,8 +901,7 @@ public class SchemaUtils {
      * @throws JsonProcessingException
      */
     public String knotsAsJson() throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.writeValueAsString(domain.getKnot());
+        return asJson(JsonSection.KNOTS);
     }
 
     /**
@@ -571,8 +911,7 @@ public class SchemaUtils {
      * @throws JsonProcessingException
      */
     public String txAnchorsAsJson() throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.writeValueAsString(domain.getTxAnchor());
+        return asJson(JsonSection.TX_ANCHORS);
     }
 
     /**
@@ -582,8 +921,7 @@ public class SchemaUtils {
      * @throws JsonProcessingException
      */
     public String cdAnchorsAsJson() throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.writeValueAsString(domain.getCdAnchor());
+        return asJson(JsonSection.CD_ANCHORS);
     }
 
     /**
@@ -593,8 +931,7 @@ public class SchemaUtils {
      * @throws JsonProcessingException
      */
     public String domainListAsJson() throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.writeValueAsString(project.getDomain());
+        return asJson(JsonSection.DOMAINS);
     }
 
     /**
@@ -604,8 +941,7 @@ public class SchemaUtils {
      * @throws JsonProcessingException
      */
     public String connexionsAsJson() throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.writeValueAsString(project.getConnexions());
+        return asJson(JsonSection.CONNEXIONS);
     }
 
     /**
@@ -615,8 +951,7 @@ public class SchemaUtils {
      * @throws JsonProcessingException
      */
     public String areasAsJson() throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.writeValueAsString(domain.getArea());
+        return asJson(JsonSection.AREAS);
     }
 
     /**
@@ -626,9 +961,13 @@ public class SchemaUtils {
      * @throws JsonProcessingException
      */
     public String groupsAsJson() throws JsonProcessingException {
-        aggregateGroups();
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(actualGroups);
+        return read(() -> {
+            return JsonSection.GROUPS.writer().withDefaultPrettyPrinter().writeValueAsString(resolvedGroups());
+        });
+    }
+
+    List<Group> resolvedGroups() {
+        return groupIndex().resolvedGroups(domain.getGroup());
     }
 
     /**
@@ -638,8 +977,7 @@ public class SchemaUtils {
      * @throws JsonProcessingException
      */
     public String propertiesAsJson() throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.writeValueAsString(domain.getProperties());
+        return asJson(JsonSection.PROPERTIES);
     }
 
     /**
@@ -649,8 +987,7 @@ public class SchemaUtils {
      * @throws JsonProcessingException
      */
     public String dbHostsAsJson() throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.writeValueAsString(deploy.getDbHost());
+        return asJson(JsonSection.DB_HOSTS);
     }
 
     /**
@@ -660,153 +997,554 @@ public class SchemaUtils {
      * @throws JsonProcessingException
      */
     public String fsHostsAsJson() throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        return objectMapper.writeValueAsString(deploy.getFsHost());
+        return asJson(JsonSection.FS_HOSTS);
     }
 
-    //  Группа методов для поиска узла (кроме атрибута)
-    private Domain lookUpDomainByUid(String uid) {
-        return project.getDomain().stream().filter(domain -> uid.equals(domain.getUid())).findAny().orElse(null);
+    /**
+     * Счётчик изменений раздела. Увеличивается каждым методом SchemaUtils, изменяющим раздел.
+     *
+     * @param section раздел.
+     * @return счётчик изменений.
+     */
+    public long jsonVersion(JsonSection section) {
+        return read(() -> {
+            return jsonCache.version(section);
+        });
     }
 
-    private Anchor lookUpAnchorByUid(String uid) {
-        return domain.getAnchor().stream().filter(anchor -> uid.equals(anchor.getUid())).findAny().orElse(null);
+    /**
+     * ETag json-представления раздела: совпадает у двух чтений, только если раздел между ними не менялся.
+     *
+     * @param section раздел.
+     * @return ETag в кавычках, пригодный для заголовка HTTP.
+     * @throws JsonProcessingException ошибка сериализации раздела.
+     */
+    public String jsonETag(JsonSection section) throws JsonProcessingException {
+        return jsonEntry(section).etag();
     }
 
-    private CdAnchor lookUpCdAnchorByUid(String uid) {
-        return domain.getCdAnchor().stream().filter(anchor -> uid.equals(anchor.getUid())).findAny().orElse(null);
+    /**
+     * Потоковая запись раздела в виде json-массива без промежуточной строки.
+     * Раздел сериализуется один раз до следующего изменения, повторная запись копирует готовые байты.
+     *
+     * @param section раздел.
+     * @param out     поток для записи json в UTF-8. Поток не закрывается.
+     * @param gzip    сжимать ли вывод gzip.
+     * @throws IOException ошибка записи.
+     */
+    public void writeJson(JsonSection section, OutputStream out, boolean gzip) throws IOException {
+        JsonMapperRegistry.write(out, gzip, jsonEntry(section).bytes());
     }
 
-    private Tie lookUpTieByUid(String uid) {
-        return domain.getTie().stream().filter(tie -> uid.equals(tie.getUid())).findAny().orElse(null);
+    /**
+     * @see #writeJson(JsonSection, OutputStream, boolean)
+     */
+    public void writeJson(JsonSection section, OutputStream out) throws IOException {
+        writeJson(section, out, false);
     }
 
-    private Knot lookUpKnotByUid(String uid) {
-        return domain.getKnot().stream().filter(knot -> uid.equals(knot.getUid())).findAny().orElse(null);
+    /**
+     * Потоковая запись раздела в виде json-массива без промежуточной строки.
+     * Готовые байты раздела декодируются в поток частями.
+     *
+     * @param section раздел.
+     * @param out     поток для записи json. Поток не закрывается.
+     * @throws IOException ошибка записи.
+     */
+    public void writeJson(JsonSection section, Writer out) throws IOException {
+        JsonMapperRegistry.write(out, List.of(jsonEntry(section).bytes()));
     }
 
-    private TxAnchor lookUpTxAnchorByUid(String uid) {
-        return domain.getTxAnchor().stream().filter(txAnchor -> uid.equals(txAnchor.getUid())).findAny().orElse(null);
+    /**
+     * Потоковая запись всех разделов домена за один проход в виде json-объекта
+     * с полями anchors, ties, knots, txAnchors, cdAnchors, areas, groups, properties.
+     * Разделы пишутся готовыми байтами из кэша json, без промежуточных строк.
+     *
+     * @param out  поток для записи json в UTF-8. Поток не закрывается.
+     * @param gzip сжимать ли вывод gzip.
+     * @throws IOException ошибка записи.
+     */
+    public void writeDomainJson(OutputStream out, boolean gzip) throws IOException {
+        JsonMapperRegistry.write(out, gzip, domainParts());
     }
 
-    private Connexions lookUpConnexionByUid(String uid) {
-        return project.getConnexions().stream().filter(connexion -> uid.equals(connexion.getUid())).findAny().orElse(null);
+    /**
+     * @see #writeDomainJson(OutputStream, boolean)
+     */
+    public void writeDomainJson(Writer out) throws IOException {
+        JsonMapperRegistry.write(out, domainParts());
     }
 
-    private DbHost lookUpDbHostByUid(String uid) {
-        return deploy.getDbHost().stream().filter(dbHost -> uid.equals(dbHost.getUid())).findAny().orElse(null);
+    /**
+     * Выгрузка части раздела: только выбранные поля узлов, только узлы area, одна страница.
+     * Сериализуются лишь узлы страницы и их выбранные поля.
+     *
+     * @param query запрос.
+     * @return json-массив узлов страницы.
+     * @throws JsonProcessingException ошибка сериализации.
+     */
+    public String nodesAsJson(NodeQuery query) throws JsonProcessingException {
+        return read(() -> {
+            List<?> page = page(query);
+            return nodesWriter(query, page).writeValueAsString(page);
+        });
     }
 
-    private FsHost lookUpFsHostByUid(String uid) {
-        return deploy.getFsHost().stream().filter(fsHost -> uid.equals(fsHost.getUid())).findAny().orElse(null);
+    /**
+     * Потоковая выгрузка части раздела, см. {@link #nodesAsJson(NodeQuery)}.
+     *
+     * @param query запрос.
+     * @param out   поток для записи json в UTF-8. Поток не закрывается.
+     * @throws IOException ошибка записи.
+     */
+    public void writeNodes(NodeQuery query, OutputStream out) throws IOException {
+        // Индексы для отбора страницы заполняются до записи: прерванное заполнением чтение ещё ничего не записало.
+        read(() -> {
+            List<?> page = page(query);
+            JsonMapperRegistry.write(out, false, generator -> nodesWriter(query, page).writeValue(generator, page));
+            return null;
+        });
     }
 
-    private Area lookUpAreaByUid(String uid) {
-        return domain.getArea().stream().filter(area -> uid.equals(area.getUid())).findAny().orElse(null);
+    // Отбор узлов страницы: курсор ищется по индексу, дальше список просматривается до заполнения страницы.
+    private List<?> page(NodeQuery query) {
+        JsonSection section = query.getSection();
+        List<?> nodes = section.nodes(this);
+        Predicate<Object> filter = query.getAreaUid() != null ? areaFilter(section, query.getAreaUid()) : node -> true;
+        int start = 0;
+        if (query.getAfter() != null) {
+            int position = positionOf(section, query.getAfter());
+            if (position == -1) {
+                throw new IllegalArgumentException("Узел курсора " + query.getAfter() + " не найден.");
+            }
+            start = position + 1;
+        }
+        List<Object> page = new ArrayList<>();
+        int skipped = 0;
+        for (int i = start; i < nodes.size() && page.size() < query.getLimit(); i++) {
+            Object node = nodes.get(i);
+            if (filter.test(node) && skipped++ >= query.getOffset()) {
+                page.add(node);
+            }
+        }
+        return page;
+    }
+
+    private static ObjectWriter nodesWriter(NodeQuery query, List<?> page) {
+        JsonSection section = query.getSection();
+        if (query.getFields() == null) {
+            return section.writer();
+        }
+        Set<String> fields = new HashSet<>(query.getFields());
+        fields.add(section == JsonSection.GROUPS ? "id" : "uid");
+        Set<Object> roots = Collections.newSetFromMap(new IdentityHashMap<>());
+        roots.addAll(page);
+        return JsonMapperRegistry.projectionWriterFor(section.getElementType(), fields, roots);
+    }
+
+    private int positionOf(JsonSection section, String uid) {
+        switch (section) {
+            case ANCHORS:
+                return domainIndex().getAnchors().indexOf(uid);
+            case TIES:
+                return domainIndex().getTies().indexOf(uid);
+            case KNOTS:
+                return domainIndex().getKnots().indexOf(uid);
+            case TX_ANCHORS:
+                return domainIndex().getTxAnchors().indexOf(uid);
+            case CD_ANCHORS:
+                return domainIndex().getCdAnchors().indexOf(uid);
+            case AREAS:
+                return domainIndex().getAreas().indexOf(uid);
+            case GROUPS:
+                return groupIndex().getGroups().indexOf(uid);
+            case DOMAINS:
+                return lookUpDomainIndexByUid(uid);
+            case CONNEXIONS:
+                return connexionIndex.indexOf(uid);
+            case DB_HOSTS:
+                return dbHostIndex.indexOf(uid);
+            case FS_HOSTS:
+                return fsHostIndex.indexOf(uid);
+            default:
+                throw new IllegalArgumentException("Раздел " + section.getField() + " не поддерживает курсор.");
+        }
+    }
+
+    private Predicate<Object> areaFilter(JsonSection section, String areaUid) {
+        Area area = domainIndex().getAreas().get(areaUid);
+        if (area == null) {
+            throw new IllegalArgumentException("Area " + areaUid + " не найдена.");
+        }
+        Set<String> mnemonics = area.getAnchorRole().stream().map(AnchorRole::getType).collect(Collectors.toSet());
+        switch (section) {
+            case ANCHORS:
+                return node -> mnemonics.contains(((Anchor) node).getMnemonic());
+            case CD_ANCHORS:
+                return node -> mnemonics.contains(((CdAnchor) node).getMnemonic());
+            case TIES:
+                return node -> ((Tie) node).getAnchorRole().stream().anyMatch(role -> mnemonics.contains(role.getType()));
+            case TX_ANCHORS:
+                return node -> ((TxAnchor) node).getAnchorRole().stream().anyMatch(role -> mnemonics.contains(role.getType()));
+            default:
+                throw new IllegalArgumentException("Раздел " + section.getField() + " не фильтруется по area.");
+        }
+    }
+
+    private String asJson(JsonSection section) throws JsonProcessingException {
+        return jsonEntry(section).json();
+    }
+
+    // Сериализованный раздел. Готовый раздел не меняется, поэтому читается оптимистично и дальше используется
+    // без блокировки; сериализация выполняется под блокировкой.
+    private JsonCache.Entry jsonEntry(JsonSection section) throws JsonProcessingException {
+        JsonCache.Entry entry = lock == null ? null : lock.peek(() -> jsonCache.peek(section));
+        return entry != null ? entry : read(() -> jsonCache.get(section, this));
+    }
+
+    // Json-объект разделов домена из готовых байтов разделов, сериализованных за одно чтение,
+    // чтобы не попасть между изменениями. Имена полей — константы без экранируемых символов.
+    private List<byte[]> domainParts() throws JsonProcessingException {
+        return read(() -> {
+            List<byte[]> parts = new ArrayList<>();
+            for (JsonSection section : JsonSection.values()) {
+                if (section.isDomainSection()) {
+                    String prefix = parts.isEmpty() ? "{\"" : ",\"";
+                    parts.add((prefix + section.getField() + "\":").getBytes(StandardCharsets.UTF_8));
+                    parts.add(jsonCache.get(section, this).bytes());
+                }
+            }
+            parts.add("}".getBytes(StandardCharsets.UTF_8));
+            return parts;
+        });
     }
 
-
-    private Domain lookUpDomainByShortName(String shortName) {
-        return project.getDomain().stream().filter(dom -> dom.getShortName().equals(shortName)).findAny().orElse(null);
+    private <T, E extends Exception> T read(SchemaLock.Action<T, E> action) throws E {
+        return lock == null ? action.run() : lock.read(action);
     }
 
-    // Группа методов для поиска индекса узла (кроме атрибута) в соответствующем списке.
-    private Integer lookUpDomainIndexByUid(String uid) {
-        return project.getDomain().indexOf(lookUpDomainByUid(uid));
+    // Изменение текущего домена: под его полосой.
+    private <T, E extends Exception> T write(SchemaLock.Action<T, E> action) throws E {
+        return stripes == null ? locked(action) : stripes.lock(this::currentDomain, () -> locked(action));
     }
 
-    private Integer lookUpAnchorIndexByUid(String uid) {
-        return domain.getAnchor().indexOf(lookUpAnchorByUid(uid));
+    private <E extends Exception> void write(SchemaLock.VoidAction<E> action) throws E {
+        write(() -> {
+            action.run();
+            return null;
+        });
     }
 
-    private Integer lookUpCdAnchorIndexByUid(String uid) {
-        return domain.getCdAnchor().indexOf(lookUpCdAnchorByUid(uid));
+    // Изменение уровня проекта: под блокировкой проекта и полосами затронутых доменов и текущего домена.
+    // Затронутые домены вычисляются под блокировкой проекта.
+    private <T, E extends Exception> T writeProject(Supplier<Collection<String>> shortNames,
+                                                    SchemaLock.Action<T, E> action) throws E {
+        if (stripes == null) {
+            return locked(action);
+        }
+        return stripes.lockProject(() -> {
+            Set<String> affected = new HashSet<>(read(shortNames::get));
+            affected.addAll(currentDomain());
+            return affected;
+        }, () -> locked(action));
     }
 
-    private Integer lookUpTieIndexByUid(String uid) {
-        return domain.getTie().indexOf(lookUpTieByUid(uid));
+    private <E extends Exception> void writeProject(Supplier<Collection<String>> shortNames,
+                                                    SchemaLock.VoidAction<E> action) throws E {
+        writeProject(shortNames, () -> {
+            action.run();
+            return null;
+        });
     }
 
-    private Integer lookUpKnotIndexByUid(String uid) {
-        return domain.getKnot().indexOf(lookUpKnotByUid(uid));
+    private <T, E extends Exception> T locked(SchemaLock.Action<T, E> action) throws E {
+        return lock == null ? committed(action) : lock.write(() -> committed(action));
     }
 
-    private Integer lookUpTxAnchorIndexByUid(String uid) {
-        return domain.getTxAnchor().indexOf(lookUpTxAnchorByUid(uid));
+    private Collection<String> currentDomain() {
+        return Collections.singletonList(domain != null ? domain.getShortName() : null);
     }
 
-    private Integer lookUpConnexionIndexByUid(String uid) {
-        return project.getConnexions().indexOf(lookUpConnexionByUid(uid));
+    // Краткие наименования доменов и прежние наименования тех из них, что уже есть в проекте.
+    private Collection<String> renamedDomains(List<Domain> domains) {
+        List<String> shortNames = new ArrayList<>();
+        for (Domain dom : domains) {
+            shortNames.add(dom.getShortName());
+            Domain previous = lookUpDomainByUid(dom.getUid());
+            if (previous != null) {
+                shortNames.add(previous.getShortName());
+            }
+        }
+        return shortNames;
     }
 
-    private Integer lookUpDbHostIndexByUid(String uid) {
-        return deploy.getDbHost().indexOf(lookUpDbHostByUid(uid));
+    // Домены, на которые ссылаются коннексионы и одноимённые по uid коннексионы проекта.
+    private Collection<String> connexionDomains(Collection<Connexions> connexions) {
+        List<String> shortNames = new ArrayList<>();
+        for (Connexions connexion : connexions) {
+            connexion.getAnchorRole().forEach(anchorRole -> shortNames.add(anchorRole.getDomain()));
+            Connexions previous = lookUpConnexionByUid(connexion.getUid());
+            if (previous != null) {
+                previous.getAnchorRole().forEach(anchorRole -> shortNames.add(anchorRole.getDomain()));
+            }
+        }
+        return shortNames;
     }
 
-    private Integer lookUpFsHostIndexByUid(String uid) {
-        return deploy.getFsHost().indexOf(lookUpFsHostByUid(uid));
+    // Изменение с публикацией снимка по завершении внешнего вызова, в том числе неудачного,
+    // и записью в журнал по завершении успешного.
+    private <T, E extends Exception> T committed(SchemaLock.Action<T, E> action) throws E {
+        WriteScope scope = writeScope.get();
+        if (scope.depth == 0) {
+            // Между вызовами списки модели могли измениться через геттеры.
+            NodeIndex.nextChange();
+            // Уплотнение до изменения: снимок не содержит записей этого вызова.
+            compactJournalIfDue();
+        }
+        scope.depth++;
+        boolean completed = false;
+        try {
+            T result = action.run();
+            completed = true;
+            return result;
+        } finally {
+            try {
+                if (scope.depth == 1) {
+                    try {
+                        if (completed) {
+                            appendJournal(scope);
+                        }
+                    } finally {
+                        scope.ops.clear();
+                        scope.args.clear();
+                        if (snapshots != null) {
+                            snapshot = snapshots.publish(domain, project, deploy);
+                        }
+                    }
+                }
+            } finally {
+                scope.depth--;
+            }
+        }
     }
 
+    // Учёт узла, изменённого на месте, для снимков.
+    private void touched(Object node) {
+        if (snapshots != null) {
+            snapshots.touched(node);
+        }
+    }
 
-    private Integer lookUpAreaIndexByUid(String uid) {
-        return domain.getArea().indexOf(lookUpAreaByUid(uid));
+    //  Группа методов для поиска узла (кроме атрибута)
+    private Domain lookUpDomainByUid(String uid) {
+        return projectDomainIndex.get(uid);
     }
 
-    //  Группа методов для поиска кнота/анкора в соответствующем списке кнотов/анкеров.
-    private Knot lookUpKnotByMnemonic(String mnemonic) {
-        return domain.getKnot().stream().filter(knot -> mnemonic.equals(knot.getMnemonic())).findAny().orElse(null);
+    private Anchor lookUpAnchorByUid(String uid) {
+        return domainIndex().getAnchors().get(uid);
     }
 
-    private Anchor lookUpAnchorByMnemonic(String mnemonic) {
-        return domain.getAnchor().stream().filter(anchor -> mnemonic.equals(anchor.getMnemonic())).findAny().orElse(null);
+    private CdAnchor lookUpCdAnchorByUid(String uid) {
+        return domainIndex().getCdAnchors().get(uid);
     }
 
-    private TxAnchor lookUpTxAnchorByMnemonic(String mnemonic) {
-        return domain.getTxAnchor().stream().filter(anchor -> mnemonic.equals(anchor.getMnemonic())).findAny().orElse(null);
+    private Tie lookUpTieByUid(String uid) {
+        return domainIndex().getTies().get(uid);
     }
 
-    private CdAnchor lookUpCdAnchorByMnemonic(String mnemonic) {
-        return domain.getCdAnchor().stream().filter(anchor -> mnemonic.equals(anchor.getMnemonic())).findAny().orElse(null);
+    private Knot lookUpKnotByUid(String uid) {
+        return domainIndex().getKnots().get(uid);
+    }
+
+    private TxAnchor lookUpTxAnchorByUid(String uid) {
+        return domainIndex().getTxAnchors().get(uid);
+    }
+
+    private Connexions lookUpConnexionByUid(String uid) {
+        return connexionIndex.get(uid);
+    }
+
+    private DbHost lookUpDbHostByUid(String uid) {
+        return dbHostIndex.get(uid);
+    }
+
+    private FsHost lookUpFsHostByUid(String uid) {
+        return fsHostIndex.get(uid);
+    }
+
+    private Area lookUpAreaByUid(String uid) {
+        return domainIndex().getAreas().get(uid);
+    }
+
+
+    private Domain lookUpDomainByShortName(String shortName) {
+        return projectShortNameIndex.get(shortName);
+    }
+
+    // Группа методов для поиска индекса узла (кроме атрибута) в соответствующем списке.
+    private Integer lookUpDomainIndexByUid(String uid) {
+        return projectDomainIndex.indexOf(uid);
+    }
+
+    private Integer lookUpAnchorIndexByUid(String uid) {
+        return domainIndex().getAnchors().indexOf(uid);
+    }
+
+    private Integer lookUpCdAnchorIndexByUid(String uid) {
+        return domainIndex().getCdAnchors().indexOf(uid);
+    }
+
+    private Integer lookUpTieIndexByUid(String uid) {
+        return domainIndex().getTies().indexOf(uid);
+    }
+
+    private Integer lookUpKnotIndexByUid(String uid) {
+        return domainIndex().getKnots().indexOf(uid);
+    }
+
+    private Integer lookUpTxAnchorIndexByUid(String uid) {
+        return domainIndex().getTxAnchors().indexOf(uid);
+    }
+
+    private Integer lookUpConnexionIndexByUid(String uid) {
+        return connexionIndex.indexOf(uid);
+    }
+
+    private Integer lookUpDbHostIndexByUid(String uid) {
+        return dbHostIndex.indexOf(uid);
+    }
+
+    private Integer lookUpFsHostIndexByUid(String uid) {
+        return fsHostIndex.indexOf(uid);
+    }
+
+
+    private Integer lookUpAreaIndexByUid(String uid) {
+        return domainIndex().getAreas().indexOf(uid);
+    }
+
+    /**
+     * Версия узла для оптимистичной проверки конфликтов: число изменений узла с этим uid методами SchemaUtils
+     * с момента загрузки. Передаётся в методы изменения с ожидаемыми версиями, например {@link #updateAnchor(String, Map)}.
+     *
+     * @param section раздел: анкеры, таи, кноты, tx-анкеры, кросс-доменные анкеры, area, коннексионы, fs- или db-хосты.
+     * @param uid     идентификатор узла.
+     * @return версия узла; 0 — узел не изменялся с момента загрузки либо отсутствует.
+     */
+    public long nodeVersion(JsonSection section, String uid) {
+        return read(() -> versions.get(section, uid));
     }
 
     //  Группа методов для поиска индекса узла анкора/кнота в соответствующем списке анкоров/кнотов.
     public Integer lookUpAnchorIndexByMnemonic(String mnemonic) {
-        return domain.getAnchor().indexOf(lookUpAnchorByMnemonic(mnemonic));
+        return read(() -> {
+            return domainIndex().getAnchorMnemonics().indexOf(mnemonic);
+        });
     }
 
     public Integer lookUpKnotIndexByMnemonic(String mnemonic) {
-        return domain.getKnot().indexOf(lookUpKnotByMnemonic(mnemonic));
+        return read(() -> {
+            return domainIndex().getKnotMnemonics().indexOf(mnemonic);
+        });
     }
 
     public Integer lookUpTxAnchorIndexByMnemonic(String mnemonic) {
-        return domain.getTxAnchor().indexOf(lookUpTxAnchorByMnemonic(mnemonic));
+        return read(() -> {
+            return domainIndex().getTxAnchorMnemonics().indexOf(mnemonic);
+        });
     }
 
     public Integer lookUpCdAnchorIndexByMnemonic(String mnemonic) {
-        return domain.getCdAnchor().indexOf(lookUpCdAnchorByMnemonic(mnemonic));
+        return read(() -> {
+            return domainIndex().getCdAnchorMnemonics().indexOf(mnemonic);
+        });
+    }
+
+    //  Группа методов для поиска индекса узла по мнемонике в домене проекта с заданным кратким наименованием.
+    //  Если домен не найден, возвращается -1.
+    public Integer lookUpAnchorIndexByMnemonic(String shortName, String mnemonic) {
+        return read(() -> {
+            DomainIndex index = projectDomainIndex(shortName);
+            return index == null ? -1 : index.getAnchorMnemonics().indexOf(mnemonic);
+        });
+    }
+
+    public Integer lookUpKnotIndexByMnemonic(String shortName, String mnemonic) {
+        return read(() -> {
+            DomainIndex index = projectDomainIndex(shortName);
+            return index == null ? -1 : index.getKnotMnemonics().indexOf(mnemonic);
+        });
+    }
+
+    public Integer lookUpTxAnchorIndexByMnemonic(String shortName, String mnemonic) {
+        return read(() -> {
+            DomainIndex index = projectDomainIndex(shortName);
+            return index == null ? -1 : index.getTxAnchorMnemonics().indexOf(mnemonic);
+        });
+    }
+
+    public Integer lookUpCdAnchorIndexByMnemonic(String shortName, String mnemonic) {
+        return read(() -> {
+            DomainIndex index = projectDomainIndex(shortName);
+            return index == null ? -1 : index.getCdAnchorMnemonics().indexOf(mnemonic);
+        });
+    }
+
+    //  Группа методов поиска узлов текущего домена, ссылающихся на кнот или анкер по мнемонике.
+    public List<Attribute> lookUpAttributesByKnot(String knotMnemonic) {
+        return read(() -> {
+            return domainIndex().getReferences().users(ReferenceIndex.Kind.KNOT_ATTRIBUTE, knotMnemonic);
+        });
+    }
+
+    public List<ExtendedColumn> lookUpExtendedColumnsByKnot(String knotMnemonic) {
+        return read(() -> {
+            return domainIndex().getReferences().users(ReferenceIndex.Kind.KNOT_EXTENDED_COLUMN, knotMnemonic);
+        });
+    }
+
+    public List<Tie> lookUpTiesByKnot(String knotMnemonic) {
+        return read(() -> {
+            return domainIndex().getReferences().users(ReferenceIndex.Kind.KNOT_TIE, knotMnemonic);
+        });
+    }
+
+    public List<Tie> lookUpTiesByAnchor(String anchorMnemonic) {
+        return read(() -> {
+            return domainIndex().getReferences().users(ReferenceIndex.Kind.ANCHOR_TIE, anchorMnemonic);
+        });
+    }
+
+    public List<TxAnchor> lookUpTxAnchorsByAnchor(String anchorMnemonic) {
+        return read(() -> {
+            return domainIndex().getReferences().users(ReferenceIndex.Kind.ANCHOR_TX_ANCHOR, anchorMnemonic);
+        });
+    }
+
+    public List<Area> lookUpAreasByAnchor(String anchorMnemonic) {
+        return read(() -> {
+            return domainIndex().getReferences().users(ReferenceIndex.Kind.ANCHOR_AREA, anchorMnemonic);
+        });
+    }
+
+    //  Поиск коннексионов проекта, ссылающихся на домен по краткому наименованию.
+    public List<Connexions> lookUpConnexionsByDomain(String shortName) {
+        return read(() -> {
+            return projectReferences.users(ReferenceIndex.Kind.DOMAIN_CONNEXION, shortName);
+        });
     }
 
     //  Группа методов для поиска группы или реквизита по идентификатору.
     private Integer lookUpGroupIndexById(String id) {
-        return domain.getGroup().indexOf(lookUpGroupById(id));
+        return groupIndex().getGroups().indexOf(id);
     }
 
     private Group lookUpGroupById(String id) {
-        return domain.getGroup().stream().filter(group -> StringUtils.equals(id, group.getId())).findAny().orElse(null);
+        return groupIndex().getGroups().get(id);
     }
 
     private Integer lookUpPropertyIndexById(String id) {
-        if (domain.getProperties().isEmpty()) {
-            return -1;
-        }
-        return domain.getProperties().get(0).getProperty().indexOf(lookUpPropertyById(id));
-    }
-
-    private Property lookUpPropertyById(String id) {
-        if (domain.getProperties().isEmpty()) {
-            return null;
-        }
-        return domain.getProperties().get(0).getProperty().stream().filter(property -> StringUtils.equals(id, property.getId())).findAny().orElse(null);
+        return groupIndex().getProperties().indexOf(id);
     }
 
     /**
@@ -815,45 +1553,60 @@ public class SchemaUtils {
      * @param domainJson json-представление списка доменов в формате строки
      */
     public Map<String, String> updateDomain(String domainJson) {
-        ObjectNode[] domainNodes = parseNodes(domainJson);
-        Map<String, String> oldShortName = new HashMap<>();
-        for (ObjectNode domainNode : domainNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            Domain dom = mapper.convertValue(domainNode, Domain.class);
-            int index = lookUpDomainIndexByUid(domainNode.get("uid").textValue());
-            Domain domToSet = lookUpDomainByUid(domainNode.get("uid").textValue());
-            if (index == -1) {
-                project.getDomain().add(dom);
-            } else {
-                oldShortName.put(project.getDomain().get(index).getShortName(), dom.getShortName());
-                project.getConnexions().forEach(
-                        connexions -> {
-                            for (AnchorRole anchorRole : connexions.getAnchorRole()) {
-                                if (StringUtils.equals(anchorRole.getDomain(), project.getDomain().get(index).getShortName())) {
-                                    anchorRole.setDomain(dom.getShortName());
-                                    break;
+        List<Domain> domains = parseNodes(domainJson, Domain.class);
+        return writeProject(() -> renamedDomains(domains), () -> {
+            jsonCache.nodesChanged(JsonSection.DOMAINS, JsonSection.CONNEXIONS);
+            journal(JournalOp.UPDATE_DOMAIN, domainJson);
+            Map<String, String> oldShortName = new HashMap<>();
+            for (Domain dom : domains) {
+                int index = lookUpDomainIndexByUid(dom.getUid());
+                Domain domToSet = lookUpDomainByUid(dom.getUid());
+                if (index == -1) {
+                    project.getDomain().add(dom);
+                    projectDomainIndex.added();
+                } else {
+                    String previousShortName = project.getDomain().get(index).getShortName();
+                    oldShortName.put(previousShortName, dom.getShortName());
+                    projectReferences.<Connexions>users(ReferenceIndex.Kind.DOMAIN_CONNEXION, previousShortName).forEach(
+                            connexions -> {
+                                for (AnchorRole anchorRole : connexions.getAnchorRole()) {
+                                    if (StringUtils.equals(anchorRole.getDomain(), previousShortName)) {
+                                        anchorRole.setDomain(dom.getShortName());
+                                        break;
+                                    }
                                 }
+                                projectReferences.replaced(connexions, connexions);
+                                touched(connexions);
+                                versions.changed(JsonSection.CONNEXIONS, connexions.getUid());
                             }
-                        }
-                );
-                domToSet.setShortName(dom.getShortName());
-                domToSet.setName(dom.getName());
-                domToSet.setAuthor(dom.getAuthor());
-                domToSet.setNote(dom.getNote());
-                domToSet.setLayout(dom.getLayout());
-                project.getDomain().set(index, domToSet);
+                    );
+                    domToSet.setShortName(dom.getShortName());
+                    domToSet.setName(dom.getName());
+                    domToSet.setAuthor(dom.getAuthor());
+                    domToSet.setNote(dom.getNote());
+                    domToSet.setLayout(dom.getLayout());
+                    touched(domToSet);
+                    project.getDomain().set(index, domToSet);
+                    projectDomainIndex.replaced(index, domToSet.getUid());
+                }
             }
-        }
-        return oldShortName;
+            return oldShortName;
+        });
     }
 
     public void updateDomain(Domain dom) {
-        int index = lookUpDomainIndexByUid(dom.getUid());
-        if (index == -1) {
-            project.getDomain().add(dom);
-        } else {
-            project.getDomain().set(index, dom);
-        }
+        writeProject(() -> renamedDomains(Collections.singletonList(dom)), () -> {
+            jsonCache.nodesChanged(JsonSection.DOMAINS);
+            int index = lookUpDomainIndexByUid(dom.getUid());
+            if (index == -1) {
+                project.getDomain().add(dom);
+                projectDomainIndex.added();
+            } else {
+                project.getDomain().set(index, dom);
+                projectDomainIndex.replaced(index, dom.getUid());
+            }
+            journalCheckpoint();
+        });
     }
 
     /**
@@ -862,15 +1615,37 @@ public class SchemaUtils {
      * @param knotJson json-представление списка кнотов в формате строки
      */
     public void updateKnot(String knotJson) {
-        ObjectNode[] knotNodes = parseNodes(knotJson);
-        for (ObjectNode knotNode : knotNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            Knot knot = mapper.convertValue(knotNode, Knot.class);
-            int index = lookUpKnotIndexByUid(knotNode.get("uid").textValue());
+        updateKnot(knotJson, null);
+    }
+
+    /**
+     * Метод обновления и обогащения списка кнотов с проверкой версий: изменение отклоняется, если хотя бы один из узлов
+     * изменён после чтения.
+     *
+     * @param knotJson         то же, что в {@link #updateKnot(String)}.
+     * @param expectedVersions версии узлов по uid на момент чтения, см. {@link #nodeVersion}. Для новых узлов — 0.
+     * @throws VersionConflictException версия узла не совпала с ожидаемой. Модель при этом не изменена.
+     */
+    public void updateKnot(String knotJson, Map<String, Long> expectedVersions) {
+        write(() -> {
+            versions.check(JsonSection.KNOTS, expectedVersions);
+            jsonCache.nodesChanged(JsonSection.KNOTS);
+            List<Knot> nodes = parseNodes(knotJson, Knot.class);
+            journal(JournalOp.UPDATE_KNOT, knotJson);
+            updateKnot(nodes);
+        });
+    }
+
+    private void updateKnot(List<Knot> knots) {
+        versions.changed(JsonSection.KNOTS, knots);
+        for (Knot knot : knots) {
+            int index = lookUpKnotIndexByUid(knot.getUid());
             if (index == -1) {
                 domain.getKnot().add(knot);
+                domainIndex().getKnots().added();
             } else {
                 domain.getKnot().set(index, knot);
+                domainIndex().getKnots().replaced(index, knot.getUid());
             }
         }
     }
@@ -881,11 +1656,19 @@ public class SchemaUtils {
      * @param knotJson json-представление списка новых кнотов в формате строки
      */
     public void addKnot(String knotJson) {
-        ObjectNode[] knotNodes = parseNodes(knotJson);
-        for (ObjectNode knotNode : knotNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            Knot knot = mapper.convertValue(knotNode, Knot.class);
+        write(() -> {
+            jsonCache.nodesChanged(JsonSection.KNOTS);
+            List<Knot> nodes = parseNodes(knotJson, Knot.class);
+            journal(JournalOp.ADD_KNOT, knotJson);
+            addKnot(nodes);
+        });
+    }
+
+    private void addKnot(List<Knot> knots) {
+        versions.changed(JsonSection.KNOTS, knots);
+        for (Knot knot : knots) {
             domain.getKnot().add(knot);
+            domainIndex().getKnots().added();
         }
     }
 
@@ -895,9 +1678,42 @@ public class SchemaUtils {
      * @param knotUid строка, состоящая из идентификаторов.
      */
     public void deleteKnot(String knotUid) {
-        for (String uid : knotUid.split(",")) {
-            domain.getKnot().remove(lookUpKnotByUid(uid));
-        }
+        write(() -> {
+            deleteNodes(JsonSection.KNOTS, Arrays.asList(knotUid.split(",")), false);
+        });
+    }
+
+    /**
+     * Метод частичного обновления кнотов по uid.
+     *
+     * @param patchJson json-массив merge-patch (RFC 7386), каждый элемент содержит uid узла
+     *                  и только изменяемые поля.
+     */
+    public void patchKnot(String patchJson) {
+        patchKnot(patchJson, null);
+    }
+
+    /**
+     * Метод частичного обновления кнотов с проверкой версий: изменение отклоняется, если хотя бы один из узлов
+     * изменён после чтения.
+     *
+     * @param patchJson        то же, что в {@link #patchKnot(String)}.
+     * @param expectedVersions версии узлов по uid на момент чтения, см. {@link #nodeVersion}. Для новых узлов — 0.
+     * @throws VersionConflictException версия узла не совпала с ожидаемой. Модель при этом не изменена.
+     */
+    public void patchKnot(String patchJson, Map<String, Long> expectedVersions) {
+        write(() -> {
+            versions.check(JsonSection.KNOTS, expectedVersions);
+            jsonCache.nodesChanged(JsonSection.KNOTS);
+            List<ObjectNode> patches = parseNodes(patchJson, ObjectNode.class);
+            journal(JournalOp.PATCH_KNOT, patchJson);
+            patchKnot(patches, null);
+        });
+    }
+
+    private void patchKnot(List<ObjectNode> patches, List<Runnable> undo) {
+        patchNodes(patches, undo, JsonSection.KNOTS, domain.getKnot(), domainIndex().getKnots(), knot -> {
+        });
     }
 
     /**
@@ -906,15 +1722,39 @@ public class SchemaUtils {
      * @param anchorJson json-представление списка анкеров в формате строки
      */
     public void updateAnchor(String anchorJson) {
-        ObjectNode[] anchorNodes = parseNodes(anchorJson);
-        for (ObjectNode anchorNode : anchorNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            Anchor anchor = mapper.convertValue(anchorNode, Anchor.class);
-            int index = lookUpAnchorIndexByUid(anchorNode.get("uid").textValue());
+        updateAnchor(anchorJson, null);
+    }
+
+    /**
+     * Метод обновления и обогащения списка анкеров с проверкой версий: изменение отклоняется, если хотя бы один из узлов
+     * изменён после чтения.
+     *
+     * @param anchorJson       то же, что в {@link #updateAnchor(String)}.
+     * @param expectedVersions версии узлов по uid на момент чтения, см. {@link #nodeVersion}. Для новых узлов — 0.
+     * @throws VersionConflictException версия узла не совпала с ожидаемой. Модель при этом не изменена.
+     */
+    public void updateAnchor(String anchorJson, Map<String, Long> expectedVersions) {
+        write(() -> {
+            versions.check(JsonSection.ANCHORS, expectedVersions);
+            jsonCache.nodesChanged(JsonSection.ANCHORS);
+            List<Anchor> nodes = parseNodes(anchorJson, Anchor.class);
+            journal(JournalOp.UPDATE_ANCHOR, anchorJson);
+            updateAnchor(nodes);
+        });
+    }
+
+    private void updateAnchor(List<Anchor> anchors) {
+        versions.changed(JsonSection.ANCHORS, anchors);
+        for (Anchor anchor : anchors) {
+            int index = lookUpAnchorIndexByUid(anchor.getUid());
             if (index == -1) {
                 domain.getAnchor().add(anchor);
+                domainIndex().getAnchors().added();
+                domainIndex().getReferences().added(anchor);
             } else {
-                domain.getAnchor().set(index, anchor);
+                Anchor previous = domain.getAnchor().set(index, anchor);
+                domainIndex().getAnchors().replaced(index, anchor.getUid());
+                domainIndex().getReferences().replaced(previous, anchor);
             }
         }
     }
@@ -925,11 +1765,20 @@ public class SchemaUtils {
      * @param anchorJson json-представление списка новых анкеров в формате строки
      */
     public void addAnchor(String anchorJson) {
-        ObjectNode[] anchorNodes = parseNodes(anchorJson);
-        for (ObjectNode anchorNode : anchorNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            Anchor anchor = mapper.convertValue(anchorNode, Anchor.class);
+        write(() -> {
+            jsonCache.nodesChanged(JsonSection.ANCHORS);
+            List<Anchor> nodes = parseNodes(anchorJson, Anchor.class);
+            journal(JournalOp.ADD_ANCHOR, anchorJson);
+            addAnchor(nodes);
+        });
+    }
+
+    private void addAnchor(List<Anchor> anchors) {
+        versions.changed(JsonSection.ANCHORS, anchors);
+        for (Anchor anchor : anchors) {
             domain.getAnchor().add(anchor);
+            domainIndex().getAnchors().added();
+            domainIndex().getReferences().added(anchor);
         }
     }
 
@@ -939,9 +1788,41 @@ public class SchemaUtils {
      * @param anchorUid строка, состоящая из идентификаторов.
      */
     public void deleteAnchor(String anchorUid) {
-        for (String uid : anchorUid.split(",")) {
-            domain.getAnchor().remove(lookUpAnchorByUid(uid));
-        }
+        write(() -> {
+            deleteNodes(JsonSection.ANCHORS, Arrays.asList(anchorUid.split(",")), false);
+        });
+    }
+
+    /**
+     * Метод частичного обновления анкеров по uid.
+     *
+     * @param patchJson json-массив merge-patch (RFC 7386), каждый элемент содержит uid узла
+     *                  и только изменяемые поля.
+     */
+    public void patchAnchor(String patchJson) {
+        patchAnchor(patchJson, null);
+    }
+
+    /**
+     * Метод частичного обновления анкеров с проверкой версий: изменение отклоняется, если хотя бы один из узлов
+     * изменён после чтения.
+     *
+     * @param patchJson        то же, что в {@link #patchAnchor(String)}.
+     * @param expectedVersions версии узлов по uid на момент чтения, см. {@link #nodeVersion}. Для новых узлов — 0.
+     * @throws VersionConflictException версия узла не совпала с ожидаемой. Модель при этом не изменена.
+     */
+    public void patchAnchor(String patchJson, Map<String, Long> expectedVersions) {
+        write(() -> {
+            versions.check(JsonSection.ANCHORS, expectedVersions);
+            jsonCache.nodesChanged(JsonSection.ANCHORS);
+            List<ObjectNode> patches = parseNodes(patchJson, ObjectNode.class);
+            journal(JournalOp.PATCH_ANCHOR, patchJson);
+            patchAnchor(patches, null);
+        });
+    }
+
+    private void patchAnchor(List<ObjectNode> patches, List<Runnable> undo) {
+        patchNodes(patches, undo, JsonSection.ANCHORS, domain.getAnchor(), domainIndex().getAnchors(), anchor -> domainIndex().getReferences().replaced(anchor, anchor));
     }
 
     /**
@@ -950,15 +1831,39 @@ public class SchemaUtils {
      * @param txAnchorJson строковое json-представление tx-анкеров.
      */
     public void updateTxAnchor(String txAnchorJson) {
-        ObjectNode[] txAnchorNodes = parseNodes(txAnchorJson);
-        for (ObjectNode txAnchorNode : txAnchorNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            TxAnchor txAnchor = mapper.convertValue(txAnchorNode, TxAnchor.class);
-            int index = lookUpTxAnchorIndexByUid(txAnchorNode.get("uid").textValue());
+        updateTxAnchor(txAnchorJson, null);
+    }
+
+    /**
+     * Метод обновления и обогащения списка tx-анкеров с проверкой версий: изменение отклоняется, если хотя бы один из узлов
+     * изменён после чтения.
+     *
+     * @param txAnchorJson     то же, что в {@link #updateTxAnchor(String)}.
+     * @param expectedVersions версии узлов по uid на момент чтения, см. {@link #nodeVersion}. Для новых узлов — 0.
+     * @throws VersionConflictException версия узла не совпала с ожидаемой. Модель при этом не изменена.
+     */
+    public void updateTxAnchor(String txAnchorJson, Map<String, Long> expectedVersions) {
+        write(() -> {
+            versions.check(JsonSection.TX_ANCHORS, expectedVersions);
+            jsonCache.nodesChanged(JsonSection.TX_ANCHORS);
+            List<TxAnchor> nodes = parseNodes(txAnchorJson, TxAnchor.class);
+            journal(JournalOp.UPDATE_TX_ANCHOR, txAnchorJson);
+            updateTxAnchor(nodes);
+        });
+    }
+
+    private void updateTxAnchor(List<TxAnchor> txAnchors) {
+        versions.changed(JsonSection.TX_ANCHORS, txAnchors);
+        for (TxAnchor txAnchor : txAnchors) {
+            int index = lookUpTxAnchorIndexByUid(txAnchor.getUid());
             if (index == -1) {
                 domain.getTxAnchor().add(txAnchor);
+                domainIndex().getTxAnchors().added();
+                domainIndex().getReferences().added(txAnchor);
             } else {
-                domain.getTxAnchor().set(index, txAnchor);
+                TxAnchor previous = domain.getTxAnchor().set(index, txAnchor);
+                domainIndex().getTxAnchors().replaced(index, txAnchor.getUid());
+                domainIndex().getReferences().replaced(previous, txAnchor);
             }
         }
     }
@@ -969,11 +1874,20 @@ public class SchemaUtils {
      * @param anchorJson строковое json-представление tx-анкеров.
      */
     public void addTxAnchor(String anchorJson) {
-        ObjectNode[] txAnchorNodes = parseNodes(anchorJson);
-        for (ObjectNode txAnchorNode : txAnchorNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            TxAnchor txAnchor = mapper.convertValue(txAnchorNode, TxAnchor.class);
+        write(() -> {
+            jsonCache.nodesChanged(JsonSection.TX_ANCHORS);
+            List<TxAnchor> nodes = parseNodes(anchorJson, TxAnchor.class);
+            journal(JournalOp.ADD_TX_ANCHOR, anchorJson);
+            addTxAnchor(nodes);
+        });
+    }
+
+    private void addTxAnchor(List<TxAnchor> txAnchors) {
+        versions.changed(JsonSection.TX_ANCHORS, txAnchors);
+        for (TxAnchor txAnchor : txAnchors) {
             domain.getTxAnchor().add(txAnchor);
+            domainIndex().getTxAnchors().added();
+            domainIndex().getReferences().added(txAnchor);
         }
     }
 
@@ -983,9 +1897,41 @@ public class SchemaUtils {
      * @param txAnchorUid строка, состоящая из идентификаторов.
      */
     public void deleteTxAnchor(String txAnchorUid) {
-        for (String uid : txAnchorUid.split(",")) {
-            domain.getTxAnchor().remove(lookUpTxAnchorByUid(uid));
-        }
+        write(() -> {
+            deleteNodes(JsonSection.TX_ANCHORS, Arrays.asList(txAnchorUid.split(",")), false);
+        });
+    }
+
+    /**
+     * Метод частичного обновления tx-анкеров по uid.
+     *
+     * @param patchJson json-массив merge-patch (RFC 7386), каждый элемент содержит uid узла
+     *                  и только изменяемые поля.
+     */
+    public void patchTxAnchor(String patchJson) {
+        patchTxAnchor(patchJson, null);
+    }
+
+    /**
+     * Метод частичного обновления tx-анкеров с проверкой версий: изменение отклоняется, если хотя бы один из узлов
+     * изменён после чтения.
+     *
+     * @param patchJson        то же, что в {@link #patchTxAnchor(String)}.
+     * @param expectedVersions версии узлов по uid на момент чтения, см. {@link #nodeVersion}. Для новых узлов — 0.
+     * @throws VersionConflictException версия узла не совпала с ожидаемой. Модель при этом не изменена.
+     */
+    public void patchTxAnchor(String patchJson, Map<String, Long> expectedVersions) {
+        write(() -> {
+            versions.check(JsonSection.TX_ANCHORS, expectedVersions);
+            jsonCache.nodesChanged(JsonSection.TX_ANCHORS);
+            List<ObjectNode> patches = parseNodes(patchJson, ObjectNode.class);
+            journal(JournalOp.PATCH_TX_ANCHOR, patchJson);
+            patchTxAnchor(patches, null);
+        });
+    }
+
+    private void patchTxAnchor(List<ObjectNode> patches, List<Runnable> undo) {
+        patchNodes(patches, undo, JsonSection.TX_ANCHORS, domain.getTxAnchor(), domainIndex().getTxAnchors(), txAnchor -> domainIndex().getReferences().replaced(txAnchor, txAnchor));
     }
 
     /**
@@ -994,15 +1940,39 @@ public class SchemaUtils {
      * @param tieJson строкое json-представление списка таев.
      */
     public void updateTie(String tieJson) {
-        ObjectNode[] tieNodes = parseNodes(tieJson);
-        for (ObjectNode tieNode : tieNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            Tie tie = mapper.convertValue(tieNode, Tie.class);
-            int index = lookUpTieIndexByUid(tieNode.get("uid").textValue());
+        updateTie(tieJson, null);
+    }
+
+    /**
+     * Метод обновления и обогащения списка таев с проверкой версий: изменение отклоняется, если хотя бы один из узлов
+     * изменён после чтения.
+     *
+     * @param tieJson          то же, что в {@link #updateTie(String)}.
+     * @param expectedVersions версии узлов по uid на момент чтения, см. {@link #nodeVersion}. Для новых узлов — 0.
+     * @throws VersionConflictException версия узла не совпала с ожидаемой. Модель при этом не изменена.
+     */
+    public void updateTie(String tieJson, Map<String, Long> expectedVersions) {
+        write(() -> {
+            versions.check(JsonSection.TIES, expectedVersions);
+            jsonCache.nodesChanged(JsonSection.TIES);
+            List<Tie> nodes = parseNodes(tieJson, Tie.class);
+            journal(JournalOp.UPDATE_TIE, tieJson);
+            updateTie(nodes);
+        });
+    }
+
+    private void updateTie(List<Tie> ties) {
+        versions.changed(JsonSection.TIES, ties);
+        for (Tie tie : ties) {
+            int index = lookUpTieIndexByUid(tie.getUid());
             if (index == -1) {
                 domain.getTie().add(tie);
+                domainIndex().getTies().added();
+                domainIndex().getReferences().added(tie);
             } else {
-                domain.getTie().set(index, tie);
+                Tie previous = domain.getTie().set(index, tie);
+                domainIndex().getTies().replaced(index, tie.getUid());
+                domainIndex().getReferences().replaced(previous, tie);
             }
         }
     }
@@ -1013,11 +1983,20 @@ public class SchemaUtils {
      * @param anchorJson трокое json-представление списка таев.
      */
     public void addTie(String anchorJson) {
-        ObjectNode[] tieNodes = parseNodes(anchorJson);
-        for (ObjectNode tieNode : tieNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            Tie tie = mapper.convertValue(tieNode, Tie.class);
+        write(() -> {
+            jsonCache.nodesChanged(JsonSection.TIES);
+            List<Tie> nodes = parseNodes(anchorJson, Tie.class);
+            journal(JournalOp.ADD_TIE, anchorJson);
+            addTie(nodes);
+        });
+    }
+
+    private void addTie(List<Tie> ties) {
+        versions.changed(JsonSection.TIES, ties);
+        for (Tie tie : ties) {
             domain.getTie().add(tie);
+            domainIndex().getTies().added();
+            domainIndex().getReferences().added(tie);
         }
     }
 
@@ -1027,9 +2006,41 @@ public class SchemaUtils {
      * @param tieUid строка, состоящая из идентификаторов.
      */
     public void deleteTie(String tieUid) {
-        for (String uid : tieUid.split(",")) {
-            domain.getTie().remove(lookUpTieByUid(uid));
-        }
+        write(() -> {
+            deleteNodes(JsonSection.TIES, Arrays.asList(tieUid.split(",")), false);
+        });
+    }
+
+    /**
+     * Метод частичного обновления таев по uid.
+     *
+     * @param patchJson json-массив merge-patch (RFC 7386), каждый элемент содержит uid узла
+     *                  и только изменяемые поля.
+     */
+    public void patchTie(String patchJson) {
+        patchTie(patchJson, null);
+    }
+
+    /**
+     * Метод частичного обновления таев с проверкой версий: изменение отклоняется, если хотя бы один из узлов
+     * изменён после чтения.
+     *
+     * @param patchJson        то же, что в {@link #patchTie(String)}.
+     * @param expectedVersions версии узлов по uid на момент чтения, см. {@link #nodeVersion}. Для новых узлов — 0.
+     * @throws VersionConflictException версия узла не совпала с ожидаемой. Модель при этом не изменена.
+     */
+    public void patchTie(String patchJson, Map<String, Long> expectedVersions) {
+        write(() -> {
+            versions.check(JsonSection.TIES, expectedVersions);
+            jsonCache.nodesChanged(JsonSection.TIES);
+            List<ObjectNode> patches = parseNodes(patchJson, ObjectNode.class);
+            journal(JournalOp.PATCH_TIE, patchJson);
+            patchTie(patches, null);
+        });
+    }
+
+    private void patchTie(List<ObjectNode> patches, List<Runnable> undo) {
+        patchNodes(patches, undo, JsonSection.TIES, domain.getTie(), domainIndex().getTies(), tie -> domainIndex().getReferences().replaced(tie, tie));
     }
 
     /**
@@ -1038,15 +2049,39 @@ public class SchemaUtils {
      * @param cdAnchorJson строковое json-представление cd-анкеров.
      */
     public void updateCdAnchor(String cdAnchorJson) {
-        ObjectNode[] cdAnchorNodes = parseNodes(cdAnchorJson);
-        for (ObjectNode cdAnchorNode : cdAnchorNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            CdAnchor cdAnchor = mapper.convertValue(cdAnchorNode, CdAnchor.class);
-            int index = lookUpCdAnchorIndexByUid(cdAnchorNode.get("uid").textValue());
+        updateCdAnchor(cdAnchorJson, null);
+    }
+
+    /**
+     * Метод обновления и обогащения списка кросс-доменных анкеров с проверкой версий: изменение отклоняется, если хотя бы один из узлов
+     * изменён после чтения.
+     *
+     * @param cdAnchorJson     то же, что в {@link #updateCdAnchor(String)}.
+     * @param expectedVersions версии узлов по uid на момент чтения, см. {@link #nodeVersion}. Для новых узлов — 0.
+     * @throws VersionConflictException версия узла не совпала с ожидаемой. Модель при этом не изменена.
+     */
+    public void updateCdAnchor(String cdAnchorJson, Map<String, Long> expectedVersions) {
+        write(() -> {
+            versions.check(JsonSection.CD_ANCHORS, expectedVersions);
+            jsonCache.nodesChanged(JsonSection.CD_ANCHORS);
+            List<CdAnchor> nodes = parseNodes(cdAnchorJson, CdAnchor.class);
+            journal(JournalOp.UPDATE_CD_ANCHOR, cdAnchorJson);
+            updateCdAnchor(nodes);
+        });
+    }
+
+    private void updateCdAnchor(List<CdAnchor> cdAnchors) {
+        versions.changed(JsonSection.CD_ANCHORS, cdAnchors);
+        for (CdAnchor cdAnchor : cdAnchors) {
+            int index = lookUpCdAnchorIndexByUid(cdAnchor.getUid());
             if (index == -1) {
                 domain.getCdAnchor().add(cdAnchor);
+                domainIndex().getCdAnchors().added();
+                domainIndex().getReferences().added(cdAnchor);
             } else {
-                domain.getCdAnchor().set(index, cdAnchor);
+                CdAnchor previous = domain.getCdAnchor().set(index, cdAnchor);
+                domainIndex().getCdAnchors().replaced(index, cdAnchor.getUid());
+                domainIndex().getReferences().replaced(previous, cdAnchor);
             }
         }
     }
@@ -1057,11 +2092,20 @@ public class SchemaUtils {
      * @param anchorJson строковое json-представление cd-анкеров.
      */
     public void addCdAnchor(String anchorJson) {
-        ObjectNode[] cdAnchorNodes = parseNodes(anchorJson);
-        for (ObjectNode cdAnchorNode : cdAnchorNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            CdAnchor cdAnchor = mapper.convertValue(cdAnchorNode, CdAnchor.class);
+        write(() -> {
+            jsonCache.nodesChanged(JsonSection.CD_ANCHORS);
+            List<CdAnchor> nodes = parseNodes(anchorJson, CdAnchor.class);
+            journal(JournalOp.ADD_CD_ANCHOR, anchorJson);
+            addCdAnchor(nodes);
+        });
+    }
+
+    private void addCdAnchor(List<CdAnchor> cdAnchors) {
+        versions.changed(JsonSection.CD_ANCHORS, cdAnchors);
+        for (CdAnchor cdAnchor : cdAnchors) {
             domain.getCdAnchor().add(cdAnchor);
+            domainIndex().getCdAnchors().added();
+            domainIndex().getReferences().added(cdAnchor);
         }
     }
 
@@ -1071,28 +2115,324 @@ public class SchemaUtils {
      * @param cdAnchorUid строка, состоящая из идентификаторов.
      */
     public void deleteCdAnchor(String cdAnchorUid) {
-        for (String uid : cdAnchorUid.split(",")) {
-            domain.getCdAnchor().remove(lookUpCdAnchorByUid(uid));
+        write(() -> {
+            deleteNodes(JsonSection.CD_ANCHORS, Arrays.asList(cdAnchorUid.split(",")), false);
+        });
+    }
+
+    /**
+     * Метод частичного обновления кросс-доменных анкеров по uid.
+     *
+     * @param patchJson json-массив merge-patch (RFC 7386), каждый элемент содержит uid узла
+     *                  и только изменяемые поля.
+     */
+    public void patchCdAnchor(String patchJson) {
+        patchCdAnchor(patchJson, null);
+    }
+
+    /**
+     * Метод частичного обновления кросс-доменных анкеров с проверкой версий: изменение отклоняется, если хотя бы один из узлов
+     * изменён после чтения.
+     *
+     * @param patchJson        то же, что в {@link #patchCdAnchor(String)}.
+     * @param expectedVersions версии узлов по uid на момент чтения, см. {@link #nodeVersion}. Для новых узлов — 0.
+     * @throws VersionConflictException версия узла не совпала с ожидаемой. Модель при этом не изменена.
+     */
+    public void patchCdAnchor(String patchJson, Map<String, Long> expectedVersions) {
+        write(() -> {
+            versions.check(JsonSection.CD_ANCHORS, expectedVersions);
+            jsonCache.nodesChanged(JsonSection.CD_ANCHORS);
+            List<ObjectNode> patches = parseNodes(patchJson, ObjectNode.class);
+            journal(JournalOp.PATCH_CD_ANCHOR, patchJson);
+            patchCdAnchor(patches, null);
+        });
+    }
+
+    private void patchCdAnchor(List<ObjectNode> patches, List<Runnable> undo) {
+        patchNodes(patches, undo, JsonSection.CD_ANCHORS, domain.getCdAnchor(), domainIndex().getCdAnchors(), cdAnchor -> domainIndex().getReferences().replaced(cdAnchor, cdAnchor));
+    }
+
+    /**
+     * Метод пакетного удаления узлов по uid. Каждый список уплотняется за один проход,
+     * поэтому стоимость удаления не зависит от количества удаляемых узлов.
+     * <p>
+     * Каскадно удаляются узлы текущего домена, ссылающиеся на удалённые: для анкеров — таи и tx-анкеры,
+     * для кросс-доменных анкеров — таи, для кнотов — таи. Ссылки area и атрибутов не удаляются.
+     *
+     * @param section раздел: анкеры, таи, кноты, tx-анкеры, кросс-доменные анкеры, fs- или db-хосты.
+     * @param uids    идентификаторы удаляемых узлов. Отсутствующие uid пропускаются.
+     * @param cascade удалять ли ссылающиеся узлы.
+     * @return удалённые узлы по разделам.
+     */
+    public RemovedNodes deleteNodes(JsonSection section, Collection<String> uids, boolean cascade) {
+        SchemaLock.Action<RemovedNodes, RuntimeException> delete = () -> {
+            if (!BATCH_SECTIONS.contains(section)) {
+                throw new IllegalArgumentException("Раздел " + section.getField() + " не поддерживает удаление по uid.");
+            }
+            journal(JournalOp.DELETE_NODES, JournalOp.deleteNodesArgs(section, uids, cascade));
+            return removeNodes(section, uids, cascade);
+        };
+        // Удаление хостов деплоя — изменение уровня проекта.
+        return section.isDomainSection() ? write(delete) : writeProject(Collections::emptyList, delete);
+    }
+
+    private RemovedNodes removeNodes(JsonSection section, Collection<String> uids, boolean cascade) {
+        RemovedNodes removed = new RemovedNodes();
+        switch (section) {
+            case ANCHORS: {
+                jsonCache.nodesChanged(JsonSection.ANCHORS);
+                List<Anchor> anchors = removeByUids(domain.getAnchor(), domainIndex().getAnchors(), uids, domainIndex().getReferences()::removed);
+                removed.add(JsonSection.ANCHORS, anchors);
+                if (cascade) {
+                    Set<String> mnemonics = anchors.stream().map(Anchor::getMnemonic).collect(Collectors.toSet());
+                    removeUsers(ReferenceIndex.Kind.ANCHOR_TIE, mnemonics, JsonSection.TIES, domain.getTie(), domainIndex().getTies(), removed);
+                    removeUsers(ReferenceIndex.Kind.ANCHOR_TX_ANCHOR, mnemonics, JsonSection.TX_ANCHORS, domain.getTxAnchor(), domainIndex().getTxAnchors(), removed);
+                }
+                break;
+            }
+            case CD_ANCHORS: {
+                jsonCache.nodesChanged(JsonSection.CD_ANCHORS);
+                List<CdAnchor> cdAnchors = removeByUids(domain.getCdAnchor(), domainIndex().getCdAnchors(), uids, domainIndex().getReferences()::removed);
+                removed.add(JsonSection.CD_ANCHORS, cdAnchors);
+                if (cascade) {
+                    Set<String> mnemonics = cdAnchors.stream().map(CdAnchor::getMnemonic).collect(Collectors.toSet());
+                    removeUsers(ReferenceIndex.Kind.ANCHOR_TIE, mnemonics, JsonSection.TIES, domain.getTie(), domainIndex().getTies(), removed);
+                }
+                break;
+            }
+            case KNOTS: {
+                jsonCache.nodesChanged(JsonSection.KNOTS);
+                List<Knot> knots = removeByUids(domain.getKnot(), domainIndex().getKnots(), uids, knot -> {
+                });
+                removed.add(JsonSection.KNOTS, knots);
+                if (cascade) {
+                    Set<String> mnemonics = knots.stream().map(Knot::getMnemonic).collect(Collectors.toSet());
+                    removeUsers(ReferenceIndex.Kind.KNOT_TIE, mnemonics, JsonSection.TIES, domain.getTie(), domainIndex().getTies(), removed);
+                }
+                break;
+            }
+            case TIES:
+                jsonCache.nodesChanged(JsonSection.TIES);
+                removed.add(JsonSection.TIES, removeByUids(domain.getTie(), domainIndex().getTies(), uids, domainIndex().getReferences()::removed));
+                break;
+            case TX_ANCHORS:
+                jsonCache.nodesChanged(JsonSection.TX_ANCHORS);
+                removed.add(JsonSection.TX_ANCHORS, removeByUids(domain.getTxAnchor(), domainIndex().getTxAnchors(), uids, domainIndex().getReferences()::removed));
+                break;
+            case FS_HOSTS:
+                jsonCache.nodesChanged(JsonSection.FS_HOSTS);
+                removed.add(JsonSection.FS_HOSTS, removeByUids(deploy.getFsHost(), fsHostIndex, uids, fsHost -> {
+                }));
+                deployIndex.invalidateHosts();
+                break;
+            case DB_HOSTS:
+                jsonCache.nodesChanged(JsonSection.DB_HOSTS);
+                removed.add(JsonSection.DB_HOSTS, removeByUids(deploy.getDbHost(), dbHostIndex, uids, dbHost -> {
+                }));
+                deployIndex.invalidateHosts();
+                break;
+            default:
+                throw new IllegalArgumentException("Раздел " + section.getField() + " не поддерживает удаление по uid.");
+        }
+        versions.changed(removed);
+        return removed;
+    }
+
+    /**
+     * Каскадное удаление узлов текущего домена, ссылающихся на удалённые узлы.
+     *
+     * @param kind      вид ссылки.
+     * @param keys      мнемоники удалённых узлов.
+     * @param section   раздел ссылающихся узлов.
+     * @param nodes     список ссылающихся узлов.
+     * @param index     индекс списка по uid.
+     * @param removed   накопитель удалённых узлов.
+     */
+    private <T extends ObjectInfo> void removeUsers(ReferenceIndex.Kind kind, Set<String> keys, JsonSection section,
+                                                    List<T> nodes, NodeIndex<T> index, RemovedNodes removed) {
+        Set<String> uids = new HashSet<>();
+        for (String key : keys) {
+            domainIndex().getReferences().<T>users(kind, key).forEach(user -> uids.add(user.getUid()));
+        }
+        if (!uids.isEmpty()) {
+            jsonCache.nodesChanged(section);
+            removed.add(section, removeByUids(nodes, index, uids, domainIndex().getReferences()::removed));
+        }
+    }
+
+    /**
+     * Метод применения пакета команд как одной операции.
+     * <p>
+     * До изменения модели разбираются узлы и патчи всех команд, поэтому ошибка в любой команде
+     * не изменяет модель. Если команда не применилась, затронутые пакетом списки восстанавливаются
+     * в состоянии до пакета, а узлы, изменённые патчами, возвращаются к прежним значениям на месте
+     * обратными патчами в обратном порядке.
+     *
+     * @param commands команды в порядке применения.
+     * @return узлы, удалённые командами DELETE.
+     * @throws IllegalArgumentException если команда не разобрана или не применена. Модель при этом не изменена.
+     */
+    public RemovedNodes apply(List<SchemaCommand> commands) {
+        SchemaLock.Action<RemovedNodes, RuntimeException> batch = () -> {
+            List<List<?>> parsed = new ArrayList<>(commands.size());
+            Set<JsonSection> sections = EnumSet.noneOf(JsonSection.class);
+            for (int i = 0; i < commands.size(); i++) {
+                SchemaCommand command = commands.get(i);
+                JsonSection section = command.getSection();
+                SchemaCommand.Operation operation = command.getOperation();
+                if (!BATCH_SECTIONS.contains(section)
+                        || operation == SchemaCommand.Operation.PATCH && !section.isDomainSection()) {
+                    throw new IllegalArgumentException("Команда [" + i + "]: операция " + operation
+                            + " не поддерживается для раздела " + section.getField() + ".");
+                }
+                try {
+                    if (operation == SchemaCommand.Operation.DELETE) {
+                        parsed.add(null);
+                        if (command.isCascade()) {
+                            sections.add(JsonSection.TIES);
+                            sections.add(JsonSection.TX_ANCHORS);
+                        }
+                    } else if (operation == SchemaCommand.Operation.PATCH) {
+                        List<ObjectNode> patches = parseNodes(command.getJson(), ObjectNode.class);
+                        for (ObjectNode patch : patches) {
+                            if (!patch.path("uid").isTextual()) {
+                                throw new IllegalArgumentException("Патч без uid узла.");
+                            }
+                        }
+                        parsed.add(patches);
+                    } else {
+                        parsed.add(parseNodes(command.getJson(), section.getElementType()));
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Команда [" + i + "]: " + e.getMessage(), e);
+                }
+                sections.add(section);
+            }
+            journal(JournalOp.APPLY, JournalOp.commandArgs(commands));
+
+            Map<JsonSection, List<Object>> lists = new EnumMap<>(JsonSection.class);
+            Map<JsonSection, Map<String, Long>> savedVersions = versions.save(sections);
+            for (JsonSection section : sections) {
+                lists.put(section, new ArrayList<>(section.nodes(this)));
+            }
+            List<Runnable> undo = new ArrayList<>();
+            RemovedNodes removed = new RemovedNodes();
+            for (int i = 0; i < commands.size(); i++) {
+                try {
+                    applyCommand(commands.get(i), parsed.get(i), removed, undo);
+                } catch (RuntimeException e) {
+                    rollback(lists, undo);
+                    versions.restore(savedVersions);
+                    throw new IllegalArgumentException("Команда [" + i + "] не применена, изменения пакета отменены: "
+                            + e.getMessage(), e);
+                }
+            }
+            return removed;
+        };
+        // Пакет с командами хостов деплоя — изменение уровня проекта.
+        return commands.stream().allMatch(command -> command.getSection() == null || command.getSection().isDomainSection())
+                ? write(batch)
+                : writeProject(Collections::emptyList, batch);
+    }
+
+    private void applyCommand(SchemaCommand command, List<?> nodes, RemovedNodes removed, List<Runnable> undo) {
+        SchemaCommand.Operation operation = command.getOperation();
+        JsonSection section = command.getSection();
+        if (operation == SchemaCommand.Operation.DELETE) {
+            removed.addAll(removeNodes(section, command.getUids(), command.isCascade()));
+            return;
+        }
+        jsonCache.nodesChanged(section);
+        switch (section) {
+            case ANCHORS:
+                SchemaUtils.<Anchor>applyNodes(operation, nodes, this::updateAnchor, this::addAnchor, patches -> patchAnchor(patches, undo));
+                break;
+            case TIES:
+                SchemaUtils.<Tie>applyNodes(operation, nodes, this::updateTie, this::addTie, patches -> patchTie(patches, undo));
+                break;
+            case KNOTS:
+                SchemaUtils.<Knot>applyNodes(operation, nodes, this::updateKnot, this::addKnot, patches -> patchKnot(patches, undo));
+                break;
+            case TX_ANCHORS:
+                SchemaUtils.<TxAnchor>applyNodes(operation, nodes, this::updateTxAnchor, this::addTxAnchor, patches -> patchTxAnchor(patches, undo));
+                break;
+            case CD_ANCHORS:
+                SchemaUtils.<CdAnchor>applyNodes(operation, nodes, this::updateCdAnchor, this::addCdAnchor, patches -> patchCdAnchor(patches, undo));
+                break;
+            case FS_HOSTS:
+                SchemaUtils.<FsHost>applyNodes(operation, nodes, this::updateFsHost, this::addFsHost, null);
+                break;
+            case DB_HOSTS:
+                SchemaUtils.<DbHost>applyNodes(operation, nodes, this::updateDbHost, this::addDbHost, null);
+                break;
+            default:
+                throw new IllegalArgumentException("Раздел " + section.getField() + " не поддерживается пакетом команд.");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void applyNodes(SchemaCommand.Operation operation, List<?> nodes, Consumer<List<T>> update,
+                                       Consumer<List<T>> add, Consumer<List<ObjectNode>> patch) {
+        if (operation == SchemaCommand.Operation.UPDATE) {
+            update.accept((List<T>) nodes);
+        } else if (operation == SchemaCommand.Operation.ADD) {
+            add.accept((List<T>) nodes);
+        } else {
+            patch.accept((List<ObjectNode>) nodes);
         }
     }
 
+    // Возврат узлов и списков к состоянию до пакета. Индексы и кэш сбрасываются целиком.
+    @SuppressWarnings("unchecked")
+    private void rollback(Map<JsonSection, List<Object>> lists, List<Runnable> undo) {
+        for (int i = undo.size() - 1; i >= 0; i--) {
+            undo.get(i).run();
+        }
+        lists.forEach((section, saved) -> {
+            List<Object> nodes = (List<Object>) section.nodes(this);
+            nodes.clear();
+            nodes.addAll(saved);
+        });
+        invalidateIndexes();
+    }
+
     /**
      * Метод апдейта коннексионов.
      *
      * @param connexions строка, содержащая json-представления коннексионов.
      */
     public void updateConnexions(String connexions) {
-        ObjectNode[] connexionsNodes = parseNodes(connexions);
-        for (ObjectNode connexionNode : connexionsNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            Connexions connexion = mapper.convertValue(connexionNode, Connexions.class);
-            int index = lookUpConnexionIndexByUid(connexionNode.get("uid").textValue());
-            if (index == -1) {
-                project.getConnexions().add(connexion);
-            } else {
-                project.getConnexions().set(index, connexion);
+        updateConnexions(connexions, null);
+    }
+
+    /**
+     * Метод апдейта коннексионов с проверкой версий: изменение отклоняется, если хотя бы один из узлов
+     * изменён после чтения.
+     *
+     * @param connexions       то же, что в {@link #updateConnexions(String)}.
+     * @param expectedVersions версии узлов по uid на момент чтения, см. {@link #nodeVersion}. Для новых узлов — 0.
+     * @throws VersionConflictException версия узла не совпала с ожидаемой. Модель при этом не изменена.
+     */
+    public void updateConnexions(String connexions, Map<String, Long> expectedVersions) {
+        List<Connexions> parsed = parseNodes(connexions, Connexions.class);
+        writeProject(() -> connexionDomains(parsed), () -> {
+            versions.check(JsonSection.CONNEXIONS, expectedVersions);
+            jsonCache.changed(JsonSection.CONNEXIONS);
+            journal(JournalOp.UPDATE_CONNEXIONS, connexions);
+            versions.changed(JsonSection.CONNEXIONS, parsed);
+            for (Connexions connexion : parsed) {
+                int index = lookUpConnexionIndexByUid(connexion.getUid());
+                if (index == -1) {
+                    project.getConnexions().add(connexion);
+                    connexionIndex.added();
+                    projectReferences.added(connexion);
+                } else {
+                    Connexions previous = project.getConnexions().set(index, connexion);
+                    connexionIndex.replaced(index, connexion.getUid());
+                    projectReferences.replaced(previous, connexion);
+                }
             }
-        }
+        });
     }
 
     /**
@@ -1101,17 +2441,30 @@ public class SchemaUtils {
      * @param connexionUid строка, содержащая идентификаторы коннексионов.
      */
     public void deleteConnexion(String connexionUid) {
-        for (String uid : connexionUid.split(",")) {
-            Connexions connexion = lookUpConnexionByUid(uid);
-            if (connexion != null) {
-                for (AnchorRole anchorRole : connexion.getAnchorRole()) {
-                    if (anchorRole.isIdentifier()) {
-                        deleteCdAnchorAndTieByAnchorRole(anchorRole);
+        writeProject(() -> connexionDomains(Arrays.stream(connexionUid.split(","))
+                .map(this::lookUpConnexionByUid)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList())), () -> {
+            jsonCache.changed(JsonSection.CONNEXIONS, JsonSection.DOMAINS);
+            journal(JournalOp.DELETE_CONNEXION, connexionUid);
+            Set<Connexions> connexionsToDelete = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (String uid : connexionUid.split(",")) {
+                Connexions connexion = lookUpConnexionByUid(uid);
+                if (connexion != null && connexionsToDelete.add(connexion)) {
+                    for (AnchorRole anchorRole : connexion.getAnchorRole()) {
+                        if (anchorRole.isIdentifier()) {
+                            deleteCdAnchorAndTieByAnchorRole(anchorRole);
+                        }
                     }
                 }
-                project.getConnexions().remove(connexion);
             }
-        }
+            if (!connexionsToDelete.isEmpty()) {
+                versions.changed(JsonSection.CONNEXIONS, connexionsToDelete);
+                project.getConnexions().removeIf(connexionsToDelete::contains);
+                connexionsToDelete.forEach(projectReferences::removed);
+                connexionIndex.invalidate();
+            }
+        });
     }
 
     /**
@@ -1120,12 +2473,15 @@ public class SchemaUtils {
      * @param domainJson json-представление списка новых доменов в формате строки
      */
     public void addDomain(String domainJson) {
-        ObjectNode[] domainNodes = parseNodes(domainJson);
-        for (ObjectNode domainNode : domainNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            Domain dom = mapper.convertValue(domainNode, Domain.class);
-            project.getDomain().add(dom);
-        }
+        List<Domain> domains = parseNodes(domainJson, Domain.class);
+        writeProject(() -> domains.stream().map(Domain::getShortName).collect(Collectors.toList()), () -> {
+            jsonCache.nodesChanged(JsonSection.DOMAINS);
+            journal(JournalOp.ADD_DOMAIN, domainJson);
+            for (Domain dom : domains) {
+                project.getDomain().add(dom);
+                projectDomainIndex.added();
+            }
+        });
     }
 
     /**
@@ -1134,23 +2490,36 @@ public class SchemaUtils {
      * @param shortNames строка кратких наименований доменов.
      */
     public void deleteDomain(String shortNames) {
-        for (String shortName : shortNames.split(",")) {
-            project.getConnexions().removeIf(connexions -> {
-                for (int anchorRoleIndex = 0; anchorRoleIndex < connexions.getAnchorRole().size(); anchorRoleIndex++) {
-                    AnchorRole anchorRole = connexions.anchorRole.get(anchorRoleIndex);
-                    if (anchorRole.getDomain().equals(shortName)) {
-                        if (anchorRole.isIdentifier()) {
-                            deleteCdAnchorAndTieByAnchorRole(anchorRole);
-                        } else {
-                            deleteCdAnchorAndTieByAnchorRole(connexions.getAnchorRole().get(1 - anchorRoleIndex));
+        writeProject(() -> Arrays.asList(shortNames.split(",")), () -> {
+            jsonCache.changed(JsonSection.DOMAINS, JsonSection.CONNEXIONS);
+            journal(JournalOp.DELETE_DOMAIN, shortNames);
+            for (String shortName : shortNames.split(",")) {
+                List<Connexions> connexionsToDelete = projectReferences.users(ReferenceIndex.Kind.DOMAIN_CONNEXION, shortName);
+                for (Connexions connexions : connexionsToDelete) {
+                    for (int anchorRoleIndex = 0; anchorRoleIndex < connexions.getAnchorRole().size(); anchorRoleIndex++) {
+                        AnchorRole anchorRole = connexions.anchorRole.get(anchorRoleIndex);
+                        if (anchorRole.getDomain().equals(shortName)) {
+                            if (anchorRole.isIdentifier()) {
+                                deleteCdAnchorAndTieByAnchorRole(anchorRole);
+                            } else {
+                                deleteCdAnchorAndTieByAnchorRole(connexions.getAnchorRole().get(1 - anchorRoleIndex));
+                            }
+                            break;
                         }
-                        return true;
                     }
                 }
-                return false;
-            });
-            project.getDomain().remove(lookUpDomainByShortName(shortName));
-        }
+                if (!connexionsToDelete.isEmpty()) {
+                    Set<Connexions> deleted = Collections.newSetFromMap(new IdentityHashMap<>());
+                    deleted.addAll(connexionsToDelete);
+                    versions.changed(JsonSection.CONNEXIONS, deleted);
+                    project.getConnexions().removeIf(deleted::contains);
+                    connexionsToDelete.forEach(projectReferences::removed);
+                }
+                connexionIndex.invalidate();
+                project.getDomain().remove(lookUpDomainByShortName(shortName));
+                projectDomainIndex.invalidate();
+            }
+        });
     }
 
     /**
@@ -1159,18 +2528,27 @@ public class SchemaUtils {
      * @param shortNames строка кратких наименований доменов.
      */
     public void deleteDomainFromDeploy(String shortNames) {
-        for (String shortName : shortNames.split(",")) {
-            deploy.getDbHost().forEach(
-                    dbHost -> {
-                        dbHost.getDomain().removeIf(dom -> dom.getShortName().equals(shortName));
-                    }
-            );
-            deploy.getFsHost().forEach(
-                    fsHost -> {
-                        fsHost.getDomain().removeIf(dom -> dom.getShortName().equals(shortName));
-                    }
-            );
-        }
+        writeProject(() -> Arrays.asList(shortNames.split(",")), () -> {
+            jsonCache.changed(JsonSection.DB_HOSTS, JsonSection.FS_HOSTS);
+            journal(JournalOp.DELETE_DOMAIN_FROM_DEPLOY, shortNames);
+            for (String shortName : shortNames.split(",")) {
+                deploy.getDbHost().forEach(
+                        dbHost -> {
+                            if (dbHost.getDomain().removeIf(dom -> dom.getShortName().equals(shortName))) {
+                                versions.changed(dbHost);
+                            }
+                        }
+                );
+                deploy.getFsHost().forEach(
+                        fsHost -> {
+                            if (fsHost.getDomain().removeIf(dom -> dom.getShortName().equals(shortName))) {
+                                versions.changed(fsHost);
+                            }
+                        }
+                );
+            }
+            deployIndex.invalidate();
+        });
     }
 
     /**
@@ -1179,30 +2557,16 @@ public class SchemaUtils {
      * @param deployItemJson json-представление списка новых элементов в формате строки.
      */
     public void addDeployItem(String deployItemJson) {
-        ObjectNode[] deployItemsNodes = parseNodes(deployItemJson);
-        ObjectMapper mapper = new ObjectMapper();
-        Item[] items = mapper.convertValue(deployItemsNodes, Item[].class);
-        for (Item item : items) {
-            if (item.getDbType() != null) {
-                for (DbHost dbHost : deploy.getDbHost()) {
-                    if (StringUtils.equals(dbHost.getDbName(), item.getDbName())
-                            && StringUtils.equals(dbHost.getHost(), item.getHost())
-                            && StringUtils.equals(dbHost.getUserName(), item.getUserName())
-                            && dbHost.getDbType() == item.getDbType()
-                            && StringUtils.equals(dbHost.getPort(), item.getPort())) {
-                        fillItems(item, dbHost.getDomain());
-                    }
-                }
-            } else {
-                for (FsHost fsHost : deploy.getFsHost()) {
-                    if (StringUtils.equals(fsHost.getFolder(), item.getFolder())
-                            && StringUtils.equals(fsHost.getHost(), item.getHost())
-                            && StringUtils.equals(fsHost.getUserName(), item.getUserName())) {
-                        fillItems(item, fsHost.getDomain());
-                    }
+        List<Item> items = parseNodes(deployItemJson, Item.class);
+        writeProject(() -> items.stream().map(Item::getShortName).collect(Collectors.toList()), () -> {
+            jsonCache.changed(JsonSection.DB_HOSTS, JsonSection.FS_HOSTS);
+            journal(JournalOp.ADD_DEPLOY_ITEM, deployItemJson);
+            for (Item item : items) {
+                for (HostInfo host : lookUpHostsByItem(item)) {
+                    fillItems(item, host);
                 }
             }
-        }
+        });
     }
 
     /**
@@ -1211,96 +2575,213 @@ public class SchemaUtils {
      * @param deployItemJson json-представление списка элементов для удаления в формате строки.
      */
     public void deleteDeployItem(String deployItemJson) {
-        ObjectNode[] deployItemsNodes = parseNodes(deployItemJson);
-        ObjectMapper mapper = new ObjectMapper();
-        Item[] items = mapper.convertValue(deployItemsNodes, Item[].class);
-        for (Item item : items) {
-            if (item.getDbType() != null) {
-                for (DbHost dbHost : deploy.getDbHost()) {
-                    if (StringUtils.equals(dbHost.getDbName(), item.getDbName())
-                            && StringUtils.equals(dbHost.getHost(), item.getHost())
-                            && StringUtils.equals(dbHost.getUserName(), item.getUserName())
-                            && dbHost.getDbType() == item.getDbType()
-                            && StringUtils.equals(dbHost.getPort(), item.getPort())) {
-                        deleteItem(item, dbHost.getDomain());
-                    }
-                }
-            } else {
-                for (FsHost fsHost : deploy.getFsHost()) {
-                    if (StringUtils.equals(fsHost.getFolder(), item.getFolder())
-                            && StringUtils.equals(fsHost.getHost(), item.getHost())
-                            && StringUtils.equals(fsHost.getUserName(), item.getUserName())) {
-                        deleteItem(item, fsHost.getDomain());
-                    }
+        List<Item> items = parseNodes(deployItemJson, Item.class);
+        writeProject(() -> items.stream().map(Item::getShortName).collect(Collectors.toList()), () -> {
+            jsonCache.changed(JsonSection.DB_HOSTS, JsonSection.FS_HOSTS);
+            journal(JournalOp.DELETE_DEPLOY_ITEM, deployItemJson);
+            // Элементы удаляются одним проходом по каждому затронутому домену.
+            Map<HostInfo, Map<String, Set<String>>> removals = new IdentityHashMap<>();
+            for (Item item : items) {
+                for (HostInfo host : lookUpHostsByItem(item)) {
+                    removals.computeIfAbsent(host, h -> new LinkedHashMap<>())
+                            .computeIfAbsent(item.getShortName(), shortName -> new HashSet<>())
+                            .add(item.getFqn());
                 }
             }
-        }
+            removals.forEach(this::deleteItems);
+        });
     }
 
-    // Метод удаления анкера/атрибута/кнота из домена в модели деплоя.
-    private void deleteItem(Item item, List<org.leandi.schema.deploy.Domain> domains) {
-        org.leandi.schema.deploy.Domain dom = findDomain(domains, item.getShortName());
-        if (dom != null) {
-            dom.getItem().removeIf(depItem -> StringUtils.equals(depItem.getFqn(), item.getFqn()));
+    // Поиск хостов, на которые размещается элемент: db-хосты, если указан тип БД, иначе fs-хосты.
+    private List<? extends HostInfo> lookUpHostsByItem(Item item) {
+        if (item.getDbType() != null) {
+            return deployIndex.dbHosts(DeployIndex.dbHostKey(
+                    item.getDbName(), item.getHost(), item.getUserName(), item.getDbType(), item.getPort()));
         }
-        domains.removeIf(d -> d.getItem().isEmpty());
+        return deployIndex.fsHosts(DeployIndex.fsHostKey(item.getFolder(), item.getHost(), item.getUserName()));
+    }
+
+    // Метод удаления анкеров/атрибутов/кнотов из доменов хоста в модели деплоя.
+    private void deleteItems(HostInfo host, Map<String, Set<String>> fqnsByShortName) {
+        fqnsByShortName.forEach((shortName, fqns) -> {
+            org.leandi.schema.deploy.Domain dom = findDomain(host, shortName);
+            if (dom != null) {
+                dom.getItem().removeIf(depItem -> fqns.contains(depItem.getFqn()));
+                deployIndex.itemsRemoved(host, dom, fqns);
+                versions.changed(host);
+            }
+        });
+        host.getDomain().removeIf(d -> d.getItem().isEmpty());
     }
 
     // Метод обогащения домена анкером/атрибутом/кнотом в модели деплоя.
-    private void fillItems(Item item, List<org.leandi.schema.deploy.Domain> domains) {
+    // Элемент с уже размещённым в домене fqn повторно не добавляется (uniqueItem в XSD).
+    private void fillItems(Item item, HostInfo host) {
         DeployItem deployItem = new DeployItem();
         deployItem.setFqn(item.getFqn());
-        org.leandi.schema.deploy.Domain dom = findDomain(domains, item.getShortName());
+        org.leandi.schema.deploy.Domain dom = findDomain(host, item.getShortName());
         if (dom == null) {
             org.leandi.schema.deploy.Domain domainToAdd = new org.leandi.schema.deploy.Domain();
             domainToAdd.setShortName(item.getShortName());
             domainToAdd.getItem().add(deployItem);
-            domains.add(domainToAdd);
-        } else {
+            host.getDomain().add(domainToAdd);
+            deployIndex.domains(host).added();
+        } else if (deployIndex.items(dom).indexOf(item.getFqn()) == -1) {
             dom.getItem().add(deployItem);
+            deployIndex.items(dom).added();
+        } else {
+            return;
         }
+        deployIndex.itemAdded(host, item.getFqn());
+        versions.changed(host);
+    }
+
+    /**
+     * Поиск хостов схемы деплоя, на которые размещён элемент.
+     *
+     * @param fqn полное наименование анкера/атрибута/кнота.
+     * @return db- и fs-хосты, в доменах которых есть элемент с таким fqn. Порядок хостов не гарантируется.
+     */
+    public List<HostInfo> lookUpHostsByFqn(String fqn) {
+        return read(() -> {
+            return deployIndex.hostsByFqn(fqn);
+        });
     }
 
     public void renewDomains(Map<String, String> shortNames) {
-        deploy.getDbHost().forEach(dbHost -> renewDomains(dbHost, shortNames));
-        deploy.getFsHost().forEach(fsHost -> renewDomains(fsHost, shortNames));
+        writeProject(() -> {
+            List<String> renamed = new ArrayList<>(shortNames.keySet());
+            renamed.addAll(shortNames.values());
+            return renamed;
+        }, () -> {
+            jsonCache.changed(JsonSection.DB_HOSTS, JsonSection.FS_HOSTS);
+            journal(JournalOp.RENEW_DOMAINS, JournalOp.pairsArgs(shortNames));
+            deploy.getDbHost().forEach(dbHost -> renewDomains(dbHost, shortNames));
+            deploy.getFsHost().forEach(fsHost -> renewDomains(fsHost, shortNames));
+        });
     }
 
     private void renewDomains(HostInfo hostInfo, Map<String, String> shortNames) {
         for (Map.Entry<String, String> element : shortNames.entrySet()) {
-            org.leandi.schema.deploy.Domain dom = findDomain(hostInfo.getDomain(), element.getKey());
+            org.leandi.schema.deploy.Domain dom = findDomain(hostInfo, element.getKey());
             if (dom != null) {
                 dom.setShortName(element.getValue());
+                versions.changed(hostInfo);
+                deployIndex.domains(hostInfo).invalidate();
             }
         }
     }
 
-    // Метод поиска домена по сокращенному наименованию.
-    private org.leandi.schema.deploy.Domain findDomain(List<org.leandi.schema.deploy.Domain> domains, String shortName) {
-        for (org.leandi.schema.deploy.Domain dom : domains) {
-            if (StringUtils.equals(dom.getShortName(), shortName)) {
-                return dom;
+    // Метод поиска домена хоста по сокращенному наименованию.
+    private org.leandi.schema.deploy.Domain findDomain(HostInfo host, String shortName) {
+        return deployIndex.domains(host).get(shortName);
+    }
+
+    /**
+     * Удаление узлов по uid за один проход: позиции узлов находятся по индексу,
+     * затем список уплотняется сдвигом оставшихся узлов.
+     *
+     * @param nodes   список узлов.
+     * @param index   индекс списка по uid.
+     * @param uids    идентификаторы. Отсутствующие и повторяющиеся uid пропускаются.
+     * @param removed получатель удалённых узлов.
+     * @return удалённые узлы в порядке списка.
+     */
+    private static <T> List<T> removeByUids(List<T> nodes, NodeIndex<T> index, Collection<String> uids, Consumer<T> removed) {
+        BitSet positions = new BitSet(nodes.size());
+        for (String uid : uids) {
+            int position = index.indexOf(uid);
+            if (position != -1) {
+                positions.set(position);
             }
         }
-        return null;
+        List<T> result = new ArrayList<>(positions.cardinality());
+        if (positions.isEmpty()) {
+            return result;
+        }
+        int kept = positions.nextSetBit(0);
+        for (int i = kept; i < nodes.size(); i++) {
+            T node = nodes.get(i);
+            if (positions.get(i)) {
+                result.add(node);
+                removed.accept(node);
+            } else {
+                nodes.set(kept++, node);
+            }
+        }
+        nodes.subList(kept, nodes.size()).clear();
+        index.invalidate();
+        return result;
     }
 
     /**
-     * Метод парсинга узлов из строкового представления списка,
-     * хранящего json-ы узлов.
+     * Применение merge-patch к узлам на месте. Узлы всех патчей находятся до изменения первого из них,
+     * поэтому патч на отсутствующий узел не применяет ни один патч. Если патч не применился, уже применённые
+     * патчи вызова отменяются обратными патчами, а при применении в составе пакета — откатом пакета.
      *
-     * @param nodesJson список узлов в формате json.
-     * @return список узлов, к значениям которых можно обращаться по ключам.
+     * @param patches патчи с uid узлов.
+     * @param undo    журнал отмены пакета команд, в который до применения патча пишется обратный патч, либо null.
+     * @param nodes   список узлов.
+     * @param index   индекс списка по uid.
+     * @param patched получатель изменённых узлов.
      */
-    private ObjectNode[] parseNodes(String nodesJson) {
-        ObjectMapper mapper = new ObjectMapper();
-        ObjectNode[] nodes = null;
+    private <T> void patchNodes(List<ObjectNode> patches, List<Runnable> undo, JsonSection section, List<T> nodes, NodeIndex<T> index,
+                                       Consumer<T> patched) {
+        int[] positions = new int[patches.size()];
+        for (int i = 0; i < patches.size(); i++) {
+            String uid = patches.get(i).path("uid").textValue();
+            positions[i] = index.indexOf(uid);
+            if (positions[i] == -1) {
+                throw new IllegalArgumentException("Патч [" + i + "]: узел с uid " + uid + " не найден.");
+            }
+        }
+        List<Runnable> inverses = undo != null ? undo : new ArrayList<>(patches.size());
         try {
-            nodes = mapper.readValue(nodesJson, ObjectNode[].class);
-        } catch (JsonProcessingException e) {
-            throw new IllegalArgumentException("Не удалось распарсить список узлов из строкового представления.");
+            for (int i = 0; i < patches.size(); i++) {
+                T node = nodes.get(positions[i]);
+                ObjectNode inverse = JsonMapperRegistry.inversePatch(node, patches.get(i));
+                inverses.add(() -> {
+                    try {
+                        JsonMapperRegistry.mergePatch(node, inverse);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Не удалось отменить патч узла.", e);
+                    }
+                    patched.accept(node);
+                });
+                try {
+                    JsonMapperRegistry.mergePatch(node, patches.get(i));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Не удалось применить патч [" + i + "]: " + e.getMessage(), e);
+                }
+                touched(node);
+                versions.changed(section, patches.get(i).path("uid").textValue());
+                // uid не меняется, но могла измениться мнемоника и ссылки узла.
+                index.replaced(positions[i], patches.get(i).path("uid").textValue());
+                patched.accept(node);
+            }
+        } catch (RuntimeException e) {
+            if (undo == null) {
+                // Вызов вне пакета не оставляет частично применённых патчей: такой вызов не попадает в журнал.
+                for (int i = inverses.size() - 1; i >= 0; i--) {
+                    inverses.get(i).run();
+                }
+                index.invalidate();
+            }
+            throw e;
         }
-        return nodes;
+    }
+
+    /**
+     * Метод парсинга узлов из строкового представления списка,
+     * хранящего json-ы узлов. Каждый элемент массива читается потоково сразу в узел модели,
+     * поэтому при ошибке разбора модель не изменяется.
+     *
+     * @param nodesJson список узлов в формате json.
+     * @param type      тип узла.
+     * @return список узлов.
+     */
+    private static <T> List<T> parseNodes(String nodesJson, Class<T> type) {
+        return JsonMapperRegistry.readArray(nodesJson, type);
     }
 
     /**
@@ -1311,15 +2792,30 @@ public class SchemaUtils {
     private void deleteCdAnchorAndTieByAnchorRole(AnchorRole anchorRole) {
         Domain dom = lookUpDomainByShortName(anchorRole.getDomain());
         if (dom != null) {
-            dom.getCdAnchor().removeIf(cdAnchor -> cdAnchor.getMnemonic().equals(anchorRole.getType()));
-            dom.getTie().removeIf(tie -> {
-                for (AnchorRole tieAnchorRole : tie.getAnchorRole()) {
-                    if (tieAnchorRole.getType().equals(anchorRole.getType())) {
+            DomainIndex index = domainIndex(dom);
+            if (dom == domain) {
+                jsonCache.changed(JsonSection.CD_ANCHORS, JsonSection.TIES);
+            }
+            if (index.getCdAnchorMnemonics().indexOf(anchorRole.getType()) != -1) {
+                dom.getCdAnchor().removeIf(cdAnchor -> {
+                    if (cdAnchor.getMnemonic().equals(anchorRole.getType())) {
+                        index.getReferences().removed(cdAnchor);
+                        versions.changed(JsonSection.CD_ANCHORS, cdAnchor.getUid());
                         return true;
                     }
-                }
-                return false;
-            });
+                    return false;
+                });
+                index.getCdAnchors().invalidate();
+            }
+            List<Tie> ties = index.getReferences().users(ReferenceIndex.Kind.ANCHOR_TIE, anchorRole.getType());
+            if (!ties.isEmpty()) {
+                Set<Tie> tiesToDelete = Collections.newSetFromMap(new IdentityHashMap<>());
+                tiesToDelete.addAll(ties);
+                versions.changed(JsonSection.TIES, ties);
+                dom.getTie().removeIf(tiesToDelete::contains);
+                ties.forEach(index.getReferences()::removed);
+                index.getTies().invalidate();
+            }
         }
     }
 
@@ -1329,12 +2825,21 @@ public class SchemaUtils {
      * @param fsHostJson json-представление списка новых анкеров в формате строки
      */
     public void addFsHost(String fsHostJson) {
-        ObjectNode[] fsNodes = parseNodes(fsHostJson);
-        for (ObjectNode fsNode : fsNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            FsHost fsHost = mapper.convertValue(fsNode, FsHost.class);
+        writeProject(Collections::emptyList, () -> {
+            jsonCache.nodesChanged(JsonSection.FS_HOSTS);
+            List<FsHost> nodes = parseNodes(fsHostJson, FsHost.class);
+            journal(JournalOp.ADD_FS_HOST, fsHostJson);
+            addFsHost(nodes);
+        });
+    }
+
+    private void addFsHost(List<FsHost> fsHosts) {
+        versions.changed(JsonSection.FS_HOSTS, fsHosts);
+        for (FsHost fsHost : fsHosts) {
             deploy.getFsHost().add(fsHost);
+            fsHostIndex.added();
         }
+        deployIndex.invalidateHosts();
     }
 
     /**
@@ -1343,17 +2848,40 @@ public class SchemaUtils {
      * @param fsHostJson json-представление списка анкеров в формате строки
      */
     public void updateFsHost(String fsHostJson) {
-        ObjectNode[] fsNodes = parseNodes(fsHostJson);
-        for (ObjectNode fsNode : fsNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            FsHost fsHost = mapper.convertValue(fsNode, FsHost.class);
-            int index = lookUpFsHostIndexByUid(fsNode.get("uid").textValue());
+        updateFsHost(fsHostJson, null);
+    }
+
+    /**
+     * Метод обновления и обогащения списка fs-хостов с проверкой версий: изменение отклоняется, если хотя бы один из узлов
+     * изменён после чтения.
+     *
+     * @param fsHostJson       то же, что в {@link #updateFsHost(String)}.
+     * @param expectedVersions версии узлов по uid на момент чтения, см. {@link #nodeVersion}. Для новых узлов — 0.
+     * @throws VersionConflictException версия узла не совпала с ожидаемой. Модель при этом не изменена.
+     */
+    public void updateFsHost(String fsHostJson, Map<String, Long> expectedVersions) {
+        writeProject(Collections::emptyList, () -> {
+            versions.check(JsonSection.FS_HOSTS, expectedVersions);
+            jsonCache.nodesChanged(JsonSection.FS_HOSTS);
+            List<FsHost> nodes = parseNodes(fsHostJson, FsHost.class);
+            journal(JournalOp.UPDATE_FS_HOST, fsHostJson);
+            updateFsHost(nodes);
+        });
+    }
+
+    private void updateFsHost(List<FsHost> fsHosts) {
+        versions.changed(JsonSection.FS_HOSTS, fsHosts);
+        for (FsHost fsHost : fsHosts) {
+            int index = lookUpFsHostIndexByUid(fsHost.getUid());
             if (index == -1) {
                 deploy.getFsHost().add(fsHost);
+                fsHostIndex.added();
             } else {
                 deploy.getFsHost().set(index, fsHost);
+                fsHostIndex.replaced(index, fsHost.getUid());
             }
         }
+        deployIndex.invalidateHosts();
     }
 
     /**
@@ -1362,9 +2890,9 @@ public class SchemaUtils {
      * @param fsHostUid строка, состоящая из идентификаторов.
      */
     public void deleteFsHost(String fsHostUid) {
-        for (String uid : fsHostUid.split(",")) {
-            deploy.getFsHost().remove(lookUpFsHostByUid(uid));
-        }
+        writeProject(Collections::emptyList, () -> {
+            deleteNodes(JsonSection.FS_HOSTS, Arrays.asList(fsHostUid.split(",")), false);
+        });
     }
 
     /**
@@ -1373,12 +2901,21 @@ public class SchemaUtils {
      * @param dbHostJson json-представление списка новых анкеров в формате строки
      */
     public void addDbHost(String dbHostJson) {
-        ObjectNode[] dbNodes = parseNodes(dbHostJson);
-        for (ObjectNode dbNode : dbNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            DbHost dbHost = mapper.convertValue(dbNode, DbHost.class);
+        writeProject(Collections::emptyList, () -> {
+            jsonCache.nodesChanged(JsonSection.DB_HOSTS);
+            List<DbHost> nodes = parseNodes(dbHostJson, DbHost.class);
+            journal(JournalOp.ADD_DB_HOST, dbHostJson);
+            addDbHost(nodes);
+        });
+    }
+
+    private void addDbHost(List<DbHost> dbHosts) {
+        versions.changed(JsonSection.DB_HOSTS, dbHosts);
+        for (DbHost dbHost : dbHosts) {
             deploy.getDbHost().add(dbHost);
+            dbHostIndex.added();
         }
+        deployIndex.invalidateHosts();
     }
 
     /**
@@ -1387,17 +2924,40 @@ public class SchemaUtils {
      * @param dbHostJson json-представление списка анкеров в формате строки
      */
     public void updateDbHost(String dbHostJson) {
-        ObjectNode[] dbNodes = parseNodes(dbHostJson);
-        for (ObjectNode dbNode : dbNodes) {
-            ObjectMapper mapper = new ObjectMapper();
-            DbHost dbHost = mapper.convertValue(dbNode, DbHost.class);
-            int index = lookUpDbHostIndexByUid(dbNode.get("uid").textValue());
+        updateDbHost(dbHostJson, null);
+    }
+
+    /**
+     * Метод обновления и обогащения списка db-хостов с проверкой версий: изменение отклоняется, если хотя бы один из узлов
+     * изменён после чтения.
+     *
+     * @param dbHostJson       то же, что в {@link #updateDbHost(String)}.
+     * @param expectedVersions версии узлов по uid на момент чтения, см. {@link #nodeVersion}. Для новых узлов — 0.
+     * @throws VersionConflictException версия узла не совпала с ожидаемой. Модель при этом не изменена.
+     */
+    public void updateDbHost(String dbHostJson, Map<String, Long> expectedVersions) {
+        writeProject(Collections::emptyList, () -> {
+            versions.check(JsonSection.DB_HOSTS, expectedVersions);
+            jsonCache.nodesChanged(JsonSection.DB_HOSTS);
+            List<DbHost> nodes = parseNodes(dbHostJson, DbHost.class);
+            journal(JournalOp.UPDATE_DB_HOST, dbHostJson);
+            updateDbHost(nodes);
+        });
+    }
+
+    private void updateDbHost(List<DbHost> dbHosts) {
+        versions.changed(JsonSection.DB_HOSTS, dbHosts);
+        for (DbHost dbHost : dbHosts) {
+            int index = lookUpDbHostIndexByUid(dbHost.getUid());
             if (index == -1) {
                 deploy.getDbHost().add(dbHost);
+                dbHostIndex.added();
             } else {
                 deploy.getDbHost().set(index, dbHost);
+                dbHostIndex.replaced(index, dbHost.getUid());
             }
         }
+        deployIndex.invalidateHosts();
     }
 
     /**
@@ -1406,9 +2966,9 @@ public class SchemaUtils {
      * @param dbHostUid строка, состоящая из идентификаторов.
      */
     public void deleteDbHost(String dbHostUid) {
-        for (String uid : dbHostUid.split(",")) {
-            deploy.getDbHost().remove(lookUpDbHostByUid(uid));
-        }
+        writeProject(Collections::emptyList, () -> {
+            deleteNodes(JsonSection.DB_HOSTS, Arrays.asList(dbHostUid.split(",")), false);
+        });
     }
 
     /**
@@ -1417,19 +2977,23 @@ public class SchemaUtils {
      * @param domainData домен, из которого копируются данные.
      */
     public void fillDomainByAnotherDomain(SchemaUtils domainData) {
-        Domain dom = domainData.getDomain();
-        this.domain.getAnchor().addAll(dom.getAnchor());
-        this.domain.getTie().addAll(dom.getTie());
-        this.domain.getKnot().addAll(dom.getKnot());
-        this.domain.getTxAnchor().addAll(dom.getTxAnchor());
-        this.domain.getCdAnchor().addAll(dom.getCdAnchor());
-        this.domain.getArea().addAll(dom.getArea());
-        this.domain.getVerticalPropertiesGroup().addAll(dom.getVerticalPropertiesGroup());
-        VerticalProperties verticalProperties = new VerticalProperties();
-        if (dom.getVerticalProperties() != null) {
-            verticalProperties.getVerticalProperty().addAll(dom.getVerticalProperties().getVerticalProperty());
-        }
-        this.domain.setVerticalProperties(verticalProperties);
+        write(() -> {
+            Domain dom = domainData.getDomain();
+            this.domain.getAnchor().addAll(dom.getAnchor());
+            this.domain.getTie().addAll(dom.getTie());
+            this.domain.getKnot().addAll(dom.getKnot());
+            this.domain.getTxAnchor().addAll(dom.getTxAnchor());
+            this.domain.getCdAnchor().addAll(dom.getCdAnchor());
+            this.domain.getArea().addAll(dom.getArea());
+            this.domain.getVerticalPropertiesGroup().addAll(dom.getVerticalPropertiesGroup());
+            VerticalProperties verticalProperties = new VerticalProperties();
+            if (dom.getVerticalProperties() != null) {
+                verticalProperties.getVerticalProperty().addAll(dom.getVerticalProperties().getVerticalProperty());
+            }
+            this.domain.setVerticalProperties(verticalProperties);
+            invalidateDomainIndex(this.domain);
+            journalCheckpoint();
+        });
     }
 
     /**
@@ -1440,11 +3004,12 @@ public class SchemaUtils {
      * @throws JsonProcessingException
      */
     public String getDomainsListFromDeploy() throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        Set<String> domainsList = new HashSet<>();
-        deploy.getFsHost().forEach(fsHost -> fsHost.getDomain().forEach(dom -> domainsList.add(dom.getShortName())));
-        deploy.getDbHost().forEach(dbHost -> dbHost.getDomain().forEach(dom -> domainsList.add(dom.getShortName())));
-        return objectMapper.writeValueAsString(domainsList);
+        return read(() -> {
+            Set<String> domainsList = new HashSet<>();
+            deploy.getFsHost().forEach(fsHost -> fsHost.getDomain().forEach(dom -> domainsList.add(dom.getShortName())));
+            deploy.getDbHost().forEach(dbHost -> dbHost.getDomain().forEach(dom -> domainsList.add(dom.getShortName())));
+            return JsonMapperRegistry.writer().writeValueAsString(domainsList);
+        });
     }
 
     /**
@@ -1454,12 +3019,15 @@ public class SchemaUtils {
      * @throws JAXBException
      */
     public String marshall() throws JAXBException {
-        StringWriter stringWriter = new StringWriter();
-        JAXBContext jaxbContext = JAXBContext.newInstance(Domain.class);
-        Marshaller jaxbMarshaller = jaxbContext.createMarshaller();
-        jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-        jaxbMarshaller.marshal(createDomainJaxbElement(), stringWriter);
-        return stringWriter.toString();
+        return write(() -> {
+            StringWriter stringWriter = new StringWriter();
+            JAXBElement<Domain> element = createDomainJaxbElement();
+            JaxbContextRegistry.forClasses(Domain.class).withMarshaller(jaxbMarshaller -> {
+                jaxbMarshaller.marshal(element, stringWriter);
+                return null;
+            });
+            return stringWriter.toString();
+        });
     }
 
     /**
@@ -1469,21 +3037,239 @@ public class SchemaUtils {
      * @throws JAXBException
      */
     public String marshallProject() throws JAXBException {
-        StringWriter stringWriter = new StringWriter();
-        JAXBContext jaxbContext = JAXBContext.newInstance(Project.class);
-        Marshaller jaxbMarshaller = jaxbContext.createMarshaller();
-        jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-        jaxbMarshaller.marshal(createProjectJaxbElement(), stringWriter);
-        return stringWriter.toString();
+        return writeProject(Collections::emptyList, () -> {
+            StringWriter stringWriter = new StringWriter();
+            JAXBElement<Project> element = createProjectJaxbElement();
+            JaxbContextRegistry.forClasses(Project.class).withMarshaller(jaxbMarshaller -> {
+                jaxbMarshaller.marshal(element, stringWriter);
+                return null;
+            });
+            return stringWriter.toString();
+        });
     }
 
     public String marshallDeployModel() throws JAXBException {
-        StringWriter stringWriter = new StringWriter();
-        JAXBContext jaxbContext = JAXBContext.newInstance(Deploy.class);
-        Marshaller jaxbMarshaller = jaxbContext.createMarshaller();
-        jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-        jaxbMarshaller.marshal(createDeployModelJaxbElement(), stringWriter);
-        return stringWriter.toString();
+        return writeProject(Collections::emptyList, () -> {
+            StringWriter stringWriter = new StringWriter();
+            JAXBElement<Deploy> element = createDeployModelJaxbElement();
+            JaxbContextRegistry.forClasses(Deploy.class).withMarshaller(jaxbMarshaller -> {
+                jaxbMarshaller.marshal(element, stringWriter);
+                return null;
+            });
+            return stringWriter.toString();
+        });
+    }
+
+    /**
+     * Метод записи домена, проекта и деплоя в двоичный снимок.
+     * Снимок восстанавливается через {@link #readSnapshot(InputStream)} без потерь относительно XML.
+     * Домены проекта с отложенной загрузкой при записи разбираются.
+     *
+     * @param out поток для записи снимка. Поток не закрывается.
+     * @throws IOException ошибка записи.
+     */
+    public void writeSnapshot(OutputStream out) throws IOException {
+        SnapshotCodec.write(out, read(this::snapshotSections));
+    }
+
+    /**
+     * Неизменяемый снимок домена, проекта и деплоя. Снимок читается одним чтением volatile-поля
+     * и не блокирует изменения; каждое следующее изменение публикует новый снимок.
+     * Первый вызов включает публикацию снимков: до него изменения снимков не строят.
+     * Новый снимок разделяет с предыдущим неизменённые узлы, поэтому изменение копирует только изменённые узлы.
+     * Домены проекта с отложенной загрузкой при построении первого снимка разбираются.
+     *
+     * @return последний опубликованный снимок.
+     */
+    public SchemaSnapshot snapshot() {
+        SchemaSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        return write(() -> {
+            if (snapshots == null) {
+                snapshots = new SnapshotPublisher(jsonCache);
+                snapshot = snapshots.publish(domain, project, deploy);
+            }
+            return snapshot;
+        });
+    }
+
+    private Map<Integer, byte[]> snapshotSections() {
+        Map<Integer, byte[]> sections = new LinkedHashMap<>();
+        sections.put(SnapshotCodec.SECTION_DOMAIN, SnapshotCodec.encode(domain));
+        sections.put(SnapshotCodec.SECTION_PROJECT, SnapshotCodec.encode(project));
+        sections.put(SnapshotCodec.SECTION_DEPLOY, SnapshotCodec.encode(deploy));
+        return sections;
+    }
+
+    /**
+     * Метод восстановления SchemaUtils из двоичного снимка, записанного {@link #writeSnapshot(OutputStream)}.
+     * Отсутствующая в снимке модель создаётся пустой.
+     *
+     * @param in поток со снимком. Поток не закрывается.
+     * @return SchemaUtils с восстановленными доменом, проектом и деплоем.
+     * @throws IOException ошибка чтения либо поток не является снимком.
+     */
+    public static SchemaUtils readSnapshot(InputStream in) throws IOException {
+        return fromSnapshotSections(SnapshotCodec.read(in,
+                SnapshotCodec.SECTION_DOMAIN, SnapshotCodec.SECTION_PROJECT, SnapshotCodec.SECTION_DEPLOY));
+    }
+
+    private static SchemaUtils fromSnapshotSections(Map<Integer, byte[]> sections) {
+        byte[] domainSection = sections.get(SnapshotCodec.SECTION_DOMAIN);
+        byte[] projectSection = sections.get(SnapshotCodec.SECTION_PROJECT);
+        byte[] deploySection = sections.get(SnapshotCodec.SECTION_DEPLOY);
+        return SchemaUtils.builder()
+                .domain(domainSection != null ? SnapshotCodec.decode(domainSection, Domain.class) : null)
+                .project(projectSection != null ? SnapshotCodec.decode(projectSection, Project.class) : null)
+                .deploy(deploySection != null ? SnapshotCodec.decode(deploySection, Deploy.class) : null)
+                .build();
+    }
+
+    /**
+     * Метод подключения журнала изменений в пустом каталоге.
+     * <p>
+     * Текущее состояние записывается в каталог снимком, затем каждый метод изменения SchemaUtils
+     * после успешного изменения модели дописывает в журнал компактную запись со своими аргументами.
+     * Вызовы, завершившиеся ошибкой, в журнал не пишутся.
+     * Когда записи после снимка превышают порог, модель кодируется в новый снимок,
+     * а запись снимка и удаление свёрнутых записей выполняются в фоновом потоке.
+     * Изменения, которые нельзя повторить по аргументам (расстановка случайных uid, замена домена объектом),
+     * сразу уплотняют журнал. Изменения моделей в обход методов SchemaUtils в журнал не попадают:
+     * после них нужен вызов {@link #compactJournal()}.
+     *
+     * @param directory           каталог журнала.
+     * @param compactionThreshold размер записей после снимка в байтах, при котором начинается уплотнение.
+     * @throws IOException              ошибка записи каталога.
+     * @throws IllegalArgumentException каталог уже содержит журнал.
+     */
+    public void attachJournal(Path directory, long compactionThreshold) throws IOException {
+        writeProject(Collections::emptyList, () -> {
+            if (journal != null) {
+                throw new IllegalStateException("Журнал изменений уже подключён.");
+            }
+            MutationJournal created = MutationJournal.create(directory, compactionThreshold);
+            try {
+                created.compact(snapshotSections());
+                created.await();
+            } catch (IOException | RuntimeException e) {
+                created.close();
+                throw e;
+            }
+            journal = created;
+        });
+    }
+
+    /**
+     * Метод восстановления SchemaUtils из каталога журнала: чтение последнего снимка и повтор записей после него.
+     * Журнал продолжается в том же каталоге.
+     *
+     * @param directory           каталог журнала, подключённого через {@link #attachJournal}.
+     * @param compactionThreshold размер записей после снимка в байтах, при котором начинается уплотнение.
+     * @return SchemaUtils в состоянии после последней записи журнала.
+     * @throws IOException ошибка чтения либо каталог не содержит журнала.
+     */
+    public static SchemaUtils recoverJournal(Path directory, long compactionThreshold) throws IOException {
+        MutationJournal.Recovery recovery = MutationJournal.recover(directory);
+        // Журнал подключается после повтора, поэтому повторяемые изменения в него не пишутся.
+        SchemaUtils utils = fromSnapshotSections(recovery.sections());
+        for (MutationJournal.Record record : recovery.records()) {
+            try {
+                record.op().replay(utils, record.args());
+            } catch (RuntimeException e) {
+                // В журнал пишутся только успешные изменения, поэтому ошибка повтора означает потерю состояния.
+                throw new IOException("Не удалось повторить запись журнала " + record.sequence() + " ("
+                        + record.op() + "): " + e.getMessage(), e);
+            }
+        }
+        utils.journal = MutationJournal.resume(directory, compactionThreshold, recovery);
+        return utils;
+    }
+
+    /**
+     * Метод уплотнения журнала изменений: запись текущего состояния снимком и удаление записей до него.
+     * Возвращает управление после записи снимка.
+     *
+     * @throws IOException ошибка записи снимка.
+     */
+    public void compactJournal() throws IOException {
+        writeProject(Collections::emptyList, () -> {
+            if (journal != null) {
+                journal.compact(snapshotSections());
+                journal.await();
+            }
+        });
+    }
+
+    /**
+     * Метод отключения журнала изменений. Дожидается фонового уплотнения и сбрасывает журнал на диск.
+     *
+     * @throws IOException ошибка записи журнала или снимка.
+     */
+    public void closeJournal() throws IOException {
+        write(() -> {
+            if (journal != null) {
+                MutationJournal closed = journal;
+                journal = null;
+                closed.close();
+            }
+        });
+    }
+
+    private void journal(JournalOp op, String arg) {
+        journal(op, Collections.singletonList(arg));
+    }
+
+    // Запись изменения для журнала. Вызывается после разбора и проверки аргументов; в журнал запись попадает
+    // по успешном завершении внешнего вызова, поэтому неудачные вызовы в журнал не пишутся.
+    private void journal(JournalOp op, List<String> args) {
+        if (journal == null) {
+            return;
+        }
+        WriteScope scope = writeScope.get();
+        scope.ops.add(op);
+        scope.args.add(args);
+    }
+
+    private void compactJournalIfDue() {
+        if (journal == null || !journal.compactionDue()) {
+            return;
+        }
+        try {
+            journal.compact(snapshotSections());
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось записать снимок журнала изменений.", e);
+        }
+    }
+
+    private void appendJournal(WriteScope scope) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            for (int i = 0; i < scope.ops.size(); i++) {
+                journal.append(scope.ops.get(i), scope.args.get(i));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Изменение применено, но не записано в журнал изменений.", e);
+        }
+    }
+
+    // Уплотнение после изменения, которое нельзя повторить по записи журнала.
+    private void journalCheckpoint() {
+        if (journal == null) {
+            return;
+        }
+        // Снимок уже содержит изменения вызова, их записи не нужны.
+        WriteScope scope = writeScope.get();
+        scope.ops.clear();
+        scope.args.clear();
+        try {
+            journal.compact(snapshotSections());
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось записать снимок журнала изменений.", e);
+        }
     }
 
     /**
@@ -1493,9 +3279,11 @@ public class SchemaUtils {
      * @return список полных наименований анкера.
      */
     public List<String> mnemonicPlusDescriptorList(Domain domain) {
-        return domain.getAnchor().stream().map(
-                anchor -> anchor.getMnemonic() + "_" + anchor.getDescriptor()
-        ).collect(Collectors.toList());
+        return read(() -> {
+            return domain.getAnchor().stream().map(
+                    anchor -> anchor.getMnemonic() + "_" + anchor.getDescriptor()
+            ).collect(Collectors.toList());
+        });
     }
 
     // Вспомогательные методы createDomain..., createProject
@@ -1539,13 +3327,33 @@ public class SchemaUtils {
      * @param json массив объектов Area в формате строки.
      */
     public void updateArea(String json) {
-        domain.getArea().clear();
-        ObjectNode[] areaJsons = parseNodes(json);
-        for (ObjectNode areaJson : areaJsons) {
-            ObjectMapper mapper = new ObjectMapper();
-            Area area = mapper.convertValue(areaJson, Area.class);
-            domain.getArea().add(area);
-        }
+        updateArea(json, null);
+    }
+
+    /**
+     * Метод добавления/изменения Area с проверкой версий: изменение отклоняется, если хотя бы один из узлов
+     * изменён после чтения.
+     *
+     * @param json             то же, что в {@link #updateArea(String)}.
+     * @param expectedVersions версии узлов по uid на момент чтения, см. {@link #nodeVersion}. Для новых узлов — 0.
+     * @throws VersionConflictException версия узла не совпала с ожидаемой. Модель при этом не изменена.
+     */
+    public void updateArea(String json, Map<String, Long> expectedVersions) {
+        write(() -> {
+            versions.check(JsonSection.AREAS, expectedVersions);
+            jsonCache.changed(JsonSection.AREAS);
+            List<Area> areas = parseNodes(json, Area.class);
+            journal(JournalOp.UPDATE_AREA, json);
+            // Прежние и новые Area, каждая один раз.
+            Stream.concat(domain.getArea().stream(), areas.stream())
+                    .map(Area::getUid)
+                    .distinct()
+                    .forEach(uid -> versions.changed(JsonSection.AREAS, uid));
+            domain.getArea().clear();
+            domain.getArea().addAll(areas);
+            domainIndex().getAreas().invalidate();
+            domainIndex().getReferences().invalidate();
+        });
     }
 
     /**
@@ -1554,7 +3362,19 @@ public class SchemaUtils {
      * @param uid идентификатор Area.
      */
     public void deleteArea(String uid) {
-        domain.getArea().removeIf(area -> StringUtils.equals(area.getUid(), uid));
+        write(() -> {
+            jsonCache.changed(JsonSection.AREAS);
+            journal(JournalOp.DELETE_AREA, uid);
+            domain.getArea().removeIf(area -> {
+                if (StringUtils.equals(area.getUid(), uid)) {
+                    domainIndex().getReferences().removed(area);
+                    versions.changed(JsonSection.AREAS, area.getUid());
+                    return true;
+                }
+                return false;
+            });
+            domainIndex().getAreas().invalidate();
+        });
     }
 
     // Вспомогательные классы для маппинга json-строк в java-объекты.
@@ -1570,6 +3390,12 @@ public class SchemaUtils {
         private String fqn;
     }
 
+    // Разбор модели из XML-потока.
+    @FunctionalInterface
+    private interface ModelParser<T> {
+        T parse(InputStream xml) throws JAXBException, IOException;
+    }
+
     @Getter
     private static class SerializeHelperClass {
         private String id;
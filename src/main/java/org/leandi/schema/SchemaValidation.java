@@ -0,0 +1,284 @@
+package org.leandi.schema;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.JAXBIntrospector;
+import jakarta.xml.bind.UnmarshalException;
+import jakarta.xml.bind.UnmarshallerHandler;
+import jakarta.xml.bind.ValidationEvent;
+import jakarta.xml.bind.ValidationEventLocator;
+import org.leandi.schema.deploy.Deploy;
+import org.leandi.schema.domain.Domain;
+import org.xml.sax.Attributes;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.ValidatorHandler;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Анмаршаллинг с проверкой по XSD-схемам за один проход.
+ * События SAX-парсера идут через валидатор прямо в UnmarshallerHandler, поэтому файл читается один раз.
+ * Схемы компилируются один раз при первом обращении; скомпилированная Schema потокобезопасна.
+ * <p>
+ * Входные файлы пишутся без пространства имён, тогда как корневые элементы в XSD
+ * объявлены в целевых пространствах имён. Поэтому корневой элемент при чтении
+ * переводится в пространство имён схемы. Вложенные элементы в XSD неквалифицированные
+ * и остаются как есть. Корням домена и деплоя добавляется xsi:type: для deploy
+ * глобального элемента в XSD нет, и корень проверяется по типу.
+ */
+final class SchemaValidation {
+
+    private static final String[] XSD = {
+            "/xsd/leandi-base-types.xsd",
+            "/xsd/leandi-domain.xsd",
+            "/xsd/leandi-project.xsd",
+            "/xsd/leandi-deploy-model.xsd"
+    };
+
+    private static final String DOMAIN_NAMESPACE = "urn:org:leandi:schema:domain";
+    private static final String PROJECT_NAMESPACE = "urn:org:leandi:schema";
+    private static final String DEPLOY_NAMESPACE = "urn:org:leandi:schema:deploy";
+
+    /**
+     * Префикс, под которым объявляется пространство имён типа корня.
+     */
+    private static final String ROOT_PREFIX = "leandi-root";
+
+    private static final SAXParserFactory PARSER_FACTORY = createParserFactory();
+
+    private SchemaValidation() {
+    }
+
+    // Ленивая инициализация: XSD компилируются только при первой проверке.
+    private static final class SchemaHolder {
+        private static final Schema SCHEMA = compile();
+    }
+
+    private static Schema compile() {
+        Source[] sources = new Source[XSD.length];
+        for (int i = 0; i < XSD.length; i++) {
+            URL url = SchemaValidation.class.getResource(XSD[i]);
+            if (url == null) {
+                throw new IllegalStateException("Не найдена XSD-схема " + XSD[i]);
+            }
+            sources[i] = new StreamSource(url.toExternalForm());
+        }
+        try {
+            return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(sources);
+        } catch (SAXException e) {
+            throw new IllegalStateException("Не удалось скомпилировать XSD-схемы.", e);
+        }
+    }
+
+    private static SAXParserFactory createParserFactory() {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IllegalStateException("Не удалось настроить SAX-парсер.", e);
+        }
+        return factory;
+    }
+
+    /**
+     * @return скомпилированные XSD-схемы домена, проекта и деплоя.
+     */
+    static Schema getSchema() {
+        return SchemaHolder.SCHEMA;
+    }
+
+    /**
+     * Анмаршаллинг с проверкой по XSD-схеме.
+     * Разбор не прерывается на первом нарушении: собираются все нарушения файла.
+     *
+     * @param xml  поток с XML.
+     * @param type Domain, Project или Deploy.
+     * @return разобранная модель.
+     * @throws SchemaValidationException XML не соответствует XSD-схеме.
+     * @throws JAXBException             ошибка анмаршаллинга, не связанная с XSD-схемой.
+     */
+    static <T> T unmarshal(InputStream xml, Class<T> type) throws JAXBException {
+        List<SchemaValidationException.Violation> violations = new ArrayList<>();
+        ErrorHandler errorHandler = new ViolationCollector(violations);
+        Object result;
+        try {
+            result = JaxbContextRegistry.forClasses(Project.class, Domain.class, Deploy.class).withUnmarshaller(unmarshaller -> {
+                // Ошибки привязки дублируют нарушения XSD, поэтому собираются только неисправимые.
+                unmarshaller.setEventHandler(event -> {
+                    if (event.getSeverity() == ValidationEvent.FATAL_ERROR) {
+                        violations.add(toViolation(event));
+                        return false;
+                    }
+                    return true;
+                });
+                UnmarshallerHandler unmarshallerHandler = unmarshaller.getUnmarshallerHandler();
+                ValidatorHandler validator = getSchema().newValidatorHandler();
+                validator.setErrorHandler(errorHandler);
+                validator.setContentHandler(unmarshallerHandler);
+
+                RootFilter filter = new RootFilter(newReader(), rootNamespace(type), rootType(type));
+                filter.setContentHandler(validator);
+                filter.setErrorHandler(errorHandler);
+                try {
+                    filter.parse(new InputSource(xml));
+                } catch (SAXException | IOException e) {
+                    throw new UnmarshalException(e);
+                }
+                return unmarshallerHandler.getResult();
+            });
+        } catch (JAXBException e) {
+            if (violations.isEmpty()) {
+                throw e;
+            }
+            throw new SchemaValidationException(violations, e);
+        }
+        if (!violations.isEmpty()) {
+            throw new SchemaValidationException(violations, null);
+        }
+        Object value = JAXBIntrospector.getValue(result);
+        if (!type.isInstance(value)) {
+            throw new UnmarshalException("Корневой элемент не соответствует " + type.getSimpleName());
+        }
+        return type.cast(value);
+    }
+
+    private static XMLReader newReader() throws UnmarshalException {
+        try {
+            return PARSER_FACTORY.newSAXParser().getXMLReader();
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new UnmarshalException(e);
+        }
+    }
+
+    private static String rootNamespace(Class<?> type) {
+        if (type == Domain.class) {
+            return DOMAIN_NAMESPACE;
+        }
+        if (type == Project.class) {
+            return PROJECT_NAMESPACE;
+        }
+        if (type == Deploy.class) {
+            return DEPLOY_NAMESPACE;
+        }
+        throw new IllegalArgumentException("Проверка по XSD не поддерживается для " + type.getName());
+    }
+
+    // JAXB-контекст создан по классам без ObjectFactory, поэтому корень домена и деплоя
+    // опознаётся по xsi:type. Проект объявлен через XmlRootElement и узнаётся по имени.
+    private static String rootType(Class<?> type) {
+        if (type == Domain.class) {
+            return "domain";
+        }
+        if (type == Deploy.class) {
+            return "deploy";
+        }
+        return null;
+    }
+
+    private static SchemaValidationException.Violation toViolation(ValidationEvent event) {
+        ValidationEventLocator locator = event.getLocator();
+        return locator != null
+                ? new SchemaValidationException.Violation(locator.getLineNumber(), locator.getColumnNumber(), event.getMessage())
+                : new SchemaValidationException.Violation(-1, -1, event.getMessage());
+    }
+
+    /**
+     * Сбор нарушений валидатора и парсера. Разбор прерывается только на нарушении правильности XML.
+     */
+    private static final class ViolationCollector implements ErrorHandler {
+
+        private final List<SchemaValidationException.Violation> violations;
+
+        ViolationCollector(List<SchemaValidationException.Violation> violations) {
+            this.violations = violations;
+        }
+
+        @Override
+        public void warning(SAXParseException exception) {
+            // Предупреждения не считаются нарушениями.
+        }
+
+        @Override
+        public void error(SAXParseException exception) {
+            violations.add(toViolation(exception));
+        }
+
+        @Override
+        public void fatalError(SAXParseException exception) throws SAXException {
+            violations.add(toViolation(exception));
+            throw exception;
+        }
+
+        private static SchemaValidationException.Violation toViolation(SAXParseException exception) {
+            return new SchemaValidationException.Violation(
+                    exception.getLineNumber(), exception.getColumnNumber(), exception.getMessage());
+        }
+    }
+
+    /**
+     * Перевод корневого элемента без пространства имён в пространство имён схемы.
+     * Если задан тип, корню добавляется атрибут xsi:type с объявлением префикса для него.
+     */
+    private static final class RootFilter extends XMLFilterImpl {
+
+        private final String namespace;
+        private final String rootType;
+        private int depth;
+        private boolean rootUnqualified;
+
+        RootFilter(XMLReader parent, String namespace, String rootType) {
+            super(parent);
+            this.namespace = namespace;
+            this.rootType = rootType;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+            if (depth++ == 0 && uri.isEmpty()) {
+                rootUnqualified = true;
+                if (rootType == null) {
+                    super.startElement(namespace, localName, localName, atts);
+                    return;
+                }
+                super.startPrefixMapping(ROOT_PREFIX, namespace);
+                AttributesImpl typed = new AttributesImpl(atts);
+                typed.addAttribute(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "type", "xsi:type", "CDATA",
+                        ROOT_PREFIX + ":" + rootType);
+                super.startElement(namespace, localName, localName, typed);
+                return;
+            }
+            super.startElement(uri, localName, qName, atts);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (--depth == 0 && rootUnqualified) {
+                super.endElement(namespace, localName, localName);
+                if (rootType != null) {
+                    super.endPrefixMapping(ROOT_PREFIX);
+                }
+                return;
+            }
+            super.endElement(uri, localName, qName);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.leandi.schema;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Ошибка проверки входного XML по XSD-схеме.
+ * Содержит все найденные нарушения с указанием строки и столбца.
+ */
+@Getter
+public class SchemaValidationException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Нарушения в порядке их обнаружения.
+     */
+    private final List<Violation> violations;
+
+    public SchemaValidationException(List<Violation> violations, Throwable cause) {
+        super("XML не соответствует XSD-схеме: " + violations.stream()
+                .map(Violation::toString)
+                .collect(Collectors.joining("; ")), cause);
+        this.violations = Collections.unmodifiableList(violations);
+    }
+
+    /**
+     * Нарушение XSD-схемы.
+     */
+    @Getter
+    public static class Violation {
+
+        /**
+         * Номер строки либо -1, если положение неизвестно.
+         */
+        private final int line;
+
+        /**
+         * Номер столбца либо -1, если положение неизвестно.
+         */
+        private final int column;
+
+        private final String message;
+
+        public Violation(int line, int column, String message) {
+            this.line = line;
+            this.column = column;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + line + ":" + column + "] " + message;
+        }
+    }
+}
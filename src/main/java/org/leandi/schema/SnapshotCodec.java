@@ -0,0 +1,649 @@
+package org.leandi.schema;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Двоичный формат снимка моделей Domain, Project и Deploy.
+ * <p>
+ * Снимок — заголовок (сигнатура и версия формата) и последовательность секций.
+ * Секция — тег, длина и содержимое, поэтому ненужную или неизвестную секцию можно пропустить,
+ * не разбирая её. Содержимое секции — поля объектов сгенерированных классов в фиксированном
+ * порядке: сначала поля суперкласса, затем собственные поля по имени.
+ * <p>
+ * Строки (мнемоники, дескрипторы, uid) пишутся через таблицу строк секции: повторная строка
+ * кодируется номером в таблице. Целые числа, в том числе id значений кнотов, пишутся
+ * в zigzag-varint. При изменении сгенерированных классов версию формата нужно увеличить.
+ */
+final class SnapshotCodec {
+
+    static final int SECTION_DOMAIN = 1;
+    static final int SECTION_PROJECT = 2;
+    static final int SECTION_DEPLOY = 3;
+    /**
+     * Номер последней записи журнала изменений, учтённой в снимке, см. {@link MutationJournal}.
+     */
+    static final int SECTION_JOURNAL = 4;
+
+    private static final byte[] MAGIC = {'L', 'S', 'N', 'P'};
+    private static final int VERSION = 1;
+    private static final int END = 0;
+
+    // Кодирование ссылок на строки: 0 — null, 1 — новая строка, далее — номер в таблице + 2.
+    private static final int STRING_NULL = 0;
+    private static final int STRING_NEW = 1;
+    private static final int STRING_REF = 2;
+
+    // Кодирование вложенных объектов.
+    private static final int OBJECT_NULL = 0;
+    private static final int OBJECT_PRESENT = 1;
+
+    private static final Map<Class<?>, ClassCodec> CLASS_CODECS = new ConcurrentHashMap<>();
+
+    private static final DatatypeFactory DATATYPE_FACTORY = createDatatypeFactory();
+
+    private SnapshotCodec() {
+    }
+
+    private static DatatypeFactory createDatatypeFactory() {
+        try {
+            return DatatypeFactory.newInstance();
+        } catch (DatatypeConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Запись снимка.
+     *
+     * @param out      поток для записи.
+     * @param sections содержимое секций по тегам в порядке записи.
+     * @throws IOException ошибка записи.
+     */
+    static void write(OutputStream out, Map<Integer, byte[]> sections) throws IOException {
+        Output header = new Output();
+        header.bytes(MAGIC, 0, MAGIC.length);
+        header.varint(VERSION);
+        header.writeTo(out);
+        for (Map.Entry<Integer, byte[]> section : sections.entrySet()) {
+            Output sectionHeader = new Output();
+            sectionHeader.varint(section.getKey());
+            sectionHeader.varint(section.getValue().length);
+            sectionHeader.writeTo(out);
+            out.write(section.getValue());
+        }
+        out.write(END);
+    }
+
+    /**
+     * Чтение снимка. Секции с тегами, не входящими в {@code tags}, пропускаются без разбора.
+     *
+     * @param in   поток для чтения.
+     * @param tags теги нужных секций.
+     * @return содержимое прочитанных секций по тегам.
+     * @throws IOException ошибка чтения либо неверный формат снимка.
+     */
+    static Map<Integer, byte[]> read(InputStream in, int... tags) throws IOException {
+        byte[] magic = readFully(in, MAGIC.length);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Поток не является снимком схемы.");
+        }
+        int version = readVarint(in);
+        if (version != VERSION) {
+            throw new IOException("Неподдерживаемая версия снимка: " + version);
+        }
+        Map<Integer, byte[]> sections = new LinkedHashMap<>();
+        for (int tag = readVarint(in); tag != END; tag = readVarint(in)) {
+            int length = readVarint(in);
+            int current = tag;
+            if (Arrays.stream(tags).anyMatch(wanted -> wanted == current)) {
+                sections.put(tag, readFully(in, length));
+            } else {
+                skipFully(in, length);
+            }
+        }
+        return sections;
+    }
+
+    /**
+     * Кодирование объекта сгенерированного класса в содержимое секции.
+     *
+     * @param model объект модели.
+     * @return содержимое секции.
+     */
+    static byte[] encode(Object model) {
+        Output out = new Output();
+        writeObject(out, model, model.getClass());
+        return out.toByteArray();
+    }
+
+    /**
+     * Декодирование содержимого секции.
+     *
+     * @param payload содержимое секции.
+     * @param type    класс модели.
+     * @return объект модели.
+     */
+    static <T> T decode(byte[] payload, Class<T> type) {
+        Input in = new Input(payload);
+        T model = type.cast(readObject(in, type));
+        if (in.position != payload.length) {
+            throw new IllegalArgumentException("Неверный формат снимка: лишние данные в секции " + type.getSimpleName());
+        }
+        return model;
+    }
+
+    /**
+     * Глубокая копия объекта модели через двоичный формат.
+     *
+     * @param model объект модели.
+     * @return независимая копия.
+     */
+    static <T> T copy(T model) {
+        @SuppressWarnings("unchecked")
+        Class<T> type = (Class<T>) model.getClass();
+        return decode(encode(model), type);
+    }
+
+    /**
+     * Копия объекта модели, в которой часть полей не копируется, а получает готовые значения.
+     * Остальные поля копируются глубоко.
+     *
+     * @param model  объект модели.
+     * @param fields значения полей по имени поля класса.
+     * @return копия.
+     */
+    static <T> T copyWith(T model, Map<String, ?> fields) {
+        ClassCodec codec = classCodec(model.getClass());
+        try {
+            Output out = new Output();
+            for (FieldCodec field : codec.fields) {
+                if (!fields.containsKey(field.field.getName())) {
+                    field.valueCodec.write(out, field.field.get(model));
+                }
+            }
+            Input in = new Input(out.toByteArray());
+            @SuppressWarnings("unchecked")
+            T copy = (T) codec.constructor.newInstance();
+            for (FieldCodec field : codec.fields) {
+                String name = field.field.getName();
+                field.field.set(copy, fields.containsKey(name) ? fields.get(name) : field.valueCodec.read(in));
+            }
+            return copy;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeObject(Output out, Object value, Class<?> declared) {
+        if (value == null) {
+            out.varint(OBJECT_NULL);
+            return;
+        }
+        if (value.getClass() != declared) {
+            throw new IllegalStateException("Неподдерживаемый подтип " + value.getClass().getName()
+                    + " для " + declared.getName());
+        }
+        out.varint(OBJECT_PRESENT);
+        ClassCodec codec = classCodec(declared);
+        try {
+            for (FieldCodec field : codec.fields) {
+                field.valueCodec.write(out, field.field.get(value));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object readObject(Input in, Class<?> declared) {
+        int marker = in.varint();
+        if (marker == OBJECT_NULL) {
+            return null;
+        }
+        if (marker != OBJECT_PRESENT) {
+            throw new IllegalArgumentException("Неверный формат снимка: маркер объекта " + marker);
+        }
+        ClassCodec codec = classCodec(declared);
+        try {
+            Object value = codec.constructor.newInstance();
+            for (FieldCodec field : codec.fields) {
+                field.field.set(value, field.valueCodec.read(in));
+            }
+            return value;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ClassCodec classCodec(Class<?> type) {
+        ClassCodec codec = CLASS_CODECS.get(type);
+        if (codec == null) {
+            codec = new ClassCodec(type);
+            CLASS_CODECS.putIfAbsent(type, codec);
+        }
+        return codec;
+    }
+
+    /**
+     * Описание полей класса модели. Строится один раз на класс.
+     */
+    private static final class ClassCodec {
+
+        private final Constructor<?> constructor;
+        private final List<FieldCodec> fields = new ArrayList<>();
+
+        ClassCodec(Class<?> type) {
+            try {
+                constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("У класса " + type.getName() + " нет конструктора без параметров.", e);
+            }
+            List<Class<?>> hierarchy = new ArrayList<>();
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                hierarchy.add(0, current);
+            }
+            for (Class<?> current : hierarchy) {
+                Field[] declared = current.getDeclaredFields();
+                Arrays.sort(declared, Comparator.comparing(Field::getName));
+                for (Field field : declared) {
+                    if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(new FieldCodec(field, valueCodec(field.getGenericType())));
+                }
+            }
+        }
+    }
+
+    private static final class FieldCodec {
+
+        private final Field field;
+        private final ValueCodec valueCodec;
+
+        FieldCodec(Field field, ValueCodec valueCodec) {
+            this.field = field;
+            this.valueCodec = valueCodec;
+        }
+    }
+
+    private interface ValueCodec {
+
+        void write(Output out, Object value);
+
+        Object read(Input in);
+    }
+
+    private static ValueCodec valueCodec(Type type) {
+        if (type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == List.class) {
+            return new ListCodec(valueCodec(((ParameterizedType) type).getActualTypeArguments()[0]));
+        }
+        if (!(type instanceof Class)) {
+            throw new IllegalStateException("Неподдерживаемый тип поля " + type.getTypeName());
+        }
+        Class<?> raw = (Class<?>) type;
+        if (raw == String.class) {
+            return new ValueCodec() {
+                @Override
+                public void write(Output out, Object value) {
+                    out.string((String) value);
+                }
+
+                @Override
+                public Object read(Input in) {
+                    return in.string();
+                }
+            };
+        }
+        if (raw == long.class || raw == Long.class || raw == int.class || raw == Integer.class) {
+            return new NumberCodec(raw);
+        }
+        if (raw == boolean.class || raw == Boolean.class) {
+            boolean primitive = raw.isPrimitive();
+            return new ValueCodec() {
+                @Override
+                public void write(Output out, Object value) {
+                    out.varint(value == null ? 0 : (Boolean) value ? 2 : 1);
+                }
+
+                @Override
+                public Object read(Input in) {
+                    int code = in.varint();
+                    return code == 0 ? (primitive ? Boolean.FALSE : null) : Boolean.valueOf(code == 2);
+                }
+            };
+        }
+        if (raw == double.class || raw == Double.class) {
+            boolean primitive = raw.isPrimitive();
+            return new ValueCodec() {
+                @Override
+                public void write(Output out, Object value) {
+                    if (value == null) {
+                        out.varint(0);
+                        return;
+                    }
+                    out.varint(1);
+                    out.fixed64(Double.doubleToRawLongBits((Double) value));
+                }
+
+                @Override
+                public Object read(Input in) {
+                    return in.varint() == 0 ? (primitive ? Double.valueOf(0) : null) : Double.longBitsToDouble(in.fixed64());
+                }
+            };
+        }
+        if (raw == XMLGregorianCalendar.class) {
+            return new ValueCodec() {
+                @Override
+                public void write(Output out, Object value) {
+                    out.string(value != null ? ((XMLGregorianCalendar) value).toXMLFormat() : null);
+                }
+
+                @Override
+                public Object read(Input in) {
+                    String lexical = in.string();
+                    return lexical != null ? DATATYPE_FACTORY.newXMLGregorianCalendar(lexical) : null;
+                }
+            };
+        }
+        if (raw.isEnum()) {
+            Object[] constants = raw.getEnumConstants();
+            return new ValueCodec() {
+                @Override
+                public void write(Output out, Object value) {
+                    out.varint(value == null ? 0 : ((Enum<?>) value).ordinal() + 1);
+                }
+
+                @Override
+                public Object read(Input in) {
+                    int code = in.varint();
+                    if (code > constants.length) {
+                        throw new IllegalArgumentException("Неверный формат снимка: значение " + code + " для " + raw.getName());
+                    }
+                    return code == 0 ? null : constants[code - 1];
+                }
+            };
+        }
+        if (raw.getPackageName().startsWith("org.leandi.schema")) {
+            return new ValueCodec() {
+                @Override
+                public void write(Output out, Object value) {
+                    writeObject(out, value, raw);
+                }
+
+                @Override
+                public Object read(Input in) {
+                    return readObject(in, raw);
+                }
+            };
+        }
+        throw new IllegalStateException("Неподдерживаемый тип поля " + raw.getName());
+    }
+
+    /**
+     * Целые числа в zigzag-varint. Для обёрток null кодируется отдельным признаком.
+     */
+    private static final class NumberCodec implements ValueCodec {
+
+        private final Class<?> type;
+        private final boolean primitive;
+
+        NumberCodec(Class<?> type) {
+            this.type = type;
+            this.primitive = type.isPrimitive();
+        }
+
+        @Override
+        public void write(Output out, Object value) {
+            if (!primitive) {
+                out.varint(value == null ? 0 : 1);
+                if (value == null) {
+                    return;
+                }
+            }
+            out.zigzag(((Number) value).longValue());
+        }
+
+        @Override
+        public Object read(Input in) {
+            if (!primitive && in.varint() == 0) {
+                return null;
+            }
+            long value = in.zigzag();
+            return type == long.class || type == Long.class ? (Object) value : (Object) Math.toIntExact(value);
+        }
+    }
+
+    /**
+     * Списки: 0 — список не создан, иначе размер + 1 и элементы.
+     */
+    private static final class ListCodec implements ValueCodec {
+
+        private final ValueCodec elementCodec;
+
+        ListCodec(ValueCodec elementCodec) {
+            this.elementCodec = elementCodec;
+        }
+
+        @Override
+        public void write(Output out, Object value) {
+            if (value == null) {
+                out.varint(0);
+                return;
+            }
+            List<?> list = (List<?>) value;
+            out.varint(list.size() + 1);
+            for (Object element : list) {
+                elementCodec.write(out, element);
+            }
+        }
+
+        @Override
+        public Object read(Input in) {
+            int code = in.varint();
+            if (code == 0) {
+                return null;
+            }
+            List<Object> list = new ArrayList<>(code - 1);
+            for (int i = 0; i < code - 1; i++) {
+                list.add(elementCodec.read(in));
+            }
+            return list;
+        }
+    }
+
+    /**
+     * Буфер записи секции с таблицей строк.
+     */
+    private static final class Output {
+
+        private byte[] buffer = new byte[256];
+        private int size;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+
+        void varint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void zigzag(long value) {
+            varint((value << 1) ^ (value >> 63));
+        }
+
+        void fixed64(long value) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                buffer[size++] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        void bytes(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        void string(String value) {
+            if (value == null) {
+                varint(STRING_NULL);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                varint(STRING_REF + index);
+                return;
+            }
+            strings.put(value, strings.size());
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            varint(STRING_NEW);
+            varint(utf8.length);
+            bytes(utf8, 0, utf8.length);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(buffer, 0, size);
+        }
+    }
+
+    /**
+     * Чтение секции с таблицей строк.
+     */
+    private static final class Input {
+
+        private final byte[] buffer;
+        private int position;
+        private final List<String> strings = new ArrayList<>();
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        private byte next() {
+            if (position >= buffer.length) {
+                throw new IllegalArgumentException("Неверный формат снимка: неожиданный конец секции.");
+            }
+            return buffer[position++];
+        }
+
+        long varintLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = next();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Неверный формат снимка: слишком длинное число.");
+        }
+
+        int varint() {
+            return Math.toIntExact(varintLong());
+        }
+
+        long zigzag() {
+            long value = varintLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long fixed64() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value |= (long) (next() & 0xFF) << (8 * i);
+            }
+            return value;
+        }
+
+        String string() {
+            int code = varint();
+            if (code == STRING_NULL) {
+                return null;
+            }
+            if (code == STRING_NEW) {
+                int length = varint();
+                if (length < 0 || length > buffer.length - position) {
+                    throw new IllegalArgumentException("Неверный формат снимка: длина строки " + length);
+                }
+                String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+                position += length;
+                strings.add(value);
+                return value;
+            }
+            int index = code - STRING_REF;
+            if (index >= strings.size()) {
+                throw new IllegalArgumentException("Неверный формат снимка: ссылка на строку " + index);
+            }
+            return strings.get(index);
+        }
+    }
+
+    private static int readVarint(InputStream in) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Неожиданный конец снимка.");
+            }
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Неверный формат снимка: слишком длинное число.");
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) {
+            throw new EOFException("Неожиданный конец снимка.");
+        }
+        return bytes;
+    }
+
+    private static void skipFully(InputStream in, long length) throws IOException {
+        while (length > 0) {
+            long skipped = in.skip(length);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Неожиданный конец снимка.");
+                }
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.leandi.schema;
+
+import org.leandi.schema.deploy.Deploy;
+import org.leandi.schema.domain.Domain;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Построение неизменяемых снимков {@link SchemaSnapshot} копированием при записи.
+ * <p>
+ * Списки узлов разделов (анкеры, таи, домены проекта, хосты и т.д.) копируются по узлам.
+ * Раздел, не изменявшийся со времени прошлого снимка, берётся из него целиком. В изменённом разделе
+ * копируются только новые узлы и узлы, изменённые на месте, остальные узлы берутся из прошлого снимка.
+ * Это возможно, если раздел менялся заменой, добавлением и удалением узлов ({@link JsonCache#nodesChanged}),
+ * а изменённые на месте узлы сообщены через {@link #touched(Object)}. Иначе изменённый раздел копируется целиком.
+ * Оболочки Domain, Project и Deploy с полями вне разделов копируются, если изменился хотя бы один их раздел.
+ */
+final class SnapshotPublisher {
+
+    /**
+     * Раздел модели: поле со списком узлов.
+     */
+    private static final class ListField<M> {
+        private final JsonSection section;
+        private final String field;
+        private final Function<M, List<?>> nodes;
+
+        private ListField(JsonSection section, String field, Function<M, List<?>> nodes) {
+            this.section = section;
+            this.field = field;
+            this.nodes = nodes;
+        }
+    }
+
+    private static final List<ListField<Domain>> DOMAIN_FIELDS = List.of(
+            new ListField<>(JsonSection.KNOTS, "knot", Domain::getKnot),
+            new ListField<>(JsonSection.ANCHORS, "anchor", Domain::getAnchor),
+            new ListField<>(JsonSection.TX_ANCHORS, "txAnchor", Domain::getTxAnchor),
+            new ListField<>(JsonSection.CD_ANCHORS, "cdAnchor", Domain::getCdAnchor),
+            new ListField<>(JsonSection.TIES, "tie", Domain::getTie),
+            new ListField<>(JsonSection.AREAS, "area", Domain::getArea),
+            new ListField<>(JsonSection.GROUPS, "group", Domain::getGroup),
+            new ListField<>(JsonSection.PROPERTIES, "properties", Domain::getProperties));
+    private static final List<ListField<Project>> PROJECT_FIELDS = List.of(
+            new ListField<>(JsonSection.DOMAINS, "domain", Project::getDomain),
+            new ListField<>(JsonSection.CONNEXIONS, "connexions", Project::getConnexions));
+    private static final List<ListField<Deploy>> DEPLOY_FIELDS = List.of(
+            new ListField<>(JsonSection.DB_HOSTS, "dbHost", Deploy::getDbHost),
+            new ListField<>(JsonSection.FS_HOSTS, "fsHost", Deploy::getFsHost));
+
+    private static final JsonSection[] SECTIONS = JsonSection.values();
+
+    private final JsonCache jsonCache;
+
+    /**
+     * Копии узлов прошлого снимка по исходным узлам, по разделам.
+     */
+    private final Map<JsonSection, Map<Object, Object>> copies = new EnumMap<>(JsonSection.class);
+    private final Map<JsonSection, List<Object>> frozen = new EnumMap<>(JsonSection.class);
+    private final Set<Object> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final long[] versions = new long[SECTIONS.length];
+    private final long[] inPlaceVersions = new long[SECTIONS.length];
+
+    private Domain domain;
+    private Project project;
+    private Deploy deploy;
+    private SchemaSnapshot snapshot;
+
+    SnapshotPublisher(JsonCache jsonCache) {
+        this.jsonCache = jsonCache;
+    }
+
+    /**
+     * Учёт узла раздела, изменённого на месте.
+     */
+    void touched(Object node) {
+        touched.add(node);
+    }
+
+    /**
+     * Снимок текущего состояния. Если модели не менялись с прошлого снимка, возвращается он же.
+     *
+     * @return снимок.
+     */
+    SchemaSnapshot publish(Domain liveDomain, Project liveProject, Deploy liveDeploy) {
+        boolean[] changed = new boolean[SECTIONS.length];
+        boolean any = snapshot == null;
+        for (JsonSection section : SECTIONS) {
+            int ordinal = section.ordinal();
+            changed[ordinal] = snapshot == null || versions[ordinal] != jsonCache.version(section)
+                    || inPlaceVersions[ordinal] != jsonCache.inPlaceVersion(section);
+            any |= changed[ordinal];
+        }
+        any |= liveDomain != domain || liveProject != project || liveDeploy != deploy;
+        if (!any) {
+            touched.clear();
+            return snapshot;
+        }
+        SchemaSnapshot previous = snapshot;
+        XMLGregorianCalendar now = now();
+        Domain frozenDomain = freeze(liveDomain, domain, previous == null ? null : previous.getDomain(), DOMAIN_FIELDS, changed, now);
+        Project frozenProject = freeze(liveProject, project, previous == null ? null : previous.getProject(), PROJECT_FIELDS, changed, now);
+        Deploy frozenDeploy = freeze(liveDeploy, deploy, previous == null ? null : previous.getDeploy(), DEPLOY_FIELDS, changed, now);
+        for (JsonSection section : SECTIONS) {
+            versions[section.ordinal()] = jsonCache.version(section);
+            inPlaceVersions[section.ordinal()] = jsonCache.inPlaceVersion(section);
+        }
+        domain = liveDomain;
+        project = liveProject;
+        deploy = liveDeploy;
+        touched.clear();
+        snapshot = new SchemaSnapshot(previous == null ? 1 : previous.getVersion() + 1, frozenDomain, frozenProject, frozenDeploy);
+        return snapshot;
+    }
+
+    // Оболочка модели копируется, только если модель заменена или изменился один из её разделов.
+    private <M> M freeze(M live, M previousLive, M previousFrozen, List<ListField<M>> fields, boolean[] changed,
+                         XMLGregorianCalendar now) {
+        boolean replaced = live != previousLive;
+        if (!replaced && previousFrozen != null && fields.stream().noneMatch(field -> changed[field.section.ordinal()])) {
+            return previousFrozen;
+        }
+        Map<String, Object> lists = new HashMap<>();
+        for (ListField<M> field : fields) {
+            List<Object> nodes = frozen.get(field.section);
+            if (nodes == null || replaced || changed[field.section.ordinal()]) {
+                nodes = freeze(field.section, field.nodes.apply(live));
+                frozen.put(field.section, nodes);
+            }
+            lists.put(field.field, nodes);
+        }
+        lists.put("dateTime", now);
+        return SnapshotCodec.copyWith(live, lists);
+    }
+
+    // Копии узлов прошлого снимка переиспользуются, если раздел менялся только по узлам и узел не изменён на месте.
+    private List<Object> freeze(JsonSection section, List<?> nodes) {
+        int ordinal = section.ordinal();
+        Map<Object, Object> previous = inPlaceVersions[ordinal] == jsonCache.inPlaceVersion(section)
+                ? copies.get(section)
+                : null;
+        Map<Object, Object> current = new IdentityHashMap<>(nodes.size());
+        List<Object> result = new ArrayList<>(nodes.size());
+        for (Object node : nodes) {
+            Object copy = current.get(node);
+            if (copy == null && previous != null && !touched.contains(node)) {
+                copy = previous.get(node);
+            }
+            if (copy == null) {
+                copy = SnapshotCodec.copy(node);
+            }
+            current.put(node, copy);
+            result.add(copy);
+        }
+        copies.put(section, current);
+        return Collections.unmodifiableList(result);
+    }
+
+    private static XMLGregorianCalendar now() {
+        try {
+            return DatatypeFactory.newInstance().newXMLGregorianCalendar(new GregorianCalendar());
+        } catch (DatatypeConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.leandi.schema;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Отказ в изменении узлов: узлы изменены после того, как были прочитаны с ожидаемыми версиями.
+ * Модель при этом не изменена.
+ */
+@Getter
+public class VersionConflictException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Раздел узлов.
+     */
+    private final JsonSection section;
+
+    /**
+     * Текущие версии узлов, не совпавшие с ожидаемыми, по uid.
+     */
+    private final Map<String, Long> actualVersions;
+
+    public VersionConflictException(JsonSection section, Map<String, Long> actualVersions) {
+        super("Узлы раздела " + section.getField() + " изменены другим сеансом: " + actualVersions.entrySet().stream()
+                .map(version -> version.getKey() + " (версия " + version.getValue() + ")")
+                .collect(Collectors.joining(", ")));
+        this.section = section;
+        this.actualVersions = Collections.unmodifiableMap(new LinkedHashMap<>(actualVersions));
+    }
+}
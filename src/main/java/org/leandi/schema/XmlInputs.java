@@ -0,0 +1,97 @@
+package org.leandi.schema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Открытие входных XML-файлов.
+ * Файлы отображаются в память через FileChannel.map и читаются без копирования в кучу.
+ * Сжатые gzip файлы и потоки распознаются по сигнатуре и распаковываются на лету.
+ */
+final class XmlInputs {
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private XmlInputs() {
+    }
+
+    /**
+     * Открытие входа, заданного потоком или путём к файлу. Поток имеет приоритет.
+     *
+     * @param xml  поток с XML.
+     * @param path путь к XML-файлу.
+     * @return поток с распакованным XML либо {@code null}, если вход не задан.
+     * @throws IOException ошибка чтения.
+     */
+    static InputStream open(InputStream xml, Path path) throws IOException {
+        if (xml != null) {
+            return decompress(xml);
+        }
+        if (path != null) {
+            return open(path);
+        }
+        return null;
+    }
+
+    /**
+     * Открытие файла через отображение в память.
+     *
+     * @param path путь к файлу.
+     * @return поток поверх отображённого файла.
+     * @throws IOException ошибка чтения.
+     */
+    static InputStream open(Path path) throws IOException {
+        return decompress(new ByteBufferInputStream(map(path)));
+    }
+
+    /**
+     * Содержимое потока целиком. Для потока поверх отображённого файла данные не копируются.
+     *
+     * @param xml поток с XML.
+     * @return содержимое потока.
+     * @throws IOException ошибка чтения.
+     */
+    static ByteBuffer content(InputStream xml) throws IOException {
+        if (xml instanceof ByteBufferInputStream) {
+            return ((ByteBufferInputStream) xml).remaining();
+        }
+        return ByteBuffer.wrap(xml.readAllBytes());
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Файл " + path + " слишком велик для отображения в память.");
+            }
+            // Отображение остаётся действительным и после закрытия канала.
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    // Распаковка потока, если он начинается с сигнатуры gzip.
+    private static InputStream decompress(InputStream xml) throws IOException {
+        if (xml instanceof ByteBufferInputStream) {
+            ByteBuffer buffer = ((ByteBufferInputStream) xml).remaining();
+            boolean gzip = buffer.remaining() >= 2 && isGzip(buffer.get(buffer.position()), buffer.get(buffer.position() + 1));
+            return gzip ? new GZIPInputStream(xml, GZIP_BUFFER_SIZE) : xml;
+        }
+        PushbackInputStream in = new PushbackInputStream(xml, 2);
+        byte[] signature = new byte[2];
+        int read = in.readNBytes(signature, 0, 2);
+        if (read > 0) {
+            in.unread(signature, 0, read);
+        }
+        return read == 2 && isGzip(signature[0], signature[1]) ? new GZIPInputStream(in, GZIP_BUFFER_SIZE) : in;
+    }
+
+    private static boolean isGzip(byte first, byte second) {
+        return (first & 0xFF) == 0x1F && (second & 0xFF) == 0x8B;
+    }
+}
@@ -0,0 +1,73 @@
+package org.leandi.schema;
+
+import org.leandi.schema.domain.Anchor;
+import org.leandi.schema.domain.Domain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Удаление 5 000 анкеров из домена с 20 000 анкеров: пакетное удаление с уплотнением списка за один проход
+ * и поочерёдное удаление каждого анкера из списка.
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkDeleteBenchmark {
+
+    private static final int ANCHOR_COUNT = 20_000;
+    private static final int DELETE_STEP = 4;
+
+    private SchemaUtils utils;
+    private List<String> uids;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        Domain domain = new Domain();
+        uids = new ArrayList<>();
+        for (int i = 0; i < ANCHOR_COUNT; i++) {
+            Anchor anchor = new Anchor();
+            anchor.setMnemonic("A" + i);
+            anchor.setUid("anchor-" + i);
+            domain.getAnchor().add(anchor);
+            if (i % DELETE_STEP == 0) {
+                uids.add(anchor.getUid());
+            }
+        }
+        utils = SchemaUtils.builder().domain(domain).build();
+    }
+
+    @Benchmark
+    public int bulk() {
+        return utils.deleteNodes(JsonSection.ANCHORS, uids, false).size();
+    }
+
+    @Benchmark
+    public int oneByOne() {
+        List<Anchor> anchors = utils.getDomain().getAnchor();
+        int removed = 0;
+        for (String uid : uids) {
+            for (int i = 0; i < anchors.size(); i++) {
+                if (uid.equals(anchors.get(i).getUid())) {
+                    anchors.remove(i);
+                    removed++;
+                    break;
+                }
+            }
+        }
+        return removed;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(BulkDeleteBenchmark.class.getSimpleName()).build()).run();
+    }
+}
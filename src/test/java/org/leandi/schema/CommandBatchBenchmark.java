@@ -0,0 +1,89 @@
+package org.leandi.schema;
+
+import org.leandi.schema.domain.Anchor;
+import org.leandi.schema.domain.AnchorRole;
+import org.leandi.schema.domain.Attribute;
+import org.leandi.schema.domain.Domain;
+import org.leandi.schema.domain.Tie;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сохранение из моделера в домене с 2 000 анкеров и 5 000 таев: 6 патчей анкеров и 6 обновлений таев
+ * пакетом команд с откатом и той же последовательностью отдельных вызовов.
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandBatchBenchmark {
+
+    private static final int ANCHOR_COUNT = 2_000;
+    private static final int TIE_COUNT = 5_000;
+    private static final int ATTRIBUTES_PER_ANCHOR = 5;
+    private static final int EDITS = 6;
+
+    private SchemaUtils utils;
+    private final List<String> anchorPatches = new ArrayList<>();
+    private final List<String> tieUpdates = new ArrayList<>();
+    private final List<SchemaCommand> commands = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        Domain domain = new Domain();
+        for (int i = 0; i < ANCHOR_COUNT; i++) {
+            Anchor anchor = new Anchor();
+            anchor.setMnemonic("A" + i);
+            anchor.setUid("anchor-" + i);
+            for (int j = 0; j < ATTRIBUTES_PER_ANCHOR; j++) {
+                Attribute attribute = new Attribute();
+                attribute.setMnemonic("AT" + j);
+                attribute.setUid("attribute-" + i + "-" + j);
+                anchor.getAttribute().add(attribute);
+            }
+            domain.getAnchor().add(anchor);
+        }
+        for (int i = 0; i < TIE_COUNT; i++) {
+            Tie tie = new Tie();
+            tie.setUid("tie-" + i);
+            domain.getTie().add(tie);
+        }
+        utils = SchemaUtils.builder().domain(domain).build();
+        for (int i = 0; i < EDITS; i++) {
+            anchorPatches.add("[{\"uid\": \"anchor-" + i * 300 + "\", \"layout\": {\"x\": " + i + ", \"y\": " + i + "}}]");
+            tieUpdates.add("[{\"uid\": \"tie-" + i * 800 + "\", \"anchorRole\": [{\"type\": \"A" + i + "\"}, {\"type\": \"A"
+                    + (i + 1) + "\"}]}]");
+        }
+        for (int i = 0; i < EDITS; i++) {
+            commands.add(SchemaCommand.patch(JsonSection.ANCHORS, anchorPatches.get(i)));
+            commands.add(SchemaCommand.update(JsonSection.TIES, tieUpdates.get(i)));
+        }
+    }
+
+    @Benchmark
+    public int batch() {
+        return utils.apply(commands).size();
+    }
+
+    @Benchmark
+    public int separateCalls() {
+        for (int i = 0; i < EDITS; i++) {
+            utils.patchAnchor(anchorPatches.get(i));
+            utils.updateTie(tieUpdates.get(i));
+        }
+        return utils.getDomain().getTie().size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CommandBatchBenchmark.class.getSimpleName()).build()).run();
+    }
+}
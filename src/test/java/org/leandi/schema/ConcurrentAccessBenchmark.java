@@ -0,0 +1,109 @@
+package org.leandi.schema;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.leandi.schema.domain.Anchor;
+import org.leandi.schema.domain.AnchorRole;
+import org.leandi.schema.domain.Attribute;
+import org.leandi.schema.domain.Domain;
+import org.leandi.schema.domain.Tie;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Работа 8 потоков с доменом из 1 000 анкеров и 2 000 таев: 95% чтений (поиск анкера по мнемонике,
+ * поиск таев анкера, json анкеров) и 5% патчей анкеров. Экземпляр в конкурентном режиме
+ * сравнивается с обычным экземпляром, доступ к которому закрыт одним общим мьютексом.
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ConcurrentAccessBenchmark {
+
+    private static final int ANCHOR_COUNT = 1_000;
+    private static final int TIE_COUNT = 2_000;
+    private static final int ATTRIBUTES_PER_ANCHOR = 3;
+    private static final int WRITE_PERCENT = 5;
+
+    private SchemaUtils concurrent;
+    private SchemaUtils mutexed;
+
+    @Setup
+    public void setUp() {
+        concurrent = SchemaUtils.builder().domain(domain()).concurrent(true).build();
+        mutexed = SchemaUtils.builder().domain(domain()).build();
+    }
+
+    private static Domain domain() {
+        Domain domain = new Domain();
+        for (int i = 0; i < ANCHOR_COUNT; i++) {
+            Anchor anchor = new Anchor();
+            anchor.setMnemonic("A" + i);
+            anchor.setDescriptor("Anchor" + i);
+            anchor.setUid("anchor-" + i);
+            for (int j = 0; j < ATTRIBUTES_PER_ANCHOR; j++) {
+                Attribute attribute = new Attribute();
+                attribute.setMnemonic("AT" + j);
+                attribute.setUid("attribute-" + i + "-" + j);
+                anchor.getAttribute().add(attribute);
+            }
+            domain.getAnchor().add(anchor);
+        }
+        for (int i = 0; i < TIE_COUNT; i++) {
+            Tie tie = new Tie();
+            tie.setUid("tie-" + i);
+            AnchorRole first = new AnchorRole();
+            first.setType("A" + i % ANCHOR_COUNT);
+            AnchorRole second = new AnchorRole();
+            second.setType("A" + (i + 1) % ANCHOR_COUNT);
+            tie.getAnchorRole().add(first);
+            tie.getAnchorRole().add(second);
+            domain.getTie().add(tie);
+        }
+        return domain;
+    }
+
+    // Одна операция смеси: патч анкера либо одно из трёх чтений.
+    private static Object operation(SchemaUtils utils) throws JsonProcessingException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int anchor = random.nextInt(ANCHOR_COUNT);
+        int kind = random.nextInt(100);
+        if (kind < WRITE_PERCENT) {
+            utils.patchAnchor("[{\"uid\": \"anchor-" + anchor + "\", \"descriptor\": \"Edit" + kind + "\"}]");
+            return null;
+        }
+        switch (kind % 3) {
+            case 0:
+                return utils.lookUpAnchorIndexByMnemonic("A" + anchor);
+            case 1:
+                return utils.lookUpTiesByAnchor("A" + anchor);
+            default:
+                return utils.anchorsAsJson();
+        }
+    }
+
+    @Benchmark
+    public Object stampedLock() throws JsonProcessingException {
+        return operation(concurrent);
+    }
+
+    @Benchmark
+    public Object globalMutex() throws JsonProcessingException {
+        synchronized (mutexed) {
+            return operation(mutexed);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ConcurrentAccessBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,79 @@
+package org.leandi.schema;
+
+import org.leandi.schema.domain.Anchor;
+import org.leandi.schema.domain.Attribute;
+import org.leandi.schema.domain.Domain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Публикация неизменяемого снимка после правки одного анкера в домене из 5 000 анкеров с 5 атрибутами:
+ * снимок копированием при записи ({@link SchemaUtils#snapshot()}) и полная глубокая копия домена после каждой правки.
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CopyOnWriteSnapshotBenchmark {
+
+    private static final int ANCHOR_COUNT = 5_000;
+    private static final int ATTRIBUTES_PER_ANCHOR = 5;
+
+    private SchemaUtils published;
+    private SchemaUtils copied;
+    private int edit;
+
+    @Setup
+    public void setUp() {
+        published = SchemaUtils.builder().domain(domain()).build();
+        copied = SchemaUtils.builder().domain(domain()).build();
+        published.snapshot();
+    }
+
+    private static Domain domain() {
+        Domain domain = new Domain();
+        for (int i = 0; i < ANCHOR_COUNT; i++) {
+            Anchor anchor = new Anchor();
+            anchor.setMnemonic("A" + i);
+            anchor.setDescriptor("Anchor" + i);
+            anchor.setUid("anchor-" + i);
+            for (int j = 0; j < ATTRIBUTES_PER_ANCHOR; j++) {
+                Attribute attribute = new Attribute();
+                attribute.setMnemonic("AT" + j);
+                attribute.setDescriptor("Attribute" + j);
+                attribute.setUid("attribute-" + i + "-" + j);
+                anchor.getAttribute().add(attribute);
+            }
+            domain.getAnchor().add(anchor);
+        }
+        return domain;
+    }
+
+    private String patch() {
+        edit++;
+        return "[{\"uid\": \"anchor-" + edit % ANCHOR_COUNT + "\", \"descriptor\": \"Edit" + edit + "\"}]";
+    }
+
+    @Benchmark
+    public Object copyOnWrite() {
+        published.patchAnchor(patch());
+        return published.snapshot();
+    }
+
+    @Benchmark
+    public Object fullCopy() {
+        copied.patchAnchor(patch());
+        return SnapshotCodec.copy(copied.getDomain());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CopyOnWriteSnapshotBenchmark.class.getSimpleName()).build()).run();
+    }
+}
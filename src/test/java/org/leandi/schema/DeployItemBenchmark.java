@@ -0,0 +1,73 @@
+package org.leandi.schema;
+
+import org.leandi.schema.deploy.DbHost;
+import org.leandi.schema.deploy.DbTypeType;
+import org.leandi.schema.deploy.Deploy;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Размещение и удаление 20 000 элементов деплоя на 500 либо 5 db-хостах по 10 доменов.
+ * На 5 хостах в каждом заполненном домене оказывается по 2 000 элементов.
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeployItemBenchmark {
+
+    private static final int DOMAIN_COUNT = 10;
+    private static final int ITEM_COUNT = 20_000;
+
+    @Param({"500", "5"})
+    private int hostCount;
+
+    private SchemaUtils utils;
+    private String itemsJson;
+
+    @Setup
+    public void setUp() {
+        Deploy deploy = new Deploy();
+        for (int i = 0; i < hostCount; i++) {
+            DbHost dbHost = new DbHost();
+            dbHost.setUid("db-host-" + i);
+            dbHost.setDbName("db" + i);
+            dbHost.setHost("host" + i);
+            dbHost.setUserName("user");
+            dbHost.setDbType(DbTypeType.POSTGRES);
+            dbHost.setPort("5432");
+            deploy.getDbHost().add(dbHost);
+        }
+        utils = SchemaUtils.builder().deploy(deploy).build();
+
+        StringBuilder items = new StringBuilder("[");
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            int host = i % hostCount;
+            items.append(i == 0 ? "" : ",")
+                    .append("{\"shortName\": \"Domain").append(i % DOMAIN_COUNT)
+                    .append("\", \"host\": \"host").append(host)
+                    .append("\", \"dbName\": \"db").append(host)
+                    .append("\", \"userName\": \"user\", \"dbType\": \"POSTGRES\", \"port\": \"5432\", \"fqn\": \"F")
+                    .append(i).append("\"}");
+        }
+        itemsJson = items.append(']').toString();
+    }
+
+    @Benchmark
+    public Deploy addAndDeleteItems() {
+        utils.addDeployItem(itemsJson);
+        utils.deleteDeployItem(itemsJson);
+        return utils.getDeploy();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DeployItemBenchmark.class.getSimpleName()).build()).run();
+    }
+}
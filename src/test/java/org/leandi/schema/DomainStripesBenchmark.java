@@ -0,0 +1,100 @@
+package org.leandi.schema;
+
+import org.leandi.schema.domain.Anchor;
+import org.leandi.schema.domain.Domain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Правка анкеров 8 потоками, каждый в своём домене проекта из 8 доменов по 1 000 анкеров:
+ * блокировки доменов с разбиением на 64 полосы и одна блокировка на весь проект (одна полоса).
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(DomainStripesBenchmark.DOMAIN_COUNT)
+@Fork(1)
+public class DomainStripesBenchmark {
+
+    static final int DOMAIN_COUNT = 8;
+    private static final int ANCHOR_COUNT = 1_000;
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        private final AtomicInteger analysts = new AtomicInteger();
+        private SchemaUtils[] striped;
+        private SchemaUtils[] single;
+
+        @Setup
+        public void setUp() {
+            striped = project(new DomainStripes());
+            single = project(new DomainStripes(1));
+        }
+
+        private static SchemaUtils[] project(DomainStripes stripes) {
+            Project project = new Project();
+            SchemaUtils[] utils = new SchemaUtils[DOMAIN_COUNT];
+            for (int i = 0; i < DOMAIN_COUNT; i++) {
+                Domain domain = domain("D" + i);
+                project.getDomain().add(domain);
+                utils[i] = SchemaUtils.builder().domain(domain).project(project).stripes(stripes).build();
+            }
+            return utils;
+        }
+
+        private static Domain domain(String shortName) {
+            Domain domain = new Domain();
+            domain.setShortName(shortName);
+            for (int i = 0; i < ANCHOR_COUNT; i++) {
+                Anchor anchor = new Anchor();
+                anchor.setMnemonic("A" + i);
+                anchor.setDescriptor("Anchor" + i);
+                anchor.setUid(shortName + "-anchor-" + i);
+                domain.getAnchor().add(anchor);
+            }
+            return domain;
+        }
+    }
+
+    /**
+     * Аналитик: свой домен проекта.
+     */
+    @State(Scope.Thread)
+    public static class Analyst {
+        private int domain;
+        private int edit;
+
+        @Setup
+        public void setUp(Shared shared) {
+            domain = shared.analysts.getAndIncrement() % DOMAIN_COUNT;
+        }
+
+        private String patch() {
+            edit++;
+            return "[{\"uid\": \"D" + domain + "-anchor-" + edit % ANCHOR_COUNT + "\", \"descriptor\": \"Edit" + edit + "\"}]";
+        }
+    }
+
+    @Benchmark
+    public int stripedLocks(Shared shared, Analyst analyst) {
+        shared.striped[analyst.domain].patchAnchor(analyst.patch());
+        return analyst.edit;
+    }
+
+    @Benchmark
+    public int projectLock(Shared shared, Analyst analyst) {
+        shared.single[analyst.domain].patchAnchor(analyst.patch());
+        return analyst.edit;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DomainStripesBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,59 @@
+package org.leandi.schema;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Получение насыщенных групп: 1 000 групп по 20 реквизитов из 5 000, у каждой группы одна подгруппа.
+ * Между вызовами groupsAsJson() изменяется один реквизит.
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroupsBenchmark {
+
+    private static final int GROUP_COUNT = 1_000;
+    private static final int PROPERTY_COUNT = 5_000;
+    private static final int PROPERTIES_IN_GROUP = 20;
+
+    private SchemaUtils utils;
+    private int version;
+
+    @Setup
+    public void setUp() {
+        utils = SchemaUtils.builder().build();
+        for (int i = 0; i < PROPERTY_COUNT; i++) {
+            utils.updateProperty("{\"id\": \"p" + i + "\", \"namep\": \"Property " + i + "\"}");
+        }
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            utils.updateGroup("{\"id\": \"g" + i + "\", \"name\": \"Group " + i + "\"}");
+            StringBuilder elements = new StringBuilder();
+            for (int j = 0; j < PROPERTIES_IN_GROUP; j++) {
+                elements.append(j == 0 ? "" : ",").append("\"p").append((i * PROPERTIES_IN_GROUP + j) % PROPERTY_COUNT).append('"');
+            }
+            utils.addPropertiesToGroup("{\"id\": \"g" + i + "\", \"elements\": [" + elements + "]}");
+        }
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            utils.addGroupsToGroup("{\"id\": \"g" + i + "\", \"elements\": [\"g" + (i + 1) % GROUP_COUNT + "\"]}");
+        }
+    }
+
+    @Benchmark
+    public String groupsAfterPropertyUpdate() throws JsonProcessingException {
+        utils.updateProperty("{\"id\": \"p0\", \"namep\": \"Property 0 v" + version++ + "\"}");
+        return utils.groupsAsJson();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GroupsBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,59 @@
+package org.leandi.schema;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import org.leandi.schema.deploy.Deploy;
+import org.leandi.schema.domain.Domain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость обработки одного запроса: создание SchemaUtils по domain.xml
+ * с JAXB-контекстом на каждый запрос (как было) и с общим контекстом из реестра.
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JaxbContextBenchmark {
+
+    private byte[] domainXml;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream in = JaxbContextBenchmark.class.getResourceAsStream("/domain.xml")) {
+            domainXml = in.readAllBytes();
+        }
+    }
+
+    @Benchmark
+    public Domain contextPerRequest() throws JAXBException {
+        JAXBContext jaxbContext = JAXBContext.newInstance(Project.class, Domain.class, Deploy.class);
+        Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
+        return unmarshaller.unmarshal(new StreamSource(new ByteArrayInputStream(domainXml)), Domain.class).getValue();
+    }
+
+    @Benchmark
+    public Domain sharedContext() {
+        return SchemaUtils.builder()
+                .domainXml(new ByteArrayInputStream(domainXml))
+                .build()
+                .getDomain();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JaxbContextBenchmark.class.getSimpleName()).build()).run();
+    }
+}
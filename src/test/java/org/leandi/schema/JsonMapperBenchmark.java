@@ -0,0 +1,97 @@
+package org.leandi.schema;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.leandi.schema.domain.Anchor;
+import org.leandi.schema.domain.Attribute;
+import org.leandi.schema.domain.Domain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность anchorsAsJson (из кэша и после изменения раздела), проекции анкеров для диаграммы,
+ * потоковой записи анкеров и updateAnchor на домене из 1 000 анкеров с 5 атрибутами: сериализация всего списка
+ * и обновление 100 анкеров одним вызовом.
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonMapperBenchmark {
+
+    private static final int ANCHOR_COUNT = 1_000;
+    private static final int UPDATED_ANCHOR_COUNT = 100;
+    private static final int ATTRIBUTES_PER_ANCHOR = 5;
+
+    private static final NodeQuery DIAGRAM = NodeQuery.builder()
+            .section(JsonSection.ANCHORS)
+            .fields(List.of("uid", "mnemonic", "descriptor", "layout"))
+            .build();
+
+    private SchemaUtils utils;
+    private String updatedAnchors;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        Domain domain = new Domain();
+        for (int i = 0; i < ANCHOR_COUNT; i++) {
+            Anchor anchor = new Anchor();
+            anchor.setMnemonic("A" + i);
+            anchor.setDescriptor("Anchor" + i);
+            anchor.setUid("anchor-" + i);
+            for (int j = 0; j < ATTRIBUTES_PER_ANCHOR; j++) {
+                Attribute attribute = new Attribute();
+                attribute.setMnemonic("AT" + j);
+                attribute.setDescriptor("Attribute" + j);
+                attribute.setUid("attribute-" + i + "-" + j);
+                anchor.getAttribute().add(attribute);
+            }
+            domain.getAnchor().add(anchor);
+        }
+        utils = SchemaUtils.builder().domain(domain).build();
+        SchemaUtils slice = SchemaUtils.builder().domain(new Domain()).build();
+        slice.getDomain().getAnchor().addAll(domain.getAnchor().subList(0, UPDATED_ANCHOR_COUNT));
+        updatedAnchors = slice.anchorsAsJson();
+    }
+
+    @Benchmark
+    public String anchorsAsJson() throws JsonProcessingException {
+        return utils.anchorsAsJson();
+    }
+
+    @Benchmark
+    public String anchorsAsJsonAfterChange() throws JsonProcessingException {
+        // Удаление отсутствующего узла сбрасывает кэш раздела, не меняя сам список.
+        utils.deleteAnchor("missing");
+        return utils.anchorsAsJson();
+    }
+
+    @Benchmark
+    public String diagramProjection() throws JsonProcessingException {
+        return utils.nodesAsJson(DIAGRAM);
+    }
+
+    @Benchmark
+    public void writeAnchors() throws IOException {
+        utils.writeJson(JsonSection.ANCHORS, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public Domain updateAnchor() {
+        utils.updateAnchor(updatedAnchors);
+        return utils.getDomain();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JsonMapperBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,55 @@
+package org.leandi.schema;
+
+import org.leandi.schema.domain.Anchor;
+import org.leandi.schema.domain.Domain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск позиций 10 000 анкеров по мнемонике, как это делает генерация DDL.
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MnemonicIndexBenchmark {
+
+    private static final int ANCHOR_COUNT = 10_000;
+
+    private SchemaUtils utils;
+    private String[] mnemonics;
+
+    @Setup
+    public void setUp() {
+        Domain domain = new Domain();
+        mnemonics = new String[ANCHOR_COUNT];
+        for (int i = 0; i < ANCHOR_COUNT; i++) {
+            Anchor anchor = new Anchor();
+            anchor.setMnemonic("A" + i);
+            anchor.setUid("anchor-" + i);
+            domain.getAnchor().add(anchor);
+            mnemonics[i] = anchor.getMnemonic();
+        }
+        utils = SchemaUtils.builder().domain(domain).build();
+    }
+
+    @Benchmark
+    public long lookUpAllAnchors() {
+        long sum = 0;
+        for (String mnemonic : mnemonics) {
+            sum += utils.lookUpAnchorIndexByMnemonic(mnemonic);
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MnemonicIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,96 @@
+package org.leandi.schema;
+
+import jakarta.xml.bind.JAXBException;
+import org.leandi.schema.domain.Anchor;
+import org.leandi.schema.domain.Attribute;
+import org.leandi.schema.domain.Domain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Сохранение правки одного анкера в домене из 5 000 анкеров с 5 атрибутами:
+ * запись в журнал изменений (с порогом уплотнения 1 МБ) и маршаллинг всего домена после правки.
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MutationJournalBenchmark {
+
+    private static final int ANCHOR_COUNT = 5_000;
+    private static final int ATTRIBUTES_PER_ANCHOR = 5;
+    private static final long COMPACTION_THRESHOLD = 1024 * 1024;
+
+    private SchemaUtils journaled;
+    private SchemaUtils marshalled;
+    private Path directory;
+    private int edit;
+
+    @Setup
+    public void setUp() throws IOException {
+        journaled = SchemaUtils.builder().domain(domain()).build();
+        marshalled = SchemaUtils.builder().domain(domain()).build();
+        directory = Files.createTempDirectory("schema-journal");
+        journaled.attachJournal(directory.resolve("journal"), COMPACTION_THRESHOLD);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journaled.closeJournal();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static Domain domain() {
+        Domain domain = new Domain();
+        for (int i = 0; i < ANCHOR_COUNT; i++) {
+            Anchor anchor = new Anchor();
+            anchor.setMnemonic("A" + i);
+            anchor.setDescriptor("Anchor" + i);
+            anchor.setUid("anchor-" + i);
+            for (int j = 0; j < ATTRIBUTES_PER_ANCHOR; j++) {
+                Attribute attribute = new Attribute();
+                attribute.setMnemonic("AT" + j);
+                attribute.setDescriptor("Attribute" + j);
+                attribute.setUid("attribute-" + i + "-" + j);
+                anchor.getAttribute().add(attribute);
+            }
+            domain.getAnchor().add(anchor);
+        }
+        return domain;
+    }
+
+    private String patch() {
+        edit++;
+        return "[{\"uid\": \"anchor-" + edit % ANCHOR_COUNT + "\", \"descriptor\": \"Edit" + edit + "\"}]";
+    }
+
+    @Benchmark
+    public int journal() {
+        journaled.patchAnchor(patch());
+        return edit;
+    }
+
+    @Benchmark
+    public int marshall() throws JAXBException {
+        marshalled.patchAnchor(patch());
+        return marshalled.marshall().length();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MutationJournalBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,93 @@
+package org.leandi.schema;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.leandi.schema.domain.Anchor;
+import org.leandi.schema.domain.Attribute;
+import org.leandi.schema.domain.Domain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сохранение правки одного анкера с проверкой, что его не изменил другой сеанс, в домене из 5 000 анкеров
+ * с 5 атрибутами: проверка версии узла и сравнение json всех анкеров с прочитанным до правки.
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeVersionBenchmark {
+
+    private static final int ANCHOR_COUNT = 5_000;
+    private static final int ATTRIBUTES_PER_ANCHOR = 5;
+
+    private SchemaUtils versioned;
+    private SchemaUtils compared;
+    private String readJson;
+    private int edit;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        versioned = SchemaUtils.builder().domain(domain()).build();
+        compared = SchemaUtils.builder().domain(domain()).build();
+        readJson = compared.anchorsAsJson();
+    }
+
+    private static Domain domain() {
+        Domain domain = new Domain();
+        for (int i = 0; i < ANCHOR_COUNT; i++) {
+            Anchor anchor = new Anchor();
+            anchor.setMnemonic("A" + i);
+            anchor.setDescriptor("Anchor" + i);
+            anchor.setUid("anchor-" + i);
+            for (int j = 0; j < ATTRIBUTES_PER_ANCHOR; j++) {
+                Attribute attribute = new Attribute();
+                attribute.setMnemonic("AT" + j);
+                attribute.setDescriptor("Attribute" + j);
+                attribute.setUid("attribute-" + i + "-" + j);
+                anchor.getAttribute().add(attribute);
+            }
+            domain.getAnchor().add(anchor);
+        }
+        return domain;
+    }
+
+    private String uid() {
+        edit++;
+        return "anchor-" + edit % ANCHOR_COUNT;
+    }
+
+    private String patch(String uid) {
+        return "[{\"uid\": \"" + uid + "\", \"descriptor\": \"Edit" + edit + "\"}]";
+    }
+
+    @Benchmark
+    public int versionCheck() {
+        String uid = uid();
+        long version = versioned.nodeVersion(JsonSection.ANCHORS, uid);
+        versioned.patchAnchor(patch(uid), Map.of(uid, version));
+        return edit;
+    }
+
+    @Benchmark
+    public int documentComparison() throws JsonProcessingException {
+        String uid = uid();
+        if (!compared.anchorsAsJson().equals(readJson)) {
+            throw new IllegalStateException("Анкеры изменены другим сеансом.");
+        }
+        compared.patchAnchor(patch(uid));
+        readJson = compared.anchorsAsJson();
+        return edit;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(NodeVersionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,127 @@
+package org.leandi.schema;
+
+import org.leandi.schema.domain.Anchor;
+import org.leandi.schema.domain.AnchorRole;
+import org.leandi.schema.domain.Attribute;
+import org.leandi.schema.domain.Domain;
+import org.leandi.schema.domain.Tie;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск атрибутов, ссылающихся на каждый из 100 кнотов, и таев, ссылающихся на каждый из 2 000 анкеров,
+ * в домене с 10 000 атрибутов и 20 000 таев: через обратный индекс и полным обходом домена.
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReferenceIndexBenchmark {
+
+    private static final int KNOT_COUNT = 100;
+    private static final int ANCHOR_COUNT = 2_000;
+    private static final int ATTRIBUTES_PER_ANCHOR = 5;
+    private static final int TIE_COUNT = 20_000;
+
+    private Domain domain;
+    private SchemaUtils utils;
+
+    @Setup
+    public void setUp() {
+        domain = new Domain();
+        for (int i = 0; i < ANCHOR_COUNT; i++) {
+            Anchor anchor = new Anchor();
+            anchor.setMnemonic("A" + i);
+            anchor.setUid("anchor-" + i);
+            for (int j = 0; j < ATTRIBUTES_PER_ANCHOR; j++) {
+                Attribute attribute = new Attribute();
+                attribute.setMnemonic("AT" + j);
+                attribute.setKnotRange("K" + (i * ATTRIBUTES_PER_ANCHOR + j) % KNOT_COUNT);
+                anchor.getAttribute().add(attribute);
+            }
+            domain.getAnchor().add(anchor);
+        }
+        for (int i = 0; i < TIE_COUNT; i++) {
+            Tie tie = new Tie();
+            tie.setUid("tie-" + i);
+            tie.getAnchorRole().add(anchorRole("A" + i % ANCHOR_COUNT));
+            tie.getAnchorRole().add(anchorRole("A" + (i + 1) % ANCHOR_COUNT));
+            domain.getTie().add(tie);
+        }
+        utils = SchemaUtils.builder().domain(domain).build();
+    }
+
+    private static AnchorRole anchorRole(String type) {
+        AnchorRole anchorRole = new AnchorRole();
+        anchorRole.setType(type);
+        return anchorRole;
+    }
+
+    @Benchmark
+    public long attributesByKnotIndexed() {
+        long sum = 0;
+        for (int i = 0; i < KNOT_COUNT; i++) {
+            sum += utils.lookUpAttributesByKnot("K" + i).size();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long attributesByKnotScan() {
+        long sum = 0;
+        for (int i = 0; i < KNOT_COUNT; i++) {
+            String knot = "K" + i;
+            List<Attribute> found = new ArrayList<>();
+            for (Anchor anchor : domain.getAnchor()) {
+                for (Attribute attribute : anchor.getAttribute()) {
+                    if (knot.equals(attribute.getKnotRange())) {
+                        found.add(attribute);
+                    }
+                }
+            }
+            sum += found.size();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long tiesByAnchorIndexed() {
+        long sum = 0;
+        for (int i = 0; i < ANCHOR_COUNT; i++) {
+            sum += utils.lookUpTiesByAnchor("A" + i).size();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long tiesByAnchorScan() {
+        long sum = 0;
+        for (int i = 0; i < ANCHOR_COUNT; i++) {
+            String anchor = "A" + i;
+            List<Tie> found = new ArrayList<>();
+            for (Tie tie : domain.getTie()) {
+                for (AnchorRole anchorRole : tie.getAnchorRole()) {
+                    if (anchor.equals(anchorRole.getType())) {
+                        found.add(tie);
+                        break;
+                    }
+                }
+            }
+            sum += found.size();
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ReferenceIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
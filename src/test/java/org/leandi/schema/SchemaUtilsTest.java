@@ -4,14 +4,37 @@ package org.leandi.schema;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.xml.bind.JAXBException;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import org.leandi.schema.deploy.*;
 import org.leandi.schema.domain.*;
 import org.leandi.schema.domain.Domain;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -176,6 +199,132 @@ class SchemaUtilsTest {
         assertNull(checkDomainInDeploy(domainShortName));
     }
 
+    @Test
+    @DisplayName("Checking lazy loading of project domains")
+    void lazyProjectDomains() {
+        SchemaUtils lazyUtils = SchemaUtils.builder()
+                .projectXml(SchemaUtilsTest.class.getResourceAsStream("/project.xml"))
+                .lazyDomains(true)
+                .build();
+        List<Domain> domains = lazyUtils.getProject().getDomain();
+        List<Domain> expected = projectUtils.getProject().getDomain();
+        assertTrue(domains instanceof LazyDomainList);
+        assertEquals(expected.size(), domains.size());
+        assertEquals(projectUtils.getProject().getConnexions().size(), lazyUtils.getProject().getConnexions().size());
+
+        LazyDomainList lazyDomains = (LazyDomainList) domains;
+        assertFalse(lazyDomains.isLoaded(0));
+        assertFalse(lazyDomains.isLoaded(1));
+
+        // Обращение к одному домену не затрагивает остальные.
+        Domain domain = domains.get(1);
+        assertTrue(lazyDomains.isLoaded(1));
+        assertFalse(lazyDomains.isLoaded(0));
+        assertEquals(expected.get(1).getShortName(), domain.getShortName());
+        assertEquals(expected.get(1).getAnchor().size(), domain.getAnchor().size());
+        assertEquals(expected.get(1).getKnot().size(), domain.getKnot().size());
+        assertTrue(checkAnchorsForUid(domain.getAnchor()), "Lazy domain anchors don't have uid");
+        assertTrue(checkKnotsForUid(domain.getKnot()), "Lazy domain knots don't have uid");
+
+        lazyUtils.deleteDomain(expected.get(0).getShortName());
+        assertEquals(expected.size() - 1, domains.size());
+    }
+
+    @Test
+    @DisplayName("Checking parallel parsing of domain, project and deploy")
+    void parallelLoad() {
+        SchemaUtils parallelUtils = SchemaUtils.builder()
+                .domainXml(SchemaUtilsTest.class.getResourceAsStream("/domain.xml"))
+                .projectXml(SchemaUtilsTest.class.getResourceAsStream("/project.xml"))
+                .deployXml(SchemaUtilsTest.class.getResourceAsStream("/deploy.xml"))
+                .parallel(true)
+                .build();
+        assertEquals(domainUtils.getDomain().getAnchor().size(), parallelUtils.getDomain().getAnchor().size());
+        assertEquals(projectUtils.getProject().getDomain().size(), parallelUtils.getProject().getDomain().size());
+        assertEquals(deployUtils.getDeploy().getDbHost().size(), parallelUtils.getDeploy().getDbHost().size());
+        assertTrue(checkAnchorsForUid(parallelUtils.getDomain().getAnchor()), "Some anchors elements don't have uid");
+        assertTrue(checkDbHostsForUid(parallelUtils.getDeploy().getDbHost()), "Some db-hosts elements don't have uid");
+
+        SchemaLoadException exception = assertThrows(SchemaLoadException.class, () -> SchemaUtils.builder()
+                .domainXml(new ByteArrayInputStream("<domain><anchor".getBytes(StandardCharsets.UTF_8)))
+                .deployXml(SchemaUtilsTest.class.getResourceAsStream("/deploy.xml"))
+                .parallel(true)
+                .build());
+        assertEquals(Set.of("domainXml"), exception.getErrors().keySet());
+    }
+
+    @Test
+    @DisplayName("Checking XSD validation while unmarshalling")
+    void validatingLoad() {
+        SchemaUtils validUtils = SchemaUtils.builder()
+                .deployXml(SchemaUtilsTest.class.getResourceAsStream("/deploy.xml"))
+                .validate(true)
+                .build();
+        assertEquals(deployUtils.getDeploy().getDbHost().size(), validUtils.getDeploy().getDbHost().size());
+
+        String domainXml = "<domain name=\"Domain\" bogus=\"1\">\n"
+                + "    <anchor mnemonic=\"A\" descriptor=\"anchor\" identity=\"bigint\"/>\n"
+                + "</domain>";
+        SchemaValidationException exception = assertThrows(SchemaValidationException.class, () -> SchemaUtils.builder()
+                .domainXml(new ByteArrayInputStream(domainXml.getBytes(StandardCharsets.UTF_8)))
+                .validate(true)
+                .build());
+        List<SchemaValidationException.Violation> violations = exception.getViolations();
+        assertTrue(violations.size() > 1, "Validation stopped at the first violation");
+        assertEquals(1, violations.get(0).getLine());
+        assertTrue(violations.get(0).getMessage().contains("bogus"));
+        assertTrue(violations.stream().anyMatch(violation -> violation.getLine() == 2));
+    }
+
+    @Test
+    @DisplayName("Checking binary snapshot round trip")
+    void snapshotRoundTrip() throws IOException, JAXBException {
+        SchemaUtils utils = SchemaUtils.builder()
+                .domainXml(SchemaUtilsTest.class.getResourceAsStream("/domain.xml"))
+                .projectXml(SchemaUtilsTest.class.getResourceAsStream("/project.xml"))
+                .deployXml(SchemaUtilsTest.class.getResourceAsStream("/deploy.xml"))
+                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        utils.writeSnapshot(out);
+        SchemaUtils restored = SchemaUtils.readSnapshot(new ByteArrayInputStream(out.toByteArray()));
+
+        // Маршаллинг проставляет текущее время в корень, поэтому оно не сравнивается.
+        assertEquals(withoutDateTime(utils.marshall()), withoutDateTime(restored.marshall()));
+        assertEquals(withoutDateTime(utils.marshallProject()), withoutDateTime(restored.marshallProject()));
+        assertEquals(withoutDateTime(utils.marshallDeployModel()), withoutDateTime(restored.marshallDeployModel()));
+        assertTrue(out.size() < utils.marshallProject().length(), "Snapshot is larger than project XML");
+        assertThrows(IOException.class, () -> SchemaUtils.readSnapshot(
+                new ByteArrayInputStream("<project/>".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private static String withoutDateTime(String xml) {
+        return xml.replaceFirst("dateTime=\"[^\"]*\"", "");
+    }
+
+    @Test
+    @DisplayName("Checking loading from mapped and gzip-compressed files")
+    void pathLoad(@TempDir Path tempDir) throws IOException {
+        Path projectFile = tempDir.resolve("project.xml");
+        Path compressedFile = tempDir.resolve("project.xml.gz");
+        try (InputStream in = SchemaUtilsTest.class.getResourceAsStream("/project.xml")) {
+            Files.copy(in, projectFile);
+        }
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressedFile))) {
+            Files.copy(projectFile, out);
+        }
+        int domainCount = projectUtils.getProject().getDomain().size();
+
+        assertEquals(domainCount, SchemaUtils.builder().projectPath(projectFile).build().getProject().getDomain().size());
+        assertEquals(domainCount, SchemaUtils.builder().projectPath(compressedFile).build().getProject().getDomain().size());
+        assertEquals(domainCount, SchemaUtils.builder().projectXml(Files.newInputStream(compressedFile)).build()
+                .getProject().getDomain().size());
+
+        SchemaUtils lazyUtils = SchemaUtils.builder().projectPath(projectFile).lazyDomains(true).build();
+        assertEquals(domainCount, lazyUtils.getProject().getDomain().size());
+        assertTrue(checkAnchorsForUid(lazyUtils.getProject().getDomain().get(0).getAnchor()),
+                "Some anchors elements don't have uid");
+    }
+
     private org.leandi.schema.deploy.Domain checkDomainInDeploy(String shortName) {
         Deploy deploy = deployUtils.getDeploy();
         org.leandi.schema.deploy.Domain dom = null;
@@ -223,6 +372,664 @@ class SchemaUtilsTest {
 //        assertEquals(domain.getDomain().getVerticalPropertiesGroup(), domainUtils.getDomain().getVerticalPropertiesGroup());
     }
 
+    @Test
+    @DisplayName("Checking uid index consistency after updates and external list changes")
+    void uidIndex() {
+        Domain domain = domainUtils.getDomain();
+        int anchorCount = domain.getAnchor().size();
+
+        domainUtils.addAnchor("[{\"uid\": \"index-anchor\", \"mnemonic\": \"IA\"}]");
+        domainUtils.updateAnchor("[{\"uid\": \"index-anchor\", \"mnemonic\": \"IB\"}]");
+        assertEquals(anchorCount + 1, domain.getAnchor().size());
+        assertEquals(-1, domainUtils.lookUpAnchorIndexByMnemonic("IA"));
+        assertNotEquals(-1, domainUtils.lookUpAnchorIndexByMnemonic("IB"));
+
+        // Сдвиг элементов в обход SchemaUtils обнаруживается по размеру списка.
+        Anchor shifted = new Anchor();
+        shifted.setUid("shifted-anchor");
+        shifted.setMnemonic("SA");
+        domain.getAnchor().add(0, shifted);
+        domainUtils.deleteAnchor("index-anchor");
+        assertEquals(-1, domainUtils.lookUpAnchorIndexByMnemonic("IB"));
+        assertEquals(0, domainUtils.lookUpAnchorIndexByMnemonic("SA"));
+
+        // Замена элемента без изменения размера требует сброса индексов.
+        Anchor replaced = new Anchor();
+        replaced.setUid("replaced-anchor");
+        replaced.setMnemonic("RA");
+        domain.getAnchor().set(0, replaced);
+        domainUtils.invalidateIndexes();
+        domainUtils.deleteAnchor("replaced-anchor");
+        assertEquals(anchorCount, domain.getAnchor().size());
+        assertEquals(-1, domainUtils.lookUpAnchorIndexByMnemonic("RA"));
+
+        // Узел, получивший uid на месте, находится изменением и не дублируется.
+        domainUtils.deleteAnchor("edited-anchor");
+        domain.getAnchor().get(0).setUid("edited-anchor");
+        domainUtils.updateAnchor("[{\"uid\": \"edited-anchor\", \"mnemonic\": \"EA\"}]");
+        assertEquals(anchorCount, domain.getAnchor().size());
+        assertEquals("EA", domain.getAnchor().get(0).getMnemonic());
+
+        String dbHostUid = deployUtils.getDeploy().getDbHost().get(0).getUid();
+        int dbHostCount = deployUtils.getDeploy().getDbHost().size();
+        deployUtils.updateDbHost("[{\"uid\": \"" + dbHostUid + "\", \"host\": \"updated\"}]");
+        assertEquals(dbHostCount, deployUtils.getDeploy().getDbHost().size());
+        assertEquals("updated", deployUtils.getDeploy().getDbHost().get(0).getHost());
+    }
+
+    @Test
+    void mnemonicIndex() {
+        assertEquals(0, domainUtils.lookUpKnotIndexByMnemonic("EEK"));
+        assertEquals(2, domainUtils.lookUpAnchorIndexByMnemonic("LL"));
+        assertEquals(1, domainUtils.lookUpTxAnchorIndexByMnemonic("TX2"));
+
+        domainUtils.updateKnot("[{\"uid\": \"knotee96-aa95-444c-b23a-2ac890986f0c\", \"mnemonic\": \"NEK\"}]");
+        assertEquals(-1, domainUtils.lookUpKnotIndexByMnemonic("EEK"));
+        assertEquals(0, domainUtils.lookUpKnotIndexByMnemonic("NEK"));
+        domainUtils.addTxAnchor("[{\"uid\": \"index-tx\", \"mnemonic\": \"TX4\"}]");
+        assertEquals(3, domainUtils.lookUpTxAnchorIndexByMnemonic("TX4"));
+        domainUtils.deleteTxAnchor("txa7ee96-aa95-444c-b23a-2ac890986f0c");
+        assertEquals(0, domainUtils.lookUpTxAnchorIndexByMnemonic("TX2"));
+
+        assertEquals(1, projectUtils.lookUpAnchorIndexByMnemonic("Domain1", "GH"));
+        assertEquals(-1, projectUtils.lookUpAnchorIndexByMnemonic("Domain0", "GH"));
+        assertEquals(2, projectUtils.lookUpKnotIndexByMnemonic("Domain0", "ULF"));
+        assertEquals(6, projectUtils.lookUpTxAnchorIndexByMnemonic("Domain0", "TH"));
+        assertEquals(3, projectUtils.lookUpCdAnchorIndexByMnemonic("Domain1", "RL"));
+        assertEquals(-1, projectUtils.lookUpCdAnchorIndexByMnemonic("Unknown", "RL"));
+
+        // Текущий домен из проекта индексируется один раз.
+        Domain domain1 = projectUtils.getProject().getDomain().get(1);
+        SchemaUtils utils = SchemaUtils.builder().project(projectUtils.getProject()).domain(domain1).build();
+        utils.deleteAnchor(domain1.getAnchor().get(0).getUid());
+        assertEquals(0, utils.lookUpAnchorIndexByMnemonic("Domain1", "GH"));
+        assertEquals(0, utils.lookUpAnchorIndexByMnemonic("GH"));
+    }
+
+    @Test
+    void referenceIndex() {
+        assertEquals(5, domainUtils.lookUpAttributesByKnot("EEK").size());
+        assertEquals(1, domainUtils.lookUpExtendedColumnsByKnot("EEK").size());
+        assertEquals(1, domainUtils.lookUpTiesByKnot("EEK").size());
+        assertEquals(4, domainUtils.lookUpTiesByAnchor("LL").size());
+
+        domainUtils.deleteTie("tie7ee96-aa95-444c-b23a-2ac890986f0c");
+        assertEquals(3, domainUtils.lookUpTiesByAnchor("LL").size());
+        domainUtils.updateAnchor("[{\"uid\": \"anc2ee96-aa95-444c-b23a-2ac890986f0c\", \"mnemonic\": \"LL\"}]");
+        assertEquals(3, domainUtils.lookUpAttributesByKnot("EEK").size());
+        domainUtils.addTxAnchor("[{\"uid\": \"ref-tx\", \"mnemonic\": \"RTX\", "
+                + "\"anchorRole\": [{\"type\": \"LL\"}]}]");
+        assertTrue(domainUtils.lookUpTxAnchorsByAnchor("LL").stream().anyMatch(txAnchor -> "RTX".equals(txAnchor.getMnemonic())));
+
+        // Каскадное удаление домена: коннексион ссылается на Domain1 неидентифицирующей ролью,
+        // поэтому из Domain0 удаляются кросс-доменный анкер CM и таи, ссылающиеся на него.
+        Domain domain0 = projectUtils.getProject().getDomain().get(0);
+        assertEquals(1, projectUtils.lookUpConnexionsByDomain("Domain1").size());
+        projectUtils.deleteDomain("Domain1");
+        assertTrue(projectUtils.lookUpConnexionsByDomain("Domain0").isEmpty());
+        assertTrue(projectUtils.getProject().getConnexions().isEmpty());
+        assertTrue(domain0.getCdAnchor().stream().noneMatch(cdAnchor -> "CM".equals(cdAnchor.getMnemonic())));
+        assertTrue(domain0.getTie().stream().flatMap(tie -> tie.getAnchorRole().stream())
+                .noneMatch(anchorRole -> "CM".equals(anchorRole.getType())));
+    }
+
+    @Test
+    void sharedMapperRoundTrip() throws JsonProcessingException {
+        ObjectMapper mapper = new ObjectMapper();
+        String anchors = domainUtils.anchorsAsJson();
+        assertEquals(mapper.writeValueAsString(domainUtils.getDomain().getAnchor()), anchors);
+        assertEquals(mapper.writeValueAsString(domainUtils.getDomain().getTie()), domainUtils.tiesAsJson());
+        assertEquals(mapper.writeValueAsString(deployUtils.getDeploy().getDbHost()), deployUtils.dbHostsAsJson());
+
+        // Повторная запись тех же анкеров не меняет модель.
+        domainUtils.updateAnchor(anchors);
+        assertEquals(anchors, domainUtils.anchorsAsJson());
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.updateAnchor("[{\"uid\": \"x\", \"unknown\": 1}]"));
+    }
+
+    @Test
+    void streamingIngestionErrors() {
+        int anchorCount = domainUtils.getDomain().getAnchor().size();
+        int areaCount = domainUtils.getDomain().getArea().size();
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> domainUtils.addAnchor("[{\"uid\": \"a1\", \"mnemonic\": \"N1\"}, {\"uid\": \"a2\", \"unknown\": 1}]"));
+        assertTrue(e.getMessage().contains("[1]"), e.getMessage());
+        // Ошибка разбора не оставляет в модели уже прочитанные элементы.
+        assertEquals(anchorCount, domainUtils.getDomain().getAnchor().size());
+
+        e = assertThrows(IllegalArgumentException.class, () -> domainUtils.updateArea("[{}, 1]"));
+        assertTrue(e.getMessage().contains("[1]"), e.getMessage());
+        assertEquals(areaCount, domainUtils.getDomain().getArea().size());
+
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.updateTie("{\"uid\": \"t1\"}"));
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.updateTie("[{\"uid\": \"t1\"}"));
+    }
+
+    @Test
+    void streamingJsonExport() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        domainUtils.writeJson(JsonSection.ANCHORS, out);
+        assertEquals(domainUtils.anchorsAsJson(), out.toString(StandardCharsets.UTF_8));
+
+        StringWriter writer = new StringWriter();
+        deployUtils.writeJson(JsonSection.DB_HOSTS, writer);
+        assertEquals(deployUtils.dbHostsAsJson(), writer.toString());
+
+        out.reset();
+        domainUtils.writeJson(JsonSection.TIES, out, true);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(domainUtils.tiesAsJson(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        out.reset();
+        domainUtils.writeDomainJson(out, false);
+        ObjectNode exported = new ObjectMapper().readValue(out.toByteArray(), ObjectNode.class);
+        assertEquals(domainUtils.getDomain().getAnchor().size(), exported.get("anchors").size());
+        assertEquals(domainUtils.getDomain().getKnot().size(), exported.get("knots").size());
+        assertEquals(domainUtils.getDomain().getGroup().size(), exported.get("groups").size());
+        assertFalse(exported.has("connexions"));
+
+        writer = new StringWriter();
+        domainUtils.writeDomainJson(writer);
+        assertEquals(out.toString(StandardCharsets.UTF_8), writer.toString());
+        byte[] plain = out.toByteArray();
+        out.reset();
+        domainUtils.writeDomainJson(out, true);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertArrayEquals(plain, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void jsonCache() throws JsonProcessingException {
+        String anchors = domainUtils.anchorsAsJson();
+        String etag = domainUtils.jsonETag(JsonSection.ANCHORS);
+        long version = domainUtils.jsonVersion(JsonSection.ANCHORS);
+        assertSame(anchors, domainUtils.anchorsAsJson());
+        assertEquals(etag, domainUtils.jsonETag(JsonSection.ANCHORS));
+
+        // Изменение другого раздела не сбрасывает анкеры.
+        String knotsEtag = domainUtils.jsonETag(JsonSection.KNOTS);
+        domainUtils.deleteTie("tie7ee96-aa95-444c-b23a-2ac890986f0c");
+        assertEquals(etag, domainUtils.jsonETag(JsonSection.ANCHORS));
+        assertEquals(knotsEtag, domainUtils.jsonETag(JsonSection.KNOTS));
+
+        domainUtils.deleteAnchor("anc7ee96-aa95-444c-b23a-2ac890986f0c");
+        assertTrue(domainUtils.jsonVersion(JsonSection.ANCHORS) > version);
+        assertNotEquals(etag, domainUtils.jsonETag(JsonSection.ANCHORS));
+        assertNotEquals(anchors, domainUtils.anchorsAsJson());
+
+        // Изменение размера списка в обход SchemaUtils обнаруживается, изменение на месте — после invalidateIndexes.
+        String tiesEtag = domainUtils.jsonETag(JsonSection.TIES);
+        domainUtils.getDomain().getTie().remove(0);
+        assertNotEquals(tiesEtag, domainUtils.jsonETag(JsonSection.TIES));
+        domainUtils.getDomain().getKnot().get(0).setMnemonic("CHANGED");
+        domainUtils.invalidateIndexes();
+        assertNotEquals(knotsEtag, domainUtils.jsonETag(JsonSection.KNOTS));
+        assertTrue(domainUtils.knotsAsJson().contains("CHANGED"));
+    }
+
+    @Test
+    void nodeQuery() throws JsonProcessingException {
+        ObjectMapper mapper = new ObjectMapper();
+        List<Anchor> anchors = domainUtils.getDomain().getAnchor();
+
+        ObjectNode[] page = mapper.readValue(domainUtils.nodesAsJson(NodeQuery.builder()
+                .section(JsonSection.ANCHORS).fields(List.of("mnemonic", "layout")).limit(2).build()), ObjectNode[].class);
+        assertEquals(2, page.length);
+        assertEquals(anchors.get(0).getUid(), page[0].get("uid").textValue());
+        assertEquals(anchors.get(0).getMnemonic(), page[0].get("mnemonic").textValue());
+        assertFalse(page[0].has("attribute"));
+        assertFalse(page[0].has("descriptor"));
+
+        // Следующая страница по курсору совпадает со страницей по смещению.
+        String byCursor = domainUtils.nodesAsJson(NodeQuery.builder()
+                .section(JsonSection.ANCHORS).fields(List.of("mnemonic")).after(page[1].get("uid").textValue()).limit(2).build());
+        String byOffset = domainUtils.nodesAsJson(NodeQuery.builder()
+                .section(JsonSection.ANCHORS).fields(List.of("mnemonic")).offset(2).limit(2).build());
+        assertEquals(byOffset, byCursor);
+
+        // Без проекции узлы выгружаются полностью.
+        Anchor[] full = mapper.readValue(domainUtils.nodesAsJson(NodeQuery.builder()
+                .section(JsonSection.ANCHORS).offset(1).limit(1).build()), Anchor[].class);
+        assertEquals(anchors.get(1).getAttribute().size(), full[0].getAttribute().size());
+
+        Area area = domainUtils.getDomain().getArea().get(0);
+        ObjectNode[] inArea = mapper.readValue(domainUtils.nodesAsJson(NodeQuery.builder()
+                .section(JsonSection.ANCHORS).fields(List.of("mnemonic")).areaUid(area.getUid()).build()), ObjectNode[].class);
+        assertEquals(area.getAnchorRole().size(), inArea.length);
+        for (ObjectNode anchor : inArea) {
+            assertTrue(area.getAnchorRole().stream().anyMatch(role -> role.getType().equals(anchor.get("mnemonic").textValue())));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.nodesAsJson(NodeQuery.builder()
+                .section(JsonSection.ANCHORS).after("missing").build()));
+        assertThrows(IllegalArgumentException.class, () -> NodeQuery.builder()
+                .section(JsonSection.ANCHORS).after("x").offset(1).build());
+    }
+
+    @Test
+    void mergePatch() throws JsonProcessingException {
+        String uid = "anc2ee96-aa95-444c-b23a-2ac890986f0c";
+        Integer index = domainUtils.lookUpAnchorIndexByMnemonic("LL");
+        Anchor anchor = domainUtils.getDomain().getAnchor().get(index);
+        int attributes = anchor.getAttribute().size();
+        String description = anchor.getDescription();
+        String etag = domainUtils.jsonETag(JsonSection.ANCHORS);
+
+        domainUtils.patchAnchor("[{\"uid\": \"" + uid + "\", \"descriptor\": \"patched\", \"layout\": {\"x\": 1.5}}]");
+        // Узел изменяется на месте, поля вне патча сохраняются.
+        assertSame(anchor, domainUtils.getDomain().getAnchor().get(index));
+        assertEquals("patched", anchor.getDescriptor());
+        assertEquals(1.5, anchor.getLayout().getX());
+        assertEquals(144.7261502853854, anchor.getLayout().getY());
+        assertEquals(description, anchor.getDescription());
+        assertEquals(attributes, anchor.getAttribute().size());
+        assertNotEquals(etag, domainUtils.jsonETag(JsonSection.ANCHORS));
+
+        // Массив в патче заменяет список целиком, смена мнемоники обновляет индекс.
+        domainUtils.patchAnchor("[{\"uid\": \"" + uid + "\", \"mnemonic\": \"ZZ\", \"attribute\": []}]");
+        assertTrue(anchor.getAttribute().isEmpty());
+        assertEquals(-1, domainUtils.lookUpAnchorIndexByMnemonic("LL"));
+        assertEquals(index, domainUtils.lookUpAnchorIndexByMnemonic("ZZ"));
+
+        // Патч с неизвестным uid отклоняется до изменения первого узла.
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.patchAnchor("[{\"uid\": \"" + uid
+                + "\", \"descriptor\": \"lost\"}, {\"uid\": \"missing\"}]"));
+        assertEquals("patched", anchor.getDescriptor());
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.patchAnchor("[{\"descriptor\": \"no uid\"}]"));
+    }
+
+    @Test
+    void bulkDelete() {
+        Domain dom = domainUtils.getDomain();
+        Anchor anchor = dom.getAnchor().get(domainUtils.lookUpAnchorIndexByMnemonic("LL"));
+        Anchor first = dom.getAnchor().get(0);
+        Set<Tie> ties = new HashSet<>(domainUtils.lookUpTiesByAnchor("LL"));
+        ties.addAll(domainUtils.lookUpTiesByAnchor(first.getMnemonic()));
+        Set<TxAnchor> txAnchors = new HashSet<>(domainUtils.lookUpTxAnchorsByAnchor("LL"));
+        txAnchors.addAll(domainUtils.lookUpTxAnchorsByAnchor(first.getMnemonic()));
+        int anchorCount = dom.getAnchor().size();
+        int tieCount = dom.getTie().size();
+        assertFalse(ties.isEmpty());
+
+        RemovedNodes removed = domainUtils.deleteNodes(JsonSection.ANCHORS,
+                List.of(anchor.getUid(), "missing", first.getUid(), anchor.getUid()), true);
+        // Удалённые узлы возвращаются в порядке списка, повторы и отсутствующие uid пропускаются.
+        assertEquals(List.of(first, anchor), removed.get(JsonSection.ANCHORS));
+        assertEquals(anchorCount - 2, dom.getAnchor().size());
+        assertEquals(-1, domainUtils.lookUpAnchorIndexByMnemonic("LL"));
+        assertEquals(ties, new HashSet<>(removed.get(JsonSection.TIES)));
+        assertEquals(tieCount - ties.size(), dom.getTie().size());
+        assertTrue(domainUtils.lookUpTiesByAnchor("LL").isEmpty());
+        assertEquals(txAnchors.size(), removed.get(JsonSection.TX_ANCHORS).size());
+        assertEquals(2 + ties.size() + txAnchors.size(), removed.size());
+
+        // Без каскада ссылающиеся узлы остаются.
+        Knot knot = dom.getKnot().get(0);
+        int tiesByKnot = domainUtils.lookUpTiesByKnot(knot.getMnemonic()).size();
+        removed = domainUtils.deleteNodes(JsonSection.KNOTS, List.of(knot.getUid()), false);
+        assertEquals(List.of(knot), removed.get(JsonSection.KNOTS));
+        assertTrue(removed.get(JsonSection.TIES).isEmpty());
+        assertEquals(tiesByKnot, domainUtils.lookUpTiesByKnot(knot.getMnemonic()).size());
+
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.deleteNodes(JsonSection.AREAS, List.of("x"), false));
+    }
+
+    @Test
+    void commandBatch() throws JsonProcessingException {
+        Domain dom = domainUtils.getDomain();
+        String uid = "anc2ee96-aa95-444c-b23a-2ac890986f0c";
+        Anchor anchor = dom.getAnchor().get(domainUtils.lookUpAnchorIndexByMnemonic("LL"));
+        String descriptor = anchor.getDescriptor();
+        int attributes = anchor.getAttribute().size();
+        int anchorCount = dom.getAnchor().size();
+        Tie tie = dom.getTie().get(0);
+        int tieCount = dom.getTie().size();
+
+        RemovedNodes removed = domainUtils.apply(List.of(
+                SchemaCommand.add(JsonSection.ANCHORS, "[{\"uid\": \"new-anchor\", \"mnemonic\": \"NA\"}]"),
+                SchemaCommand.patch(JsonSection.ANCHORS, "[{\"uid\": \"new-anchor\", \"descriptor\": \"added\"}]"),
+                SchemaCommand.delete(JsonSection.TIES, List.of(tie.getUid()), false)));
+        assertEquals(anchorCount + 1, dom.getAnchor().size());
+        assertEquals("added", dom.getAnchor().get(domainUtils.lookUpAnchorIndexByMnemonic("NA")).getDescriptor());
+        assertEquals(List.of(tie), removed.get(JsonSection.TIES));
+        assertEquals(tieCount - 1, dom.getTie().size());
+
+        // Ошибка разбора любой команды не изменяет модель.
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.apply(List.of(
+                SchemaCommand.patch(JsonSection.ANCHORS, "[{\"uid\": \"" + uid + "\", \"descriptor\": \"lost\"}]"),
+                SchemaCommand.update(JsonSection.TIES, "[{\"uid\": "))));
+        assertEquals(descriptor, anchor.getDescriptor());
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.apply(List.of(
+                SchemaCommand.patch(JsonSection.DB_HOSTS, "[]"))));
+
+        // Ошибка применения откатывает уже применённые команды пакета.
+        String etag = domainUtils.jsonETag(JsonSection.ANCHORS);
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.apply(List.of(
+                SchemaCommand.patch(JsonSection.ANCHORS, "[{\"uid\": \"" + uid + "\", \"descriptor\": \"lost\", \"attribute\": []}]"),
+                SchemaCommand.delete(JsonSection.ANCHORS, List.of("new-anchor"), false),
+                SchemaCommand.add(JsonSection.TIES, "[{\"uid\": \"new-tie\"}]"),
+                SchemaCommand.patch(JsonSection.TIES, "[{\"uid\": \"missing\"}]"))));
+        assertEquals(anchorCount + 1, dom.getAnchor().size());
+        assertEquals(tieCount - 1, dom.getTie().size());
+        assertTrue(dom.getTie().stream().noneMatch(node -> "new-tie".equals(node.getUid())));
+        // Узлы, изменённые патчами, восстанавливаются на месте.
+        assertSame(anchor, dom.getAnchor().get(domainUtils.lookUpAnchorIndexByMnemonic("LL")));
+        assertEquals(descriptor, anchor.getDescriptor());
+        assertEquals(attributes, anchor.getAttribute().size());
+        assertNotEquals(-1, domainUtils.lookUpAnchorIndexByMnemonic("NA"));
+        assertNotEquals(etag, domainUtils.jsonETag(JsonSection.ANCHORS));
+    }
+
+    @Test
+    void mutationJournal(@TempDir Path directory) throws IOException, JAXBException {
+        Path journalDir = directory.resolve("journal");
+        domainUtils.attachJournal(journalDir, Long.MAX_VALUE);
+        domainUtils.updateAnchor("[{\"uid\": \"new-anchor\", \"mnemonic\": \"NA\", \"descriptor\": \"added\"}]");
+        domainUtils.patchAnchor("[{\"uid\": \"anc2ee96-aa95-444c-b23a-2ac890986f0c\", \"descriptor\": \"patched\"}]");
+        domainUtils.deleteNodes(JsonSection.ANCHORS, List.of(domainUtils.getDomain().getAnchor().get(0).getUid()), true);
+        domainUtils.deleteTie(domainUtils.getDomain().getTie().get(0).getUid());
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.patchTie("[{\"uid\": \"missing\"}]"));
+        domainUtils.apply(List.of(SchemaCommand.add(JsonSection.KNOTS, "[{\"uid\": \"new-knot\", \"mnemonic\": \"NK\"}]"),
+                SchemaCommand.delete(JsonSection.ANCHORS, List.of("new-anchor"), false)));
+
+        // Восстановление без закрытия журнала, как после аварийного завершения.
+        SchemaUtils recovered = SchemaUtils.recoverJournal(journalDir, Long.MAX_VALUE);
+        assertEquals(withoutDateTime(domainUtils.marshall()), withoutDateTime(recovered.marshall()));
+        recovered.closeJournal();
+        domainUtils.closeJournal();
+
+        // Оборванная запись в конце журнала отбрасывается.
+        Path segment;
+        try (Stream<Path> files = Files.list(journalDir)) {
+            segment = files.filter(path -> path.getFileName().toString().endsWith(".log")).max(Path::compareTo).orElseThrow();
+        }
+        Files.write(segment, new byte[]{0, 0, 1, 0, 7}, StandardOpenOption.APPEND);
+        recovered = SchemaUtils.recoverJournal(journalDir, 1);
+        assertEquals(withoutDateTime(domainUtils.marshall()), withoutDateTime(recovered.marshall()));
+
+        // При малом пороге каждое изменение уплотняет журнал, состояние восстанавливается из снимка.
+        recovered.updateKnot("[{\"uid\": \"new-knot\", \"mnemonic\": \"NK\", \"descriptor\": \"renamed\"}]");
+        recovered.updateKnot("[{\"uid\": \"other-knot\", \"mnemonic\": \"OK\"}]");
+        recovered.closeJournal();
+        SchemaUtils compacted = SchemaUtils.recoverJournal(journalDir, 1);
+        assertEquals(withoutDateTime(recovered.marshall()), withoutDateTime(compacted.marshall()));
+        compacted.closeJournal();
+
+        assertThrows(IllegalArgumentException.class, () -> SchemaUtils.builder().build().attachJournal(journalDir, 1));
+
+        // Цепочка переименований повторяется в порядке вызова.
+        Path deployJournalDir = directory.resolve("deploy-journal");
+        deployUtils.attachJournal(deployJournalDir, Long.MAX_VALUE);
+        Map<String, String> renames = new LinkedHashMap<>();
+        renames.put("Domain1", "P");
+        renames.put("P", "Z");
+        deployUtils.renewDomains(renames);
+        deployUtils.closeJournal();
+        SchemaUtils renewed = SchemaUtils.recoverJournal(deployJournalDir, Long.MAX_VALUE);
+        assertEquals(deployUtils.getDomainsListFromDeploy(), renewed.getDomainsListFromDeploy());
+        renewed.closeJournal();
+    }
+
+    @Test
+    void journalSkipsFailedCalls(@TempDir Path directory) throws IOException, JAXBException {
+        Path journalDir = directory.resolve("journal");
+        domainUtils.attachJournal(journalDir, Long.MAX_VALUE);
+        Anchor anchor = domainUtils.getDomain().getAnchor().get(0);
+        String descriptor = anchor.getDescriptor();
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.updateKnot("[{\"uid\": "));
+        // Первый патч применим, второй нет: вызов не оставляет изменений.
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.patchAnchor("[{\"uid\": \"" + anchor.getUid()
+                + "\", \"descriptor\": \"patched\"}, {\"uid\": \"" + anchor.getUid() + "\", \"descriptor\": {}}]"));
+        assertEquals(descriptor, anchor.getDescriptor());
+        domainUtils.updateKnot("[{\"uid\": \"new-knot\", \"mnemonic\": \"NK\"}]");
+        domainUtils.closeJournal();
+
+        SchemaUtils recovered = SchemaUtils.recoverJournal(journalDir, Long.MAX_VALUE);
+        assertEquals(withoutDateTime(domainUtils.marshall()), withoutDateTime(recovered.marshall()));
+        recovered.closeJournal();
+
+        // Неповторяемая запись прерывает восстановление с указанием номера записи.
+        MutationJournal journal = MutationJournal.resume(journalDir, Long.MAX_VALUE, MutationJournal.recover(journalDir));
+        journal.append(JournalOp.PATCH_ANCHOR, List.of("[{\"uid\": \"missing\"}]"));
+        journal.close();
+        IOException error = assertThrows(IOException.class, () -> SchemaUtils.recoverJournal(journalDir, Long.MAX_VALUE));
+        assertTrue(error.getMessage().contains(" 2 (PATCH_ANCHOR)"), error.getMessage());
+    }
+
+    @Test
+    void concurrentMode() throws InterruptedException, JsonProcessingException {
+        SchemaUtils utils = SchemaUtils.builder()
+                .domainXml(SchemaUtilsTest.class.getResourceAsStream("/domain.xml"))
+                .concurrent(true)
+                .build();
+        ObjectMapper mapper = new ObjectMapper();
+        int initial = utils.getDomain().getAnchor().size();
+        int added = 300;
+        Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        // Читатели видят только целые состояния: число анкеров в json не убывает, индексы согласованы с json.
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread reader = new Thread(() -> {
+                int seen = initial;
+                try {
+                    while (writing.get()) {
+                        int count = mapper.readTree(utils.anchorsAsJson()).size();
+                        assertTrue(count >= seen && count <= initial + added, "Число анкеров: " + count);
+                        seen = count;
+                        assertNotEquals(-1, utils.lookUpAnchorIndexByMnemonic("LL"));
+                        assertNotNull(utils.lookUpTiesByAnchor("LL"));
+                        assertNotNull(utils.jsonETag(JsonSection.ANCHORS));
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+        try {
+            for (int i = 0; i < added; i++) {
+                utils.addAnchor("[{\"uid\": \"concurrent-" + i + "\", \"mnemonic\": \"C" + i + "\"}]");
+                utils.patchAnchor("[{\"uid\": \"concurrent-" + i + "\", \"descriptor\": \"patched\"}]");
+            }
+        } finally {
+            writing.set(false);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+        assertTrue(errors.isEmpty(), () -> errors.peek().toString());
+        assertEquals(initial + added, mapper.readTree(utils.anchorsAsJson()).size());
+        assertEquals(initial + added - 1, utils.lookUpAnchorIndexByMnemonic("C" + (added - 1)));
+
+        // Вложенные вызовы из того же потока не блокируются повторно.
+        utils.deleteAnchor("concurrent-0");
+        assertEquals(-1, utils.lookUpAnchorIndexByMnemonic("C0"));
+    }
+
+    @Test
+    void domainStripes() throws InterruptedException {
+        DomainStripes stripes = new DomainStripes();
+        Project project = new Project();
+        Domain first = new Domain();
+        first.setShortName("A");
+        Domain second = new Domain();
+        second.setShortName("B");
+        project.getDomain().add(first);
+        project.getDomain().add(second);
+        SchemaUtils firstUtils = SchemaUtils.builder().domain(first).project(project).stripes(stripes).build();
+        SchemaUtils secondUtils = SchemaUtils.builder().domain(second).project(project).stripes(stripes).build();
+        assertNotEquals(stripes.stripe("A"), stripes.stripe("B"));
+
+        Thread secondEdit = new Thread(() -> secondUtils.addAnchor("[{\"uid\": \"b-1\", \"mnemonic\": \"BB\"}]"));
+        Thread firstEdit = new Thread(() -> firstUtils.addAnchor("[{\"uid\": \"a-1\", \"mnemonic\": \"AA\"}]"));
+        Thread projectEdit = new Thread(() -> secondUtils.deleteDomain("A"));
+        stripes.lock(() -> List.of("A"), () -> {
+            // Изменение другого домена не ждёт полосу A, изменения домена A и проекта по домену A ждут.
+            secondEdit.start();
+            secondEdit.join(5_000);
+            assertFalse(secondEdit.isAlive());
+            firstEdit.start();
+            projectEdit.start();
+            firstEdit.join(200);
+            projectEdit.join(200);
+            assertTrue(firstEdit.isAlive());
+            assertTrue(projectEdit.isAlive());
+            return null;
+        });
+        firstEdit.join();
+        projectEdit.join();
+        assertEquals("BB", second.getAnchor().get(0).getMnemonic());
+        assertEquals("AA", first.getAnchor().get(0).getMnemonic());
+        assertEquals(List.of(second), project.getDomain());
+
+        // Блокировка проекта берётся первой: изменение проекта изнутри изменения домена нарушило бы порядок.
+        assertThrows(IllegalStateException.class, () -> stripes.lock(() -> List.of("B"), () -> {
+            secondUtils.addDomain("[{\"shortName\": \"C\"}]");
+            return null;
+        }));
+        secondUtils.addDomain("[{\"shortName\": \"C\"}]");
+        assertEquals(2, project.getDomain().size());
+    }
+
+    @Test
+    void snapshotAfterParallelLoad() {
+        SchemaUtils parallelUtils = SchemaUtils.builder()
+                .domainXml(SchemaUtilsTest.class.getResourceAsStream("/domain.xml"))
+                .projectXml(SchemaUtilsTest.class.getResourceAsStream("/project.xml"))
+                .deployXml(SchemaUtilsTest.class.getResourceAsStream("/deploy.xml"))
+                .parallel(true)
+                .build();
+        SchemaSnapshot first = parallelUtils.snapshot();
+        for (int i = 0; i < 3; i++) {
+            parallelUtils.patchAnchor("[{\"uid\": \"anc2ee96-aa95-444c-b23a-2ac890986f0c\", \"descriptor\": \"parallel" + i + "\"}]");
+            SchemaSnapshot next = parallelUtils.snapshot();
+            assertEquals(first.getVersion() + i + 1, next.getVersion());
+            int llIndex = parallelUtils.lookUpAnchorIndexByMnemonic("LL");
+            assertEquals("parallel" + i, next.getDomain().getAnchor().get(llIndex).getDescriptor());
+        }
+    }
+
+    @Test
+    void nodeVersions() {
+        String uid = "anc2ee96-aa95-444c-b23a-2ac890986f0c";
+        int llIndex = domainUtils.lookUpAnchorIndexByMnemonic("LL");
+        assertEquals(0, domainUtils.nodeVersion(JsonSection.ANCHORS, uid));
+        domainUtils.patchAnchor("[{\"uid\": \"" + uid + "\", \"descriptor\": \"first\"}]", Map.of(uid, 0L));
+        assertEquals(1, domainUtils.nodeVersion(JsonSection.ANCHORS, uid));
+
+        // Второй сеанс прочитал узел до первого изменения: его изменение отклоняется, модель не меняется.
+        VersionConflictException conflict = assertThrows(VersionConflictException.class, () -> domainUtils.updateAnchor(
+                "[{\"uid\": \"" + uid + "\", \"mnemonic\": \"LL\", \"descriptor\": \"second\"}]", Map.of(uid, 0L)));
+        assertEquals(Map.of(uid, 1L), conflict.getActualVersions());
+        assertEquals("first", domainUtils.getDomain().getAnchor().get(llIndex).getDescriptor());
+        assertEquals(1, domainUtils.nodeVersion(JsonSection.ANCHORS, uid));
+
+        // Неудачный пакет команд не меняет версии.
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.apply(List.of(
+                SchemaCommand.patch(JsonSection.ANCHORS, "[{\"uid\": \"" + uid + "\", \"descriptor\": \"batch\"}]"),
+                SchemaCommand.patch(JsonSection.ANCHORS, "[{\"uid\": \"missing\", \"descriptor\": \"batch\"}]"))));
+        assertEquals(1, domainUtils.nodeVersion(JsonSection.ANCHORS, uid));
+
+        // Версия растёт и при удалении, и при повторном добавлении узла с тем же uid.
+        domainUtils.deleteAnchor(uid);
+        assertEquals(2, domainUtils.nodeVersion(JsonSection.ANCHORS, uid));
+        domainUtils.updateAnchor("[{\"uid\": \"" + uid + "\", \"mnemonic\": \"LL\"}]", Map.of(uid, 2L));
+        assertEquals(3, domainUtils.nodeVersion(JsonSection.ANCHORS, uid));
+        assertEquals(0, domainUtils.nodeVersion(JsonSection.TIES, "missing"));
+        assertThrows(IllegalArgumentException.class, () -> domainUtils.nodeVersion(JsonSection.GROUPS, "missing"));
+    }
+
+    @Test
+    void copyOnWriteSnapshot() throws JAXBException {
+        SchemaSnapshot first = domainUtils.snapshot();
+        assertSame(first, domainUtils.snapshot());
+        Domain dom = domainUtils.getDomain();
+        int llIndex = domainUtils.lookUpAnchorIndexByMnemonic("LL");
+        String descriptor = dom.getAnchor().get(llIndex).getDescriptor();
+        assertNotSame(dom.getAnchor().get(llIndex), first.getDomain().getAnchor().get(llIndex));
+        assertThrows(UnsupportedOperationException.class, () -> first.getDomain().getAnchor().add(new Anchor()));
+
+        // Патч копирует только изменённый узел, остальные узлы и разделы общие с прошлым снимком.
+        domainUtils.patchAnchor("[{\"uid\": \"anc2ee96-aa95-444c-b23a-2ac890986f0c\", \"descriptor\": \"patched\"}]");
+        SchemaSnapshot second = domainUtils.snapshot();
+        assertEquals(first.getVersion() + 1, second.getVersion());
+        assertEquals("patched", second.getDomain().getAnchor().get(llIndex).getDescriptor());
+        assertEquals(descriptor, first.getDomain().getAnchor().get(llIndex).getDescriptor());
+        for (int i = 0; i < dom.getAnchor().size(); i++) {
+            if (i != llIndex) {
+                assertSame(first.getDomain().getAnchor().get(i), second.getDomain().getAnchor().get(i));
+            }
+        }
+        assertSame(first.getDomain().getTie(), second.getDomain().getTie());
+        assertSame(first.getProject(), second.getProject());
+        assertSame(first.getDeploy(), second.getDeploy());
+
+        // Удаление и добавление не копируют оставшиеся узлы.
+        Tie removed = dom.getTie().get(0);
+        domainUtils.deleteTie(removed.getUid());
+        domainUtils.addKnot("[{\"uid\": \"new-knot\", \"mnemonic\": \"NK\"}]");
+        SchemaSnapshot third = domainUtils.snapshot();
+        assertEquals(dom.getTie().size(), third.getDomain().getTie().size());
+        assertSame(second.getDomain().getTie().get(1), third.getDomain().getTie().get(0));
+        assertSame(second.getDomain().getKnot().get(0), third.getDomain().getKnot().get(0));
+        assertEquals("NK", third.getDomain().getKnot().get(dom.getKnot().size() - 1).getMnemonic());
+
+        // Изменение в обход SchemaUtils учитывается после invalidateIndexes: разделы копируются целиком.
+        dom.getAnchor().get(llIndex).setDescriptor("outside");
+        domainUtils.invalidateIndexes();
+        SchemaSnapshot fourth = domainUtils.snapshot();
+        assertEquals("outside", fourth.getDomain().getAnchor().get(llIndex).getDescriptor());
+        assertNotSame(third.getDomain().getKnot().get(0), fourth.getDomain().getKnot().get(0));
+        assertEquals(withoutDateTime(domainUtils.marshall()), withoutDateTime(fourth.marshall()));
+        assertEquals("patched", second.getDomain().getAnchor().get(llIndex).getDescriptor());
+    }
+
+    @Test
+    void resolvedGroups() throws JsonProcessingException {
+        SchemaUtils utils = SchemaUtils.builder().build();
+        utils.updateProperty("{\"id\": \"p1\", \"namep\": \"First\"}");
+        utils.updateProperty("{\"id\": \"p2\", \"namep\": \"Second\"}");
+        utils.updateGroup("{\"id\": \"g1\", \"name\": \"Outer\"}");
+        utils.updateGroup("{\"id\": \"g2\", \"name\": \"Inner\"}");
+        utils.addPropertiesToGroup("{\"id\": \"g1\", \"elements\": [\"p1\"]}");
+        utils.addPropertiesToGroup("{\"id\": \"g2\", \"elements\": [\"p2\", \"p2\"]}");
+        utils.addGroupsToGroup("{\"id\": \"g1\", \"elements\": [\"g2\"]}");
+
+        ObjectMapper mapper = new ObjectMapper();
+        Group[] groups = mapper.readValue(utils.groupsAsJson(), Group[].class);
+        assertEquals(2, groups.length);
+        assertEquals("First", groups[0].getProperty().get(0).getNamep());
+        assertEquals("Second", groups[0].getGroup().get(0).getProperty().get(0).getNamep());
+        assertEquals(1, groups[1].getProperty().size());
+        // Группы домена хранят только ссылки на реквизиты.
+        assertNull(utils.getDomain().getGroup().get(1).getProperty().get(0).getNamep());
+
+        utils.updateProperty("{\"id\": \"p2\", \"namep\": \"Renamed\"}");
+        utils.updateGroup("{\"id\": \"g2\", \"name\": \"Inner renamed\"}");
+        groups = mapper.readValue(utils.groupsAsJson(), Group[].class);
+        assertEquals("Renamed", groups[0].getGroup().get(0).getProperty().get(0).getNamep());
+        assertEquals("Inner renamed", groups[0].getGroup().get(0).getName());
+
+        utils.deleteProperty("{\"elements\": [\"p1\"]}");
+        utils.removePropertiesFromGroup("{\"id\": \"g2\", \"elements\": [\"p2\"]}");
+        groups = mapper.readValue(utils.groupsAsJson(), Group[].class);
+        assertTrue(groups[0].getProperty().isEmpty());
+        assertTrue(groups[0].getGroup().get(0).getProperty().isEmpty());
+
+        // Группа, добавленная после насыщения ссылающейся на неё группы, попадает во вложенные.
+        utils.updateGroup("{\"id\": \"PARENT\", \"group\": [{\"id\": \"CHILD\"}]}");
+        utils.groupsAsJson();
+        utils.updateGroup("{\"id\": \"CHILD\", \"name\": \"Child\"}");
+        groups = mapper.readValue(utils.groupsAsJson(), Group[].class);
+        assertEquals("Child", groups[2].getGroup().get(0).getName());
+    }
+
     @Test
     @DisplayName("Checking adding a new item to domain")
     void addItem() {
@@ -289,6 +1096,92 @@ class SchemaUtilsTest {
         assertFalse(checkItemExists(deployUtils.getDeploy(), item));
     }
 
+    @Test
+    void deployItemPlacement() {
+        SchemaUtils utils = deployUtils;
+        FsHost fsHost = utils.getDeploy().getFsHost().get(0);
+        String fsItem = "[{\"shortName\": \"%s\", \"folder\": \"%s\", \"host\": \"fpefwgqaap\", "
+                + "\"userName\": \"tjutwdvc\", \"fqn\": \"%s\"}]";
+
+        utils.addDeployItem(String.format(fsItem, "Domain1", "contdddfdo", "NEW"));
+        assertEquals(4, fsHost.getDomain().get(0).getItem().size());
+
+        // Переименованный домен находится по новому краткому наименованию.
+        utils.renewDomains(Map.of("Domain1", "Domain9"));
+        utils.addDeployItem(String.format(fsItem, "Domain9", "contdddfdo", "NEXT"));
+        assertEquals(2, fsHost.getDomain().size());
+        assertEquals(5, fsHost.getDomain().get(0).getItem().size());
+
+        utils.deleteDeployItem(String.format(fsItem, "Domain2", "contdddfdo", "HR"));
+        assertEquals(1, fsHost.getDomain().size());
+
+        // Хост, заменённый через updateFsHost, ищется по новым реквизитам подключения.
+        utils.updateFsHost("[{\"uid\": \"" + fsHost.getUid() + "\", \"folder\": \"moved\", "
+                + "\"host\": \"fpefwgqaap\", \"userName\": \"tjutwdvc\"}]");
+        utils.addDeployItem(String.format(fsItem, "Domain1", "contdddfdo", "LOST"));
+        utils.addDeployItem(String.format(fsItem, "Domain1", "moved", "MOVED"));
+        FsHost moved = utils.getDeploy().getFsHost().get(0);
+        assertEquals("moved", moved.getFolder());
+        assertEquals("MOVED", moved.getDomain().get(0).getItem().get(0).getFqn());
+        assertEquals(1, moved.getDomain().get(0).getItem().size());
+    }
+
+    @Test
+    void deployHostDeleteThenAdd() {
+        String dbItem = "[{\"shortName\": \"Domain1\", \"host\": \"%s\", \"userName\": \"%s\", "
+                + "\"dbType\": \"%s\", \"dbName\": \"%s\", \"port\": %s, \"fqn\": \"%s\"}]";
+        DbHost deleted = deployUtils.getDeploy().getDbHost().get(0);
+        int domains = deleted.getDomain().size();
+        deployUtils.addDeployItem(String.format(dbItem, "lfgqwk", "ohjfpkj", "HSQLDB", "sivbnrv", "\"8125\"", "WARM"));
+        int items = deleted.getDomain().get(0).getItem().size();
+
+        // Удаление и добавление хоста сохраняют размер списка, но индекс хостов сбрасывается.
+        deployUtils.deleteDbHost(deleted.getUid());
+        deployUtils.addDbHost("[{\"uid\": \"new-db\", \"dbName\": \"newdb\", \"host\": \"h\", "
+                + "\"userName\": \"u\", \"dbType\": \"POSTGRES\"}]");
+        deployUtils.addDeployItem(String.format(dbItem, "h", "u", "POSTGRES", "newdb", null, "NEWITEM"));
+        deployUtils.addDeployItem(String.format(dbItem, "lfgqwk", "ohjfpkj", "HSQLDB", "sivbnrv", "\"8125\"", "LOST"));
+
+        DbHost added = deployUtils.getDeploy().getDbHost().get(deployUtils.getDeploy().getDbHost().size() - 1);
+        assertEquals(1, added.getDomain().size());
+        assertEquals(List.of(added), deployUtils.lookUpHostsByFqn("NEWITEM"));
+        assertEquals(domains, deleted.getDomain().size());
+        assertEquals(items, deleted.getDomain().get(0).getItem().size());
+        assertTrue(deployUtils.lookUpHostsByFqn("LOST").isEmpty());
+    }
+
+    @Test
+    void deployItemFqnIndex() {
+        String dbItem = "{\"shortName\": \"%s\", \"host\": \"lfgqwk\", \"userName\": \"ohjfpkj\", "
+                + "\"dbType\": \"HSQLDB\", \"port\": \"8125\", \"dbName\": \"sivbnrv\", \"fqn\": \"%s\"}";
+        DbHost dbHost = deployUtils.getDeploy().getDbHost().get(0);
+        FsHost fsHost = deployUtils.getDeploy().getFsHost().get(0);
+        assertEquals(List.of(dbHost), deployUtils.lookUpHostsByFqn("SK"));
+        assertEquals(List.of(fsHost), deployUtils.lookUpHostsByFqn("ONE"));
+
+        // Повторное размещение элемента не дублирует его.
+        deployUtils.addDeployItem("[" + String.format(dbItem, "Domain2", "SK") + "]");
+        assertEquals(2, dbHost.getDomain().get(0).getItem().size());
+
+        deployUtils.addDeployItem("[" + String.format(dbItem, "Domain1", "ONE") + "]");
+        assertEquals(Set.of(dbHost, fsHost), Set.copyOf(deployUtils.lookUpHostsByFqn("ONE")));
+        deployUtils.deleteDeployItem("[" + String.format(dbItem, "Domain2", "SK") + ","
+                + String.format(dbItem, "Domain2", "SK.HXL") + "]");
+        assertTrue(deployUtils.lookUpHostsByFqn("SK").isEmpty());
+        assertEquals(1, dbHost.getDomain().size());
+
+        deployUtils.deleteDomainFromDeploy("Domain1");
+        assertTrue(deployUtils.lookUpHostsByFqn("ONE").isEmpty());
+        assertEquals(List.of(fsHost), deployUtils.lookUpHostsByFqn("HR"));
+
+        // Удаление и добавление хоста в одном пакете не меняют число хостов, но обратный индекс перестраивается.
+        deployUtils.apply(List.of(SchemaCommand.delete(JsonSection.FS_HOSTS, List.of(fsHost.getUid()), false),
+                SchemaCommand.add(JsonSection.FS_HOSTS, "[{\"uid\": \"new-fs\", \"folder\": \"f\", \"host\": \"h\", "
+                        + "\"userName\": \"u\", \"domain\": [{\"shortName\": \"Domain3\", \"item\": [{\"fqn\": \"HR\"}]}]}]")));
+        List<FsHost> fsHosts = deployUtils.getDeploy().getFsHost();
+        assertEquals(List.of(fsHosts.get(fsHosts.size() - 1)), deployUtils.lookUpHostsByFqn("HR"));
+    }
+
     boolean checkItemExists(Deploy deploy, SchemaUtils.Item item) {
         for (DbHost dbHost : deploy.getDbHost()) {
             for (org.leandi.schema.deploy.Domain domain : dbHost.getDomain()) {
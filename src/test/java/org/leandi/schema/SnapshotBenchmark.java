@@ -0,0 +1,67 @@
+package org.leandi.schema;
+
+import jakarta.xml.bind.JAXBException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сохранение и восстановление проекта: XML через marshallProject() и двоичный снимок.
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    private SchemaUtils utils;
+    private byte[] projectXml;
+    private byte[] snapshot;
+
+    @Setup
+    public void setUp() throws IOException, JAXBException {
+        utils = SchemaUtils.builder()
+                .projectXml(SnapshotBenchmark.class.getResourceAsStream("/project.xml"))
+                .build();
+        projectXml = utils.marshallProject().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        utils.writeSnapshot(out);
+        snapshot = out.toByteArray();
+    }
+
+    @Benchmark
+    public String saveXml() throws JAXBException {
+        return utils.marshallProject();
+    }
+
+    @Benchmark
+    public byte[] saveSnapshot() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(snapshot.length);
+        utils.writeSnapshot(out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public Project loadXml() {
+        return SchemaUtils.builder().projectXml(new ByteArrayInputStream(projectXml)).build().getProject();
+    }
+
+    @Benchmark
+    public Project loadSnapshot() throws IOException {
+        return SchemaUtils.readSnapshot(new ByteArrayInputStream(snapshot)).getProject();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SnapshotBenchmark.class.getSimpleName()).build()).run();
+    }
+}
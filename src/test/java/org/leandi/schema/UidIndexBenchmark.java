@@ -0,0 +1,122 @@
+package org.leandi.schema;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.leandi.schema.deploy.DbHost;
+import org.leandi.schema.deploy.Deploy;
+import org.leandi.schema.domain.Anchor;
+import org.leandi.schema.domain.Domain;
+import org.leandi.schema.domain.Knot;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пакетное обновление и удаление 10 000 узлов по uid: каждый узел ищется в списке по uid.
+ * Запуск: main-метод из IDE либо через classpath тестов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UidIndexBenchmark {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private SchemaUtils utils;
+    private String anchorsJson;
+    private String knotsJson;
+    private String dbHostsJson;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        Domain domain = new Domain();
+        Deploy deploy = new Deploy();
+        List<Anchor> anchors = new ArrayList<>();
+        List<Knot> knots = new ArrayList<>();
+        List<DbHost> dbHosts = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Anchor anchor = new Anchor();
+            anchor.setMnemonic("A" + i);
+            anchor.setUid("anchor-" + i);
+            anchors.add(anchor);
+            Knot knot = new Knot();
+            knot.setMnemonic("K" + i);
+            knot.setUid("knot-" + i);
+            knots.add(knot);
+            DbHost dbHost = new DbHost();
+            dbHost.setHost("host-" + i);
+            dbHost.setUid("db-host-" + i);
+            dbHosts.add(dbHost);
+        }
+        domain.getAnchor().addAll(anchors);
+        domain.getKnot().addAll(knots);
+        deploy.getDbHost().addAll(dbHosts);
+        utils = SchemaUtils.builder().domain(domain).deploy(deploy).build();
+
+        ObjectMapper mapper = new ObjectMapper();
+        anchorsJson = mapper.writeValueAsString(anchors);
+        knotsJson = mapper.writeValueAsString(knots);
+        dbHostsJson = mapper.writeValueAsString(dbHosts);
+    }
+
+    @Benchmark
+    public Domain updateAnchors() {
+        utils.updateAnchor(anchorsJson);
+        return utils.getDomain();
+    }
+
+    @Benchmark
+    public Domain updateKnots() {
+        utils.updateKnot(knotsJson);
+        return utils.getDomain();
+    }
+
+    /**
+     * Домен с заново заполненным списком якорей перед каждым удалением.
+     */
+    @State(Scope.Thread)
+    public static class DeleteState {
+
+        private SchemaUtils utils;
+        private String anchorUids;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            Domain domain = new Domain();
+            StringBuilder uids = new StringBuilder();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Anchor anchor = new Anchor();
+                anchor.setMnemonic("A" + i);
+                anchor.setUid("anchor-" + i);
+                domain.getAnchor().add(anchor);
+                uids.append(i == 0 ? "" : ",").append(anchor.getUid());
+            }
+            utils = SchemaUtils.builder().domain(domain).build();
+            anchorUids = uids.toString();
+        }
+    }
+
+    @Benchmark
+    public Domain deleteAnchors(DeleteState state) {
+        state.utils.deleteAnchor(state.anchorUids);
+        return state.utils.getDomain();
+    }
+
+    @Benchmark
+    public Deploy updateDbHosts() {
+        utils.updateDbHost(dbHostsJson);
+        return utils.getDeploy();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(UidIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,68 @@
+package org.leandi.schema;
+
+import org.leandi.schema.domain.Domain;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузка на кучу при загрузке project.xml с диска: поток файла (как было)
+ * и файл, отображённый в память, с отложенной загрузкой доменов и без неё.
+ * Объём выделений смотреть профайлером gc: main-метод подключает его сам.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlInputBenchmark {
+
+    private Path projectFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        projectFile = Files.createTempFile("project", ".xml");
+        try (InputStream in = XmlInputBenchmark.class.getResourceAsStream("/project.xml")) {
+            Files.copy(in, projectFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(projectFile);
+    }
+
+    @Benchmark
+    public List<Domain> fileStream() throws IOException {
+        try (InputStream in = Files.newInputStream(projectFile)) {
+            return SchemaUtils.builder().projectXml(in).build().getProject().getDomain();
+        }
+    }
+
+    @Benchmark
+    public List<Domain> mappedFile() {
+        return SchemaUtils.builder().projectPath(projectFile).build().getProject().getDomain();
+    }
+
+    @Benchmark
+    public Domain mappedFileLazyDomains() {
+        return SchemaUtils.builder().projectPath(projectFile).lazyDomains(true).build().getProject().getDomain().get(0);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(XmlInputBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}